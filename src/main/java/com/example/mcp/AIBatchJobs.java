@@ -0,0 +1,380 @@
+package com.example.mcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Offline ai_chat jobs run through the Azure OpenAI Batch API instead of the
+ * interactive chat endpoint, so nightly workloads neither pay interactive prices nor
+ * compete with real-time callers for the deployment's rate limit.
+ *
+ * A job accumulates prompts in an input JSONL file until it is submitted. Submission
+ * uploads the file and creates a batch; a background poller checks submitted jobs and,
+ * once a batch finishes, writes its responses to a local result file. Everything lives
+ * under one directory, one subdirectory per job:
+ *
+ *   &lt;dir&gt;/&lt;job-id&gt;/job.json       - job state
+ *   &lt;dir&gt;/&lt;job-id&gt;/input.jsonl    - batch input, one chat completion request per line
+ *   &lt;dir&gt;/&lt;job-id&gt;/results.jsonl  - {"custom_id", "status", "content", "error"} per prompt
+ *
+ * Jobs are reloaded on startup and submitted jobs resume polling.
+ *
+ * Configuration (environment variables):
+ *   MCP_BATCH_API             - "azure" (default) or "mock" to complete batches locally
+ *   MCP_BATCH_POLL_SECONDS    - polling interval for submitted jobs (default 60)
+ *   MCP_BATCH_MOCK_DELAY_MS   - time the mock takes to complete a batch (default 5000)
+ *   AZURE_OPENAI_BATCH_DEPLOYMENT - global batch deployment (default: AZURE_OPENAI_DEPLOYMENT)
+ */
+public class AIBatchJobs {
+    private static final Logger logger = LoggerFactory.getLogger(AIBatchJobs.class);
+    private static final Pattern JOB_ID = Pattern.compile("job-[0-9a-f]{32}");
+    private static final int MAX_PROMPTS = 100_000;
+
+    /** Job lifecycle; batch states reported by Azure are kept in {@link Job#batchStatus}. */
+    public enum Status { OPEN, SUBMITTED, COMPLETED, FAILED }
+
+    /**
+     * One prompt of a job.
+     */
+    public record Prompt(String customId, String prompt, int maxTokens) {
+    }
+
+    /**
+     * Persisted job state, serialized as job.json. Mutated only while holding the job's monitor.
+     * Timestamps are ISO-8601 instants.
+     */
+    public static final class Job {
+        public String id;
+        public Status status;
+        public String createdAt;
+        public String submittedAt;
+        public String completedAt;
+        public int prompts;
+        public String batchId;
+        public String batchStatus;
+        public int succeeded;
+        public int failed;
+        public String error;
+    }
+
+    private final Path directory;
+    private final String deployment;
+    private final ObjectMapper mapper;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService poller;
+    private final String apiMode;
+    private AzureBatchApi api;
+
+    public AIBatchJobs(Path directory, String apiMode, String deployment, Duration pollInterval) throws IOException {
+        this.directory = directory;
+        this.apiMode = apiMode;
+        this.deployment = deployment;
+        this.mapper = new ObjectMapper();
+        Files.createDirectories(directory);
+        load();
+
+        this.poller = Executors.newSingleThreadScheduledExecutor(HttpJsonServer.namedThreads("batch-poller-"));
+        long seconds = Math.max(1, pollInterval.toSeconds());
+        poller.scheduleWithFixedDelay(this::pollSubmitted, seconds, seconds, TimeUnit.SECONDS);
+        logger.info("Batch jobs in {} ({} API, {} jobs, polling every {}s)", directory, apiMode, jobs.size(), seconds);
+    }
+
+    /**
+     * Create the job store for a directory, configured from environment variables.
+     */
+    public static AIBatchJobs create(String directory) throws IOException {
+        String mode = System.getenv("MCP_BATCH_API");
+        String deployment = System.getenv("AZURE_OPENAI_BATCH_DEPLOYMENT");
+        if (deployment == null || deployment.isEmpty()) {
+            deployment = System.getenv("AZURE_OPENAI_DEPLOYMENT");
+        }
+        return new AIBatchJobs(Paths.get(directory), mode == null || mode.isBlank() ? "azure" : mode.trim(),
+            deployment == null || deployment.isEmpty() ? "gpt-4o-mini" : deployment,
+            Duration.ofSeconds(ToolScheduler.intEnv("MCP_BATCH_POLL_SECONDS", 60)));
+    }
+
+    /**
+     * Create an open job with the given prompts (possibly none).
+     */
+    public Job create(List<Prompt> prompts) throws IOException {
+        Job job = new Job();
+        job.id = "job-" + UUID.randomUUID().toString().replace("-", "");
+        job.status = Status.OPEN;
+        job.createdAt = Instant.now().toString();
+        Files.createDirectories(jobDirectory(job.id));
+        synchronized (job) {
+            appendLocked(job, prompts);
+        }
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    /**
+     * Append prompts to an open job's input file.
+     *
+     * @throws IllegalStateException if the job has already been submitted
+     */
+    public Job append(String jobId, List<Prompt> prompts) throws IOException {
+        Job job = require(jobId);
+        synchronized (job) {
+            if (job.status != Status.OPEN) {
+                throw new IllegalStateException("Job " + jobId + " is " + job.status + ", prompts can only be added to OPEN jobs");
+            }
+            appendLocked(job, prompts);
+        }
+        return job;
+    }
+
+    /**
+     * Upload an open job's input file and create its batch.
+     */
+    public Job submit(String jobId) throws IOException {
+        Job job = require(jobId);
+        synchronized (job) {
+            if (job.status != Status.OPEN) {
+                throw new IllegalStateException("Job " + jobId + " is already " + job.status);
+            }
+            if (job.prompts == 0) {
+                throw new IllegalStateException("Job " + jobId + " has no prompts");
+            }
+            AzureBatchApi batchApi = api();
+            String fileId = batchApi.uploadFile(job.id + ".jsonl", Files.readAllBytes(inputFile(job.id)));
+            AzureBatchApi.Batch batch = batchApi.createBatch(fileId);
+            job.batchId = batch.id();
+            job.batchStatus = batch.status();
+            job.status = Status.SUBMITTED;
+            job.submittedAt = Instant.now().toString();
+            save(job);
+            logger.info("Submitted batch job {} ({} prompts) as {}", job.id, job.prompts, batch.id());
+        }
+        return job;
+    }
+
+    /**
+     * A job by id, or null if unknown.
+     */
+    public Job get(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    /**
+     * All jobs, newest first.
+     */
+    public List<Job> list() {
+        List<Job> all = new ArrayList<>(jobs.values());
+        all.sort(Comparator.comparing((Job job) -> job.createdAt).reversed());
+        return all;
+    }
+
+    /**
+     * Path of a completed job's result file, or null while the job has no results.
+     */
+    public Path results(String jobId) {
+        Job job = get(jobId);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            return job.status == Status.COMPLETED ? resultsFile(jobId) : null;
+        }
+    }
+
+    /**
+     * Snapshot of a job as JSON.
+     */
+    public ObjectNode describe(Job job) {
+        synchronized (job) {
+            return mapper.valueToTree(job);
+        }
+    }
+
+    /**
+     * Check all submitted jobs now instead of waiting for the next poll.
+     */
+    public void pollSubmitted() {
+        for (Job job : jobs.values()) {
+            if (job.status == Status.SUBMITTED) {
+                try {
+                    poll(job);
+                } catch (Exception e) {
+                    logger.warn("Polling batch job {} failed: {}", job.id, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        poller.shutdown();
+    }
+
+    private void poll(Job job) throws IOException {
+        synchronized (job) {
+            if (job.status != Status.SUBMITTED) {
+                return;
+            }
+            AzureBatchApi batchApi = api();
+            AzureBatchApi.Batch batch = batchApi.getBatch(job.batchId);
+            job.batchStatus = batch.status();
+            if (!batch.isTerminal()) {
+                save(job);
+                return;
+            }
+
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            if (batch.outputFileId() != null) {
+                collectResults(batchApi.downloadFile(batch.outputFileId()), results, job);
+            }
+            if (batch.errorFileId() != null) {
+                collectResults(batchApi.downloadFile(batch.errorFileId()), results, job);
+            }
+            writeAtomically(resultsFile(job.id), results.toByteArray());
+
+            job.status = "completed".equals(batch.status()) ? Status.COMPLETED : Status.FAILED;
+            job.error = batch.error();
+            job.completedAt = Instant.now().toString();
+            save(job);
+            logger.info("Batch job {} finished: {} ({} succeeded, {} failed)", job.id, batch.status(),
+                job.succeeded, job.failed);
+        }
+    }
+
+    /**
+     * Normalize batch output lines to {"custom_id", "status", "content", "error"}.
+     */
+    private void collectResults(byte[] output, ByteArrayOutputStream results, Job job) throws IOException {
+        for (String line : new String(output, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode entry = mapper.readTree(line);
+            JsonNode response = entry.path("response");
+            int status = response.path("status_code").asInt(500);
+
+            ObjectNode result = mapper.createObjectNode();
+            result.put("custom_id", entry.path("custom_id").asText());
+            result.put("status", status);
+            JsonNode choices = response.path("body").path("choices");
+            if (status == 200 && choices.size() > 0) {
+                result.put("content", choices.get(0).path("message").path("content").asText());
+                job.succeeded++;
+            } else {
+                JsonNode error = entry.path("error").isObject() ? entry.path("error") : response.path("body").path("error");
+                JsonNode message = error.path("message");
+                result.put("error", message.isTextual() ? message.asText() : "Request failed with status " + status);
+                job.failed++;
+            }
+            results.writeBytes(mapper.writeValueAsBytes(result));
+            results.write('\n');
+        }
+    }
+
+    private void appendLocked(Job job, List<Prompt> prompts) throws IOException {
+        if (job.prompts + prompts.size() > MAX_PROMPTS) {
+            throw new IllegalArgumentException("A job holds at most " + MAX_PROMPTS + " prompts");
+        }
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        int index = job.prompts;
+        for (Prompt prompt : prompts) {
+            index++;
+            ObjectNode request = mapper.createObjectNode();
+            request.put("custom_id", prompt.customId() != null ? prompt.customId() : String.valueOf(index));
+            request.put("method", "POST");
+            request.put("url", "/chat/completions");
+            ObjectNode body = request.putObject("body");
+            body.put("model", deployment);
+            body.putArray("messages").addObject()
+                .put("role", "user")
+                .put("content", prompt.prompt());
+            body.put("max_completion_tokens", prompt.maxTokens());
+            // o4-mini only supports temperature=1.0, as for interactive calls
+            body.put("temperature", 1.0);
+            lines.writeBytes(mapper.writeValueAsBytes(request));
+            lines.write('\n');
+        }
+        Files.write(inputFile(job.id), lines.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        job.prompts = index;
+        save(job);
+    }
+
+    private synchronized AzureBatchApi api() {
+        if (api == null) {
+            api = "mock".equalsIgnoreCase(apiMode)
+                ? AzureBatchApi.mock(Duration.ofMillis(ToolScheduler.intEnv("MCP_BATCH_MOCK_DELAY_MS", 5000)))
+                : AzureAIClient.getInstance().batchApi();
+        }
+        return api;
+    }
+
+    private Job require(String jobId) {
+        Job job = get(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown job: " + jobId);
+        }
+        return job;
+    }
+
+    private void load() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                Path state = entry.resolve("job.json");
+                if (!JOB_ID.matcher(entry.getFileName().toString()).matches() || !Files.isRegularFile(state)) {
+                    continue;
+                }
+                try {
+                    Job job = mapper.readValue(state.toFile(), Job.class);
+                    jobs.put(job.id, job);
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable batch job {}: {}", entry, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void save(Job job) throws IOException {
+        writeAtomically(jobDirectory(job.id).resolve("job.json"), mapper.writeValueAsBytes(job));
+    }
+
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, content);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path jobDirectory(String jobId) {
+        return directory.resolve(jobId);
+    }
+
+    private Path inputFile(String jobId) {
+        return jobDirectory(jobId).resolve("input.jsonl");
+    }
+
+    private Path resultsFile(String jobId) {
+        return jobDirectory(jobId).resolve("results.jsonl");
+    }
+}
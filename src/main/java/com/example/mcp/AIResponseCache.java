@@ -0,0 +1,120 @@
+package com.example.mcp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of ai_chat responses with a time-to-live.
+ *
+ * Both limits can be changed while running with {@link #resize}.
+ *
+ * Configuration (environment variables, or the cache section of {@link ServerConfig}):
+ *   MCP_AI_CACHE_SIZE         - max cached responses (default 1000, 0 disables caching)
+ *   MCP_AI_CACHE_TTL_SECONDS  - entry lifetime in seconds (default 3600)
+ */
+public class AIResponseCache {
+    private static final class Entry {
+        final String response;
+        final long expiresAtNanos;
+
+        Entry(String response, long expiresAtNanos) {
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public AIResponseCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AIResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Create a cache from the current {@link RuntimeConfig}, which defaults to the
+     * environment variables.
+     */
+    public static AIResponseCache fromEnvironment() {
+        ServerConfig.Cache config = RuntimeConfig.current().cache();
+        return new AIResponseCache(config.aiCacheSize(), config.aiCacheTtlSeconds());
+    }
+
+    /**
+     * Change the limits. Shrinking evicts the least recently used entries; the new
+     * time-to-live applies to entries added from now on.
+     */
+    public void resize(int maxEntries, long ttlSeconds) {
+        synchronized (entries) {
+            this.maxEntries = maxEntries;
+            this.ttlNanos = ttlSeconds * 1_000_000_000L;
+            Iterator<String> eldest = entries.keySet().iterator();
+            while (entries.size() > Math.max(0, maxEntries) && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Build the cache key for an ai_chat request.
+     */
+    public static String key(String prompt, int maxTokens, double temperature) {
+        return maxTokens + "|" + temperature + "|" + prompt;
+    }
+
+    /**
+     * Return the cached response, or null on a miss.
+     */
+    public String get(String key) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtNanos - System.nanoTime() > 0) {
+                hits.increment();
+                return entry.response;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String key, String response) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(response, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
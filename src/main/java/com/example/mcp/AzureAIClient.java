@@ -5,7 +5,29 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,12 +40,38 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 /**
  * Azure AI Foundry client for connecting to Azure OpenAI services.
  * Uses singleton pattern to maintain a single connection.
+ *
+ * The HttpClient prefers HTTP/2, so concurrent calls are multiplexed over one
+ * connection, and runs on its own small executor. When the server starts, the
+ * connection is opened ahead of the first ai_chat ({@link #warmUpInBackground}), and a
+ * periodic keepalive request stops idle connections from being dropped by load
+ * balancers, so DNS, TCP and TLS setup stay off the request path. Every TLS engine the
+ * client creates is counted as a new handshake, which {@link #connectionStats} reports
+ * against the total number of exchanges.
+ *
+ * The request timeout is upstream.timeoutSeconds of the {@link RuntimeConfig}, read per call.
+ *
+ * Each call is a client {@link Tracing} span, and the request carries its traceparent.
+ *
+ * This is the production {@link LlmBackend}; see {@link LlmBackends} for selecting a backend.
+ *
+ * Connection settings (environment variables):
+ *   AZURE_OPENAI_HTTP_VERSION        - HTTP_2 (default) or HTTP_1_1
+ *   AZURE_OPENAI_CLIENT_THREADS      - HttpClient executor threads (default 4)
+ *   AZURE_OPENAI_WARMUP              - open the connection at startup (default true)
+ *   AZURE_OPENAI_KEEPALIVE_SECONDS   - keepalive interval, 0 to disable (default 30)
  */
-public class AzureAIClient {
+public class AzureAIClient implements LlmBackend {
     private static final Logger logger = LoggerFactory.getLogger(AzureAIClient.class);
     
     private static AzureAIClient instance;
     private final HttpClient httpClient;
+    private final ExecutorService httpExecutor;
+    private final ScheduledExecutorService keepalive;
+    private final LongAdder exchanges = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private volatile long warmUpMillis = -1;
     private final ObjectMapper mapper;
     private final String endpoint;
     private final String deploymentName;
@@ -32,38 +80,58 @@ public class AzureAIClient {
     // Azure OpenAI configuration
     private static final String ENDPOINT = "https://demo-ai-agent-project-resource.openai.azure.com";
     private static final String DEPLOYMENT = "gpt-4o-mini";
-    private static final String API_VERSION = "2024-12-01-preview";
-    private String apiVersion;
+    static final String API_VERSION = "2024-12-01-preview";
+    private final String apiVersion;
     
     private AzureAIClient() {
+        this(null, null);
+    }
+    
+    /**
+     * Client for another endpoint or deployment with the API key and version from the
+     * environment; null arguments fall back to the environment and built-in defaults.
+     */
+    AzureAIClient(String endpoint, String deploymentName) {
+        this(endpoint != null ? endpoint : envOrDefault("AZURE_OPENAI_ENDPOINT", ENDPOINT),
+            deploymentName != null ? deploymentName : envOrDefault("AZURE_OPENAI_DEPLOYMENT", DEPLOYMENT),
+            requireApiKey(), envOrDefault("AZURE_OPENAI_API_VERSION", API_VERSION));
+    }
+    
+    /**
+     * Client for an explicit endpoint, e.g. an {@link LlmStubServer}. Connection
+     * settings are still read from the environment.
+     */
+    AzureAIClient(String endpoint, String deploymentName, String apiKey, String apiVersion) {
         logger.info("Initializing Azure AI Client...");
+        this.endpoint = endpoint;
+        this.deploymentName = deploymentName;
+        this.apiKey = apiKey;
+        this.apiVersion = apiVersion;
         
-        // Get API key from environment variable
-        this.apiKey = System.getenv("AZURE_OPENAI_API_KEY");
-        if (apiKey == null || apiKey.isEmpty()) {
-            throw new IllegalStateException(
-                "AZURE_OPENAI_API_KEY environment variable is not set. " +
-                "Please set it with: $env:AZURE_OPENAI_API_KEY=\"your-api-key\""
-            );
-        }
-        
-        // Allow override of endpoint and deployment from environment variables
-        String envEndpoint = System.getenv("AZURE_OPENAI_ENDPOINT");
-        this.endpoint = (envEndpoint != null && !envEndpoint.isEmpty()) ? envEndpoint : ENDPOINT;
-        
-        String envDeployment = System.getenv("AZURE_OPENAI_DEPLOYMENT");
-        this.deploymentName = (envDeployment != null && !envDeployment.isEmpty()) ? envDeployment : DEPLOYMENT;
-        
-        String envApiVersion = System.getenv("AZURE_OPENAI_API_VERSION");
-        this.apiVersion = (envApiVersion != null && !envApiVersion.isEmpty()) ? envApiVersion : API_VERSION;
-        
+        HttpClient.Version version = "HTTP_1_1".equalsIgnoreCase(System.getenv("AZURE_OPENAI_HTTP_VERSION"))
+            ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
+        this.httpExecutor = Executors.newFixedThreadPool(
+            Math.max(1, ToolScheduler.intEnv("AZURE_OPENAI_CLIENT_THREADS", 4)),
+            HttpJsonServer.namedThreads("azure-http-"));
         this.httpClient = HttpClient.newBuilder()
+            .version(version)
+            .executor(httpExecutor)
+            .sslContext(countingSslContext(handshakes))
             .connectTimeout(Duration.ofSeconds(60))
             .build();
         
         this.mapper = new ObjectMapper();
         
+        int keepaliveSeconds = ToolScheduler.intEnv("AZURE_OPENAI_KEEPALIVE_SECONDS", 30);
+        if (keepaliveSeconds > 0) {
+            this.keepalive = Executors.newSingleThreadScheduledExecutor(HttpJsonServer.namedThreads("azure-keepalive-"));
+            keepalive.scheduleWithFixedDelay(this::ping, keepaliveSeconds, keepaliveSeconds, TimeUnit.SECONDS);
+        } else {
+            this.keepalive = null;
+        }
+        
         logger.info("Azure AI Client initialized successfully");
+        logger.info("HTTP version: {}, keepalive: {}s", version, keepaliveSeconds);
         logger.info("Endpoint: {}", endpoint);
         logger.info("Deployment: {}", deploymentName);
     }
@@ -78,6 +146,88 @@ public class AzureAIClient {
         return instance;
     }
     
+    /**
+     * True for the client returned by {@link #getInstance}, which the batch API shares.
+     */
+    boolean isShared() {
+        synchronized (AzureAIClient.class) {
+            return this == instance;
+        }
+    }
+    
+    private static String requireApiKey() {
+        // Get API key from environment variable
+        String apiKey = System.getenv("AZURE_OPENAI_API_KEY");
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new IllegalStateException(
+                "AZURE_OPENAI_API_KEY environment variable is not set. " +
+                "Please set it with: $env:AZURE_OPENAI_API_KEY=\"your-api-key\""
+            );
+        }
+        return apiKey;
+    }
+    
+    // Allow override of endpoint and deployment from environment variables
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return (value != null && !value.isEmpty()) ? value : defaultValue;
+    }
+    
+    @Override
+    public String name() {
+        return "azure:" + deploymentName;
+    }
+    
+    /**
+     * Resolve DNS and complete the TCP and TLS handshakes with a lightweight request.
+     */
+    @Override
+    public void warmUp() {
+        long start = System.nanoTime();
+        ping();
+        warmUpMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Azure OpenAI connection warmed up in {} ms", warmUpMillis);
+    }
+    
+    @Override
+    public ConnectionStats connectionStats() {
+        long total = exchanges.sum();
+        long opened = handshakes.sum();
+        return new ConnectionStats(total, opened, Math.max(0, total - opened), pings.sum(), warmUpMillis);
+    }
+    
+    /**
+     * Stop the keepalive and the HTTP client's threads. Calls still running are not interrupted.
+     */
+    @Override
+    public void close() {
+        if (keepalive != null) {
+            keepalive.shutdownNow();
+        }
+        httpExecutor.shutdown();
+    }
+
+    /**
+     * Send a cheap authenticated request so the pooled connection stays open. The status is irrelevant.
+     */
+    private void ping() {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(String.format("%s/openai/models?api-version=%s", endpoint, apiVersion)))
+            .header("api-key", apiKey)
+            .timeout(Duration.ofSeconds(10))
+            .GET()
+            .build();
+        try {
+            exchanges.increment();
+            pings.increment();
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            logger.debug("Keepalive request failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     /**
      * Send a chat prompt to Azure AI Foundry and get response
      * 
@@ -86,7 +236,20 @@ public class AzureAIClient {
      * @param temperature Temperature for response generation (0.0-1.0)
      * @return AI response text
      */
+    @Override
     public String chat(String prompt, Integer maxTokens, Double temperature) {
+        return complete(prompt, maxTokens, temperature).content();
+    }
+
+    /**
+     * Send a chat prompt and return the response with the token usage from the
+     * response's "usage" block.
+     */
+    @Override
+    public Completion complete(String prompt, Integer maxTokens, Double temperature) {
+        JfrEvents.UpstreamTrace trace = JfrEvents.beginUpstream(name(), false);
+        Tracing.Span span = upstreamSpan(false);
+        String error = null;
         try {
             logger.info("Sending chat request to Azure OpenAI");
             logger.info("Using deployment: {}", deploymentName);
@@ -120,14 +283,19 @@ public class AzureAIClient {
                 .uri(URI.create(url))
                 .header("Content-Type", "application/json")
                 .header("api-key", apiKey)
-                .timeout(Duration.ofSeconds(60))
+                .timeout(Duration.ofSeconds(RuntimeConfig.current().upstream().timeoutSeconds()))
                 .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
                 .build();
             
             logger.info("Sending HTTP POST request...");
             
             // Send request and get response
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            exchanges.increment();
+            trace.sent(jsonBody.length());
+            HttpResponse<String> response = httpClient.send(Tracing.inject(span, request),
+                trace.observe(HttpResponse.BodyHandlers.ofString()));
+            trace.bodyRead(response.body().length());
+            span.attribute("http.response.status_code", response.statusCode());
             
             logger.info("Received HTTP response with status: {}", response.statusCode());
             logger.info("Response body: {}", response.body());
@@ -152,7 +320,7 @@ public class AzureAIClient {
                 .get(0)
                 .path("message")
                 .path("content")
-                .asText("");
+                .textValue();
             
             if (content == null || content.isEmpty() || content.equals("..")) {
                 logger.error("Empty or invalid content from Azure OpenAI");
@@ -164,18 +332,229 @@ public class AzureAIClient {
             logger.info("Response length: {} characters", content.length());
             logger.info("Response content: {}", content);
             
-            return content;
+            TokenAccounting.Usage usage = TokenAccounting.Usage.fromJson(responseJson.get("usage"));
+            if (usage != null) {
+                span.attribute("gen_ai.usage.input_tokens", usage.promptTokens())
+                    .attribute("gen_ai.usage.output_tokens", usage.completionTokens());
+            }
+            return new Completion(content, usage, deploymentName);
             
         } catch (IOException | InterruptedException e) {
+            error = e.getMessage();
             logger.error("ERROR in AzureAIClient.chat()", e);
             throw new RuntimeException("Failed to get AI response: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            throw e;
+        } finally {
+            trace.end(error);
+            if (error != null) {
+                span.error(error);
+            }
+            span.end();
+        }
+    }
+    
+    /**
+     * Start the client span of an upstream call; its traceparent is sent with the request.
+     */
+    private Tracing.Span upstreamSpan(boolean streamed) {
+        Tracing.Span span = Tracing.startSpan("chat " + deploymentName, Tracing.Kind.CLIENT);
+        if (span.isRecording()) {
+            span.attribute("gen_ai.operation.name", "chat")
+                .attribute("gen_ai.request.model", deploymentName)
+                .attribute("server.address", URI.create(endpoint).getHost())
+                .attribute("mcp.streamed", streamed);
+        }
+        return span;
+    }
+
+    /**
+     * Send a chat prompt with "stream": true and deliver the response as it arrives.
+     * Server-sent event lines are parsed as they are received and each delta's
+     * content is passed to {@code onDelta}. The usage is requested with
+     * stream_options.include_usage and read from the final chunk.
+     */
+    @Override
+    public Completion completeStream(String prompt, Integer maxTokens, Double temperature,
+                                     Consumer<String> onDelta) {
+        JfrEvents.UpstreamTrace trace = JfrEvents.beginUpstream(name(), true);
+        Tracing.Span span = upstreamSpan(true);
+        String error = null;
+        try {
+            String url = String.format("%s/openai/deployments/%s/chat/completions?api-version=%s",
+                endpoint, deploymentName, apiVersion);
+            
+            ObjectNode requestBody = mapper.createObjectNode();
+            requestBody.putArray("messages").addObject()
+                .put("role", "user")
+                .put("content", prompt);
+            requestBody.put("max_completion_tokens", maxTokens);
+            // o4-mini only supports temperature=1.0, force it regardless of input
+            requestBody.put("temperature", 1.0);
+            requestBody.put("stream", true);
+            requestBody.putObject("stream_options").put("include_usage", true);
+            byte[] body = mapper.writeValueAsBytes(requestBody);
+            
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("api-key", apiKey)
+                .timeout(Duration.ofSeconds(RuntimeConfig.current().upstream().timeoutSeconds()))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+            
+            exchanges.increment();
+            trace.sent(body.length);
+            HttpResponse<Stream<String>> response = httpClient.send(Tracing.inject(span, request),
+                trace.observe(HttpResponse.BodyHandlers.ofLines()));
+            span.attribute("http.response.status_code", response.statusCode());
+            StringBuilder content = new StringBuilder();
+            TokenAccounting.Usage usage = null;
+            long received = 0;
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new RuntimeException("Azure OpenAI API returned status " + response.statusCode() +
+                        ": " + lines.collect(Collectors.joining("\n")));
+                }
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    received += line.length() + 1;
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    String data = line.substring("data:".length()).trim();
+                    if (data.equals("[DONE]")) {
+                        break;
+                    }
+                    JsonNode chunk = mapper.readTree(data);
+                    if (chunk.hasNonNull("usage")) {
+                        usage = TokenAccounting.Usage.fromJson(chunk.get("usage"));
+                    }
+                    JsonNode choices = chunk.path("choices");
+                    String delta = choices.size() > 0 ? choices.get(0).path("delta").path("content").textValue() : null;
+                    if (delta != null && !delta.isEmpty()) {
+                        content.append(delta);
+                        onDelta.accept(delta);
+                    }
+                }
+            }
+            trace.bodyRead(received);
+            
+            if (content.length() == 0) {
+                throw new RuntimeException("Empty or invalid content from Azure OpenAI");
+            }
+            if (usage != null) {
+                span.attribute("gen_ai.usage.input_tokens", usage.promptTokens())
+                    .attribute("gen_ai.usage.output_tokens", usage.completionTokens());
+            }
+            return new Completion(content.toString(), usage, deploymentName);
+            
+        } catch (IOException | InterruptedException e) {
+            error = e.getMessage();
+            logger.error("ERROR in AzureAIClient.completeStream()", e);
+            throw new RuntimeException("Failed to get AI response: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            throw e;
+        } finally {
+            trace.end(error);
+            if (error != null) {
+                span.error(error);
+            }
+            span.end();
         }
     }
     
+    /**
+     * Batch API client sharing this client's endpoint, key and connection pool.
+     */
+    public AzureBatchApi batchApi() {
+        return AzureBatchApi.azure(httpClient, endpoint, apiKey, apiVersion);
+    }
+    
+    public String getDeploymentName() {
+        return deploymentName;
+    }
+    
     /**
      * Send a chat prompt with default parameters
      */
     public String chat(String prompt) {
         return chat(prompt, 500, 1.0);
     }
+    
+    /**
+     * The default TLS context, wrapped to count the engines the HttpClient creates.
+     * The client creates one engine per connection, so the count is the number of handshakes.
+     */
+    private static SSLContext countingSslContext(LongAdder handshakes) {
+        try {
+            SSLContext delegate = SSLContext.getDefault();
+            return new SSLContext(new CountingSslContextSpi(delegate, handshakes), delegate.getProvider(),
+                delegate.getProtocol()) { };
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No default TLS context", e);
+        }
+    }
+    
+    private static final class CountingSslContextSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final LongAdder handshakes;
+        
+        CountingSslContextSpi(SSLContext delegate, LongAdder handshakes) {
+            this.delegate = delegate;
+            this.handshakes = handshakes;
+        }
+        
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom random)
+                throws KeyManagementException {
+            delegate.init(km, tm, random);
+        }
+        
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+        
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+        
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            handshakes.increment();
+            return delegate.createSSLEngine();
+        }
+        
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            handshakes.increment();
+            return delegate.createSSLEngine(host, port);
+        }
+        
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+        
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+        
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+        
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
 }
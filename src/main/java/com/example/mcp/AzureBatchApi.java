@@ -0,0 +1,247 @@
+package com.example.mcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The subset of the Azure OpenAI Batch API used by {@link AIBatchJobs}: upload a JSONL
+ * input file, create a batch over it, poll the batch, and download its output.
+ *
+ * {@link #azure} talks to the real service; {@link #mock} completes batches locally
+ * after a fixed delay with canned answers, for development without an Azure deployment.
+ */
+public interface AzureBatchApi {
+
+    /**
+     * State of a batch as reported by the service.
+     *
+     * @param status validating, in_progress, finalizing, completed, failed, expired, cancelling or cancelled
+     * @param outputFileId file with successful responses, null until the batch completes
+     * @param errorFileId file with failed requests, may be null
+     */
+    record Batch(String id, String status, String outputFileId, String errorFileId, String error) {
+        public boolean isTerminal() {
+            switch (status) {
+                case "completed":
+                case "failed":
+                case "expired":
+                case "cancelled":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** Upload a JSONL batch input file and return its file id. */
+    String uploadFile(String fileName, byte[] jsonl) throws IOException;
+
+    /** Create a batch over an uploaded input file. */
+    Batch createBatch(String inputFileId) throws IOException;
+
+    Batch getBatch(String batchId) throws IOException;
+
+    /** Download the content of an output or error file. */
+    byte[] downloadFile(String fileId) throws IOException;
+
+    /**
+     * Client for the Azure OpenAI Batch API.
+     */
+    static AzureBatchApi azure(HttpClient httpClient, String endpoint, String apiKey, String apiVersion) {
+        return new Azure(httpClient, endpoint, apiKey, apiVersion);
+    }
+
+    /**
+     * Local stand-in that reports batches as completed once {@code completionDelay} has passed.
+     */
+    static AzureBatchApi mock(Duration completionDelay) {
+        return new Mock(completionDelay);
+    }
+
+    final class Azure implements AzureBatchApi {
+        private final HttpClient httpClient;
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final String endpoint;
+        private final String apiKey;
+        private final String apiVersion;
+
+        Azure(HttpClient httpClient, String endpoint, String apiKey, String apiVersion) {
+            this.httpClient = httpClient;
+            this.endpoint = endpoint;
+            this.apiKey = apiKey;
+            this.apiVersion = apiVersion;
+        }
+
+        @Override
+        public String uploadFile(String fileName, byte[] jsonl) throws IOException {
+            String boundary = "----mcp-batch-" + UUID.randomUUID();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(jsonl.length + 512);
+            body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"purpose\"\r\n\r\nbatch\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/jsonl\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(jsonl);
+            body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+            JsonNode file = send(request("/openai/files")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())));
+            return file.path("id").asText();
+        }
+
+        @Override
+        public Batch createBatch(String inputFileId) throws IOException {
+            ObjectNode body = mapper.createObjectNode();
+            body.put("input_file_id", inputFileId);
+            body.put("endpoint", "/chat/completions");
+            body.put("completion_window", "24h");
+            return toBatch(send(request("/openai/batches")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))));
+        }
+
+        @Override
+        public Batch getBatch(String batchId) throws IOException {
+            return toBatch(send(request("/openai/batches/" + batchId).GET()));
+        }
+
+        @Override
+        public byte[] downloadFile(String fileId) throws IOException {
+            HttpResponse<byte[]> response = exchange(request("/openai/files/" + fileId + "/content").GET());
+            return response.body();
+        }
+
+        private HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder()
+                .uri(URI.create(endpoint + path + "?api-version=" + apiVersion))
+                .header("api-key", apiKey)
+                .timeout(Duration.ofSeconds(120));
+        }
+
+        private JsonNode send(HttpRequest.Builder request) throws IOException {
+            return mapper.readTree(exchange(request).body());
+        }
+
+        private HttpResponse<byte[]> exchange(HttpRequest.Builder request) throws IOException {
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() / 100 != 2) {
+                    throw new IOException("Azure OpenAI batch API returned status " + response.statusCode() + ": "
+                        + new String(response.body(), StandardCharsets.UTF_8));
+                }
+                return response;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted calling the Azure OpenAI batch API", e);
+            }
+        }
+
+        private static Batch toBatch(JsonNode batch) {
+            JsonNode errors = batch.path("errors").path("data");
+            String error = errors.isArray() && errors.size() > 0 ? errors.get(0).path("message").textValue() : null;
+            JsonNode status = batch.path("status");
+            return new Batch(batch.path("id").asText(), status.isTextual() ? status.asText() : "validating",
+                batch.path("output_file_id").textValue(), batch.path("error_file_id").textValue(), error);
+        }
+    }
+
+    final class Mock implements AzureBatchApi {
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final long completionDelayNanos;
+        private final AtomicInteger ids = new AtomicInteger();
+        private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        private final Map<String, String> batchInputs = new ConcurrentHashMap<>();
+        private final Map<String, Long> batchCreated = new ConcurrentHashMap<>();
+
+        Mock(Duration completionDelay) {
+            this.completionDelayNanos = completionDelay.toNanos();
+        }
+
+        @Override
+        public String uploadFile(String fileName, byte[] jsonl) {
+            String id = "file-mock-" + ids.incrementAndGet();
+            files.put(id, jsonl);
+            return id;
+        }
+
+        @Override
+        public Batch createBatch(String inputFileId) throws IOException {
+            if (!files.containsKey(inputFileId)) {
+                throw new IOException("Unknown input file: " + inputFileId);
+            }
+            String id = "batch-mock-" + ids.incrementAndGet();
+            batchInputs.put(id, inputFileId);
+            batchCreated.put(id, System.nanoTime());
+            return new Batch(id, "validating", null, null, null);
+        }
+
+        @Override
+        public Batch getBatch(String batchId) throws IOException {
+            Long created = batchCreated.get(batchId);
+            if (created == null) {
+                throw new IOException("Unknown batch: " + batchId);
+            }
+            if (System.nanoTime() - created < completionDelayNanos) {
+                return new Batch(batchId, "in_progress", null, null, null);
+            }
+            String outputId = "file-mock-output-" + batchId;
+            files.computeIfAbsent(outputId, ignored -> answer(files.get(batchInputs.get(batchId))));
+            return new Batch(batchId, "completed", outputId, null, null);
+        }
+
+        @Override
+        public byte[] downloadFile(String fileId) throws IOException {
+            byte[] content = files.get(fileId);
+            if (content == null) {
+                throw new IOException("Unknown file: " + fileId);
+            }
+            return content;
+        }
+
+        /** One chat completion per input line, echoing the last user message. */
+        private byte[] answer(byte[] input) {
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                for (String line : new String(input, StandardCharsets.UTF_8).split("\n")) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonNode request = mapper.readTree(line);
+                    JsonNode messages = request.path("body").path("messages");
+                    String prompt = messages.size() > 0 ? messages.get(messages.size() - 1).path("content").asText() : "";
+
+                    ObjectNode result = mapper.createObjectNode();
+                    result.put("custom_id", request.path("custom_id").asText());
+                    ObjectNode response = result.putObject("response");
+                    response.put("status_code", 200);
+                    ObjectNode message = response.putObject("body").putArray("choices").addObject()
+                        .putObject("message");
+                    message.put("role", "assistant");
+                    message.put("content", "[mock] " + prompt);
+                    result.putNull("error");
+                    output.writeBytes(mapper.writeValueAsBytes(result));
+                    output.write('\n');
+                }
+                return output.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.mcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Host-wide ai_chat cache shared by many server processes over a Unix domain socket.
+ *
+ * Every STDIO session starts its own server process, so a cache inside the process
+ * starts cold and is duplicated per session. Started with --cache-daemon, one
+ * long-lived process owns an {@link AIResponseCache} and the upstream
+ * {@link LlmBackend} (and with it the upstream connection pool). Server processes
+ * with MCP_CACHE_SOCKET set use a {@link Client} as their backend, so cache hits and
+ * connection reuse are shared by every session on the host. Concurrent misses for
+ * the same request are coalesced into one upstream call, whose token usage is
+ * reported to the caller that started it only.
+ *
+ * Protocol: the client opens with the 4 byte magic "MCPC" and a version byte, then
+ * both sides exchange frames of {@code [int length][byte type][int id][payload]}, where
+ * length counts everything after itself. Requests carry a client chosen id and may be
+ * pipelined; responses are sent in completion order with the id of their request.
+ * Strings are an int byte count followed by UTF-8.
+ * <pre>
+ *   CHAT   (1)  int maxTokens (-1: none), double temperature (NaN: none), string prompt
+ *   STATS  (2)  -
+ *   RESULT (65) byte cached, long promptTokens, long completionTokens, long reasoningTokens
+ *               (-1: no usage, e.g. for cache hits), string deployment, string response
+ *   ERROR  (66) string message
+ *   STATS_RESULT (67) long hits, long misses, int size, long exchanges, long handshakes,
+ *                     long reused, long pings, long warmUpMillis (exchanges -1: not tracked)
+ * </pre>
+ *
+ * Configuration (environment variables):
+ *   MCP_CACHE_SOCKET                  - socket path; clients use the daemon only when it is set
+ *                                       (daemon default: ${java.io.tmpdir}/mcp-cache-daemon.sock)
+ *   MCP_CACHE_DAEMON_TIMEOUT_SECONDS  - how long a client waits for a response (default 120)
+ *   MCP_AI_CACHE_SIZE, MCP_AI_CACHE_TTL_SECONDS - cache settings of the daemon
+ */
+public final class CacheDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(CacheDaemon.class);
+
+    static final int MAGIC = 0x4D435043;
+    static final byte VERSION = 2;
+    static final byte CHAT = 1;
+    static final byte STATS = 2;
+    static final byte RESULT = 65;
+    static final byte ERROR = 66;
+    static final byte STATS_RESULT = 67;
+    private static final int HEADER_BYTES = 9;
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+    private final LlmBackend upstream;
+    private final AIResponseCache cache;
+    private final ExecutorService workers = ToolExecutor.newIoExecutor("cache-daemon-");
+    private final Map<String, CompletableFuture<LlmBackend.Completion>> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private CacheDaemon(Path socketPath, ServerSocketChannel server, LlmBackend upstream, AIResponseCache cache) {
+        this.socketPath = socketPath;
+        this.server = server;
+        this.upstream = upstream;
+        this.cache = cache;
+    }
+
+    /**
+     * The socket path from MCP_CACHE_SOCKET, or null if it is not set.
+     */
+    public static Path configuredSocket() {
+        String path = System.getenv("MCP_CACHE_SOCKET");
+        return path == null || path.isBlank() ? null : Path.of(path);
+    }
+
+    /**
+     * The socket path the daemon listens on: MCP_CACHE_SOCKET or the default in the temp directory.
+     */
+    public static Path daemonSocket() {
+        Path configured = configuredSocket();
+        return configured != null ? configured
+            : Path.of(System.getProperty("java.io.tmpdir"), "mcp-cache-daemon.sock");
+    }
+
+    /**
+     * Bind the socket and start accepting connections. A socket file left behind by a
+     * daemon that is no longer running is replaced. On POSIX systems the socket is
+     * restricted to its owner, so other users on the host cannot read cached responses
+     * or spend the daemon's upstream quota.
+     *
+     * @throws IOException if the socket cannot be bound or another daemon is listening on it
+     */
+    public static CacheDaemon start(Path socketPath, LlmBackend upstream, AIResponseCache cache) throws IOException {
+        if (Files.exists(socketPath)) {
+            if (isListening(socketPath)) {
+                throw new IOException("A cache daemon is already listening on " + socketPath);
+            }
+            Files.delete(socketPath);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            logger.debug("Cannot restrict permissions of {}: {}", socketPath, e.getMessage());
+        } catch (IOException e) {
+            server.close();
+            Files.deleteIfExists(socketPath);
+            throw e;
+        }
+        socketPath.toFile().deleteOnExit();
+
+        CacheDaemon daemon = new CacheDaemon(socketPath, server, upstream, cache);
+        Thread acceptor = new Thread(daemon::acceptLoop, "cache-daemon-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Cache daemon listening on {} (backend {})", socketPath, upstream.name());
+        return daemon;
+    }
+
+    private static boolean isListening(Path socketPath) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public Path socketPath() {
+        return socketPath;
+    }
+
+    public void stop() {
+        closed = true;
+        try {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            logger.warn("Error closing cache daemon socket: {}", e.getMessage());
+        }
+        workers.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                workers.execute(() -> serve(channel));
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Cache daemon accept failed", e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            ByteBuffer hello = readFully(channel, ByteBuffer.allocate(5));
+            if (hello.getInt() != MAGIC || hello.get() != VERSION) {
+                logger.warn("Rejecting cache client with unknown protocol");
+                return;
+            }
+            while (!closed) {
+                Frame request = readFrame(channel);
+                if (request.type() == CHAT) {
+                    chat(channel, request);
+                } else if (request.type() == STATS) {
+                    writeFrame(channel, STATS_RESULT, request.id(), statsPayload());
+                } else {
+                    writeFrame(channel, ERROR, request.id(), string("Unknown request type " + request.type()));
+                }
+            }
+        } catch (EOFException e) {
+            // client disconnected
+        } catch (IOException e) {
+            if (!closed) {
+                logger.warn("Cache client connection failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void chat(SocketChannel channel, Frame request) throws IOException {
+        ByteBuffer payload = request.payload();
+        int maxTokensValue = payload.getInt();
+        double temperatureValue = payload.getDouble();
+        String prompt = readString(payload);
+        Integer maxTokens = maxTokensValue < 0 ? null : maxTokensValue;
+        Double temperature = Double.isNaN(temperatureValue) ? null : temperatureValue;
+        String key = AIResponseCache.key(prompt, maxTokensValue, temperatureValue);
+
+        String cached = cache.get(key);
+        if (cached != null) {
+            writeFrame(channel, RESULT, request.id(), result(true, new LlmBackend.Completion(cached, null, null)));
+            return;
+        }
+
+        CompletableFuture<LlmBackend.Completion> created = new CompletableFuture<>();
+        CompletableFuture<LlmBackend.Completion> call = inFlight.putIfAbsent(key, created);
+        boolean owner = call == null;
+        if (owner) {
+            call = created;
+            workers.execute(() -> {
+                try {
+                    LlmBackend.Completion response = upstream.complete(prompt, maxTokens, temperature);
+                    cache.put(key, response.content());
+                    created.complete(response);
+                } catch (Throwable t) {
+                    created.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        }
+        // Respond from whichever thread completes the call; frames are written whole under the channel lock
+        call.whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    writeFrame(channel, ERROR, request.id(), string(String.valueOf(error.getMessage())));
+                } else {
+                    writeFrame(channel, RESULT, request.id(), result(false,
+                        owner ? response : new LlmBackend.Completion(response.content(), null, response.deployment())));
+                }
+            } catch (IOException e) {
+                logger.debug("Cannot deliver cache daemon response: {}", e.getMessage());
+            }
+        });
+    }
+
+    private ByteBuffer statsPayload() {
+        LlmBackend.ConnectionStats stats = upstream.connectionStats();
+        ByteBuffer payload = ByteBuffer.allocate(8 * 7 + 4);
+        payload.putLong(cache.hits()).putLong(cache.misses()).putInt(cache.size());
+        if (stats == null) {
+            payload.putLong(-1).putLong(0).putLong(0).putLong(0).putLong(0);
+        } else {
+            payload.putLong(stats.exchanges()).putLong(stats.handshakes()).putLong(stats.reused())
+                .putLong(stats.pings()).putLong(stats.warmUpMillis());
+        }
+        return payload.flip();
+    }
+
+    private ByteBuffer result(boolean cached, LlmBackend.Completion completion) {
+        TokenAccounting.Usage usage = completion.usage();
+        byte[] deployment = String.valueOf(completion.deployment() != null ? completion.deployment() : upstream.name())
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] text = completion.content().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 3 * 8 + 8 + deployment.length + text.length)
+            .put((byte) (cached ? 1 : 0));
+        if (usage == null) {
+            payload.putLong(-1).putLong(-1).putLong(-1);
+        } else {
+            payload.putLong(usage.promptTokens()).putLong(usage.completionTokens()).putLong(usage.reasoningTokens());
+        }
+        return payload.putInt(deployment.length).put(deployment).putInt(text.length).put(text).flip();
+    }
+
+    // ---- framing ----
+
+    record Frame(byte type, int id, ByteBuffer payload) {
+    }
+
+    static ByteBuffer string(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeFrame(SocketChannel channel, byte type, int id, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(5 + payload.remaining()).put(type).putInt(id).flip();
+        ByteBuffer[] frame = {header, payload};
+        synchronized (channel) {
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+    }
+
+    static Frame readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(HEADER_BYTES));
+        int length = header.getInt();
+        if (length < 5 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte type = header.get();
+        int id = header.getInt();
+        return new Frame(type, id, readFully(channel, ByteBuffer.allocate(length - 5)));
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * {@link LlmBackend} that sends ai_chat calls to a cache daemon over one multiplexed
+     * connection. While the daemon is unreachable, calls go to a local backend instead
+     * and reconnecting is retried at most every few seconds.
+     */
+    public static final class Client implements LlmBackend {
+        private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+        private final Path socketPath;
+        private final Supplier<LlmBackend> fallback;
+        private final long timeoutSeconds = ToolScheduler.intEnv("MCP_CACHE_DAEMON_TIMEOUT_SECONDS", 120);
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final Map<Integer, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+        private volatile SocketChannel channel;
+        private volatile long nextConnectAttempt;
+
+        /**
+         * @param fallback creates the backend used while the daemon is unreachable
+         */
+        public Client(Path socketPath, Supplier<LlmBackend> fallback) {
+            this.socketPath = socketPath;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public String name() {
+            return "cache-daemon:" + socketPath;
+        }
+
+        @Override
+        public String chat(String prompt, Integer maxTokens, Double temperature) {
+            return complete(prompt, maxTokens, temperature).content();
+        }
+
+        @Override
+        public Completion complete(String prompt, Integer maxTokens, Double temperature) {
+            byte[] text = prompt.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer payload = ByteBuffer.allocate(16 + text.length)
+                .putInt(maxTokens != null ? maxTokens : -1)
+                .putDouble(temperature != null ? temperature : Double.NaN)
+                .putInt(text.length).put(text).flip();
+            Frame response;
+            try {
+                response = call(CHAT, payload);
+            } catch (IOException e) {
+                logger.warn("Cache daemon unavailable ({}), calling the backend directly", e.getMessage());
+                return fallback.get().complete(prompt, maxTokens, temperature);
+            }
+            if (response.type() == ERROR) {
+                throw new RuntimeException(readString(response.payload()));
+            }
+            ByteBuffer result = response.payload();
+            boolean cached = result.get() == 1;
+            long promptTokens = result.getLong();
+            long completionTokens = result.getLong();
+            long reasoningTokens = result.getLong();
+            String deployment = readString(result);
+            logger.debug("Cache daemon {} for prompt of {} bytes", cached ? "hit" : "miss", text.length);
+            return new Completion(readString(result), promptTokens < 0 ? null
+                : new TokenAccounting.Usage(promptTokens, completionTokens, reasoningTokens), deployment);
+        }
+
+        /**
+         * Connect to the daemon ahead of the first call.
+         */
+        @Override
+        public void warmUp() {
+            try {
+                connect();
+            } catch (IOException e) {
+                logger.warn("Cache daemon at {} not reachable: {}", socketPath, e.getMessage());
+            }
+        }
+
+        /**
+         * The daemon's upstream connection counters, or null if the daemon is unreachable.
+         */
+        @Override
+        public ConnectionStats connectionStats() {
+            try {
+                ByteBuffer stats = call(STATS, ByteBuffer.allocate(0)).payload();
+                stats.position(8 + 8 + 4);
+                long exchanges = stats.getLong();
+                return exchanges < 0 ? null : new ConnectionStats(exchanges, stats.getLong(), stats.getLong(),
+                    stats.getLong(), stats.getLong());
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            SocketChannel current = channel;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    logger.debug("Error closing cache daemon connection: {}", e.getMessage());
+                }
+            }
+        }
+
+        private Frame call(byte type, ByteBuffer payload) throws IOException {
+            SocketChannel connection = connect();
+            int id = nextId.incrementAndGet();
+            CompletableFuture<Frame> response = new CompletableFuture<>();
+            pending.put(id, response);
+            try {
+                writeFrame(connection, type, id, payload);
+                return response.get(timeoutSeconds, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (TimeoutException e) {
+                throw new RuntimeException("Cache daemon did not respond within " + timeoutSeconds + "s");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for the cache daemon", e);
+            } finally {
+                pending.remove(id);
+            }
+        }
+
+        private synchronized SocketChannel connect() throws IOException {
+            SocketChannel current = channel;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            if (System.nanoTime() - nextConnectAttempt < 0) {
+                throw new IOException("not connected");
+            }
+            try {
+                SocketChannel opened = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+                ByteBuffer hello = ByteBuffer.allocate(5).putInt(MAGIC).put(VERSION).flip();
+                while (hello.hasRemaining()) {
+                    opened.write(hello);
+                }
+                Thread reader = new Thread(() -> readLoop(opened), "cache-daemon-client");
+                reader.setDaemon(true);
+                reader.start();
+                channel = opened;
+                logger.info("Connected to cache daemon at {}", socketPath);
+                return opened;
+            } catch (IOException e) {
+                nextConnectAttempt = System.nanoTime() + RECONNECT_INTERVAL_NANOS;
+                throw e;
+            }
+        }
+
+        private void readLoop(SocketChannel connection) {
+            IOException failure;
+            try {
+                while (true) {
+                    Frame frame = readFrame(connection);
+                    CompletableFuture<Frame> response = pending.get(frame.id());
+                    if (response != null) {
+                        response.complete(frame);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+            logger.warn("Lost connection to cache daemon: {}", failure.getMessage());
+            pending.values().forEach(response -> response.completeExceptionally(failure));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.mcp;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional cluster mode for the HTTP JSON API.
+ *
+ * Every node is started with the same static peer list. Cacheable requests are
+ * assigned to an owner node through a consistent-hash ring over the request key,
+ * and non-owners forward the request to the owner, so each key is only ever cached
+ * on one node and the cluster behaves like a single large cache.
+ *
+ * Forwarded requests carry the {@link #FORWARDED_HEADER} header and are always
+ * served locally by the receiver, so differing peer lists cannot cause loops. The
+ * header is only honoured when it names a known peer and the request comes from
+ * that peer's address; otherwise the request is routed like any client request.
+ */
+public class ClusterRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+    public static final String FORWARDED_HEADER = "X-MCP-Forwarded-By";
+    public static final String SERVED_BY_HEADER = "X-MCP-Served-By";
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final String selfUrl;
+    private final ConsistentHashRing ring;
+    private final HttpClient httpClient;
+
+    public ClusterRouter(String selfUrl, List<String> peerUrls, int virtualNodes) {
+        this.selfUrl = normalize(selfUrl);
+        Set<String> nodes = new LinkedHashSet<>();
+        nodes.add(this.selfUrl);
+        for (String peer : peerUrls) {
+            nodes.add(normalize(peer));
+        }
+        this.ring = new ConsistentHashRing(new ArrayList<>(nodes), virtualNodes);
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+        logger.info("Cluster mode enabled: self={}, nodes={}", this.selfUrl, ring.nodes());
+    }
+
+    /**
+     * Create a router from a comma separated peer list.
+     */
+    public static ClusterRouter fromPeerList(String selfUrl, String peers) {
+        List<String> peerUrls = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            if (!peer.isBlank()) {
+                peerUrls.add(peer.trim());
+            }
+        }
+        return new ClusterRouter(selfUrl, peerUrls,
+            ToolScheduler.intEnv("MCP_CLUSTER_VIRTUAL_NODES", DEFAULT_VIRTUAL_NODES));
+    }
+
+    public String selfUrl() {
+        return selfUrl;
+    }
+
+    public List<String> nodes() {
+        return ring.nodes();
+    }
+
+    /**
+     * Return the base URL of the node owning the given key.
+     */
+    public String ownerFor(String key) {
+        return ring.nodeFor(key);
+    }
+
+    public boolean isSelf(String node) {
+        return selfUrl.equals(node);
+    }
+
+    /**
+     * Whether a request carrying the given {@link #FORWARDED_HEADER} value was really
+     * forwarded by a peer: the value must name a configured peer other than this node
+     * and the connection must come from one of that peer's addresses.
+     */
+    public boolean isForwardedByPeer(String forwardedBy, InetAddress remote) {
+        if (forwardedBy == null || remote == null) {
+            return false;
+        }
+        String node = normalize(forwardedBy);
+        if (isSelf(node) || !ring.nodes().contains(node)) {
+            return false;
+        }
+        try {
+            String host = URI.create(node).getHost();
+            if (host == null) {
+                return false;
+            }
+            for (InetAddress address : InetAddress.getAllByName(host)) {
+                if (address.equals(remote) || (address.isLoopbackAddress() && remote.isLoopbackAddress())) {
+                    return true;
+                }
+            }
+        } catch (IllegalArgumentException | UnknownHostException e) {
+            logger.debug("Cannot resolve peer {}: {}", node, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Forward a POST request to another node.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> forward(String node, String path, byte[] body,
+                                                          Map<String, String> headers) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(URI.create(node + path))
+            .timeout(Duration.ofSeconds(RuntimeConfig.current().upstream().forwardTimeoutSeconds()))
+            .header("Content-Type", "application/json")
+            .header(FORWARDED_HEADER, selfUrl)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,578 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * File-backed resource provider serving a local directory tree as MCP resources.
+ *
+ * Files are exposed as resource://files/{path}, where {path} is the URL-encoded path
+ * relative to the root directory. Reads can be paged by appending
+ * ?offset=N&amp;length=M to the URI.
+ *
+ * The directory listing is kept in a sorted index. {@link #refresh()} only re-lists
+ * directories whose modification time changed since the last scan and walks unchanged
+ * ones from the remembered list of subdirectories, so refreshing a large, mostly static
+ * tree costs one stat per directory. Without a watcher, list requests refresh at most
+ * once per MCP_RESOURCE_REFRESH_MS (default 1000).
+ *
+ * Only regular files reached without following symbolic links are served, the same
+ * files the index lists; a link pointing outside the root is never read.
+ *
+ * Content is read through {@link FileChannel#map} one page at a time, so multi-GB
+ * files are never loaded onto the heap. Pages are capped by MCP_RESOURCE_MAX_PAGE
+ * bytes (default 1 MiB).
+ *
+ * {@link #contentHash} returns a CRC32C-based content hash, used to detect real content
+ * changes for subscriptions. Hashes are cached until the file's size or modification time
+ * changes. HTTP reads use {@link #etag}, which only needs the file's attributes.
+ * When a {@link ResourceWatcher} is attached it keeps the index current through
+ * {@link #onFileChanged} and {@link #onFileDeleted} and the directory rescan is skipped.
+ */
+public class FileResourceProvider {
+    private static final Logger logger = LoggerFactory.getLogger(FileResourceProvider.class);
+
+    public static final String URI_PREFIX = "resource://files/";
+    private static final int DEFAULT_MAX_PAGE = 1024 * 1024;
+
+    /**
+     * An indexed file.
+     */
+    public record FileEntry(String path, long size, long lastModified, String mimeType) {
+        public String uri() {
+            return URI_PREFIX + URLEncoder.encode(path, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A page of file content. The buffer is a read-only view of the mapped region.
+     */
+    public record Page(FileEntry file, long offset, ByteBuffer data) {
+        public int length() {
+            return data.remaining();
+        }
+
+        public boolean lastPage() {
+            return offset + data.remaining() >= file.size();
+        }
+    }
+
+    private final Path root;
+    private final int maxPageSize;
+    private final ConcurrentSkipListMap<String, FileEntry> index = new ConcurrentSkipListMap<>();
+    private final Map<Path, DirectoryState> scannedDirectories = new ConcurrentHashMap<>();
+    private final Map<String, ContentHash> hashes = new ConcurrentHashMap<>();
+    private final long refreshIntervalNanos;
+    private volatile long lastRefreshNanos;
+    private volatile boolean watched;
+
+    private record ContentHash(long size, long lastModified, String value) {
+    }
+
+    private record DirectoryState(FileTime modified, List<Path> subdirectories) {
+    }
+
+    public FileResourceProvider(Path root, int maxPageSize, long refreshIntervalMillis) throws IOException {
+        this.root = root.toRealPath();
+        if (!Files.isDirectory(this.root)) {
+            throw new IllegalArgumentException("Resource root is not a directory: " + root);
+        }
+        this.maxPageSize = maxPageSize;
+        this.refreshIntervalNanos = refreshIntervalMillis * 1_000_000L;
+        refresh();
+        logger.info("File resources: indexed {} files under {}", index.size(), this.root);
+    }
+
+    /**
+     * Create a provider for the given root, configured from environment variables.
+     */
+    public static FileResourceProvider forDirectory(String directory) throws IOException {
+        return new FileResourceProvider(Path.of(directory),
+            ToolScheduler.intEnv("MCP_RESOURCE_MAX_PAGE", DEFAULT_MAX_PAGE),
+            ToolScheduler.intEnv("MCP_RESOURCE_REFRESH_MS", 1000));
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public int maxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * Bring the index up to date, re-listing only directories that changed.
+     */
+    public synchronized void refresh() throws IOException {
+        Set<Path> seen = new HashSet<>();
+        scanDirectory(root, seen);
+        scannedDirectories.keySet().retainAll(seen);
+        lastRefreshNanos = System.nanoTime();
+    }
+
+    /**
+     * Refresh the index unless a watcher is keeping it up to date or it was refreshed
+     * within the refresh interval.
+     */
+    public void refreshIfUnwatched() throws IOException {
+        if (watched || System.nanoTime() - lastRefreshNanos < refreshIntervalNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (System.nanoTime() - lastRefreshNanos >= refreshIntervalNanos) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * Re-read the attributes of listed files, since a directory scan does not notice
+     * files modified in place. Files that vanished are dropped from the index and the
+     * returned list. A no-op while a watcher keeps the index current.
+     */
+    public List<FileEntry> revalidate(List<FileEntry> files) {
+        if (watched) {
+            return files;
+        }
+        List<FileEntry> current = new ArrayList<>(files.size());
+        for (FileEntry file : files) {
+            try {
+                current.add(stat(file.path()));
+            } catch (IOException | IllegalArgumentException e) {
+                index.remove(file.path(), file);
+            }
+        }
+        return current;
+    }
+
+    void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    /**
+     * Update the index for a created or modified file.
+     *
+     * @return the previous entry, or null if the file is new to the index
+     */
+    FileEntry onFileChanged(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        FileEntry entry = toEntry(file, attributes);
+        return index.put(entry.path(), entry);
+    }
+
+    /**
+     * Remove a deleted file, or every file below a deleted directory, from the index.
+     *
+     * @return the removed entries
+     */
+    List<FileEntry> onFileDeleted(Path path) {
+        String relative = relativize(path);
+        List<FileEntry> removed = new ArrayList<>();
+        FileEntry file = index.remove(relative);
+        if (file != null) {
+            removed.add(file);
+        }
+        String prefix = relative + "/";
+        for (String child : new ArrayList<>(index.subMap(prefix, prefix + Character.MAX_VALUE).keySet())) {
+            FileEntry entry = index.remove(child);
+            if (entry != null) {
+                removed.add(entry);
+            }
+        }
+        for (FileEntry entry : removed) {
+            hashes.remove(entry.path());
+        }
+        return removed;
+    }
+
+    /**
+     * Return the cached content hash of a file, or null if it has never been computed.
+     */
+    String cachedContentHash(String relativePath) {
+        ContentHash hash = hashes.get(relativePath);
+        return hash != null ? hash.value() : null;
+    }
+
+    void invalidateContentHash(String relativePath) {
+        hashes.remove(relativePath);
+    }
+
+    /**
+     * Return the content hash of a file, computing it only if the file changed
+     * since it was last hashed. The value is a quoted strong ETag.
+     */
+    public String contentHash(String relativePath) throws IOException {
+        FileEntry file = stat(relativePath);
+        ContentHash cached = hashes.get(file.path());
+        if (cached != null && cached.size() == file.size() && cached.lastModified() == file.lastModified()) {
+            return cached.value();
+        }
+
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(resolve(relativePath), StandardOpenOption.READ,
+                LinkOption.NOFOLLOW_LINKS)) {
+            long size = channel.size();
+            long chunk = 64L * 1024 * 1024;
+            for (long position = 0; position < size; position += chunk) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunk, size - position)));
+            }
+            String value = "\"" + Long.toHexString(size) + "-" + Long.toHexString(crc.getValue()) + "\"";
+            hashes.put(file.path(), new ContentHash(file.size(), file.lastModified(), value));
+            return value;
+        }
+    }
+
+    /**
+     * A weak ETag built from the file's size, modification time and file key, so
+     * conditional reads never have to read the content.
+     */
+    public String etag(String relativePath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(resolve(relativePath), BasicFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isRegularFile()) {
+            throw new IllegalArgumentException("Not a file: " + relativePath);
+        }
+        Object fileKey = attributes.fileKey();
+        return "W/\"" + Long.toHexString(attributes.size())
+            + "-" + Long.toHexString(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+            + (fileKey != null ? "-" + Integer.toHexString(fileKey.hashCode()) : "") + "\"";
+    }
+
+    /**
+     * Convert a resource URI (without query) back to a relative path, or null for other URIs.
+     */
+    public static String pathFromUri(String uri) {
+        if (!uri.startsWith(URI_PREFIX)) {
+            return null;
+        }
+        String spec = uri.substring(URI_PREFIX.length());
+        int query = spec.indexOf('?');
+        return URLDecoder.decode(query >= 0 ? spec.substring(0, query) : spec, StandardCharsets.UTF_8);
+    }
+
+    private void scanDirectory(Path directory, Set<Path> seen) throws IOException {
+        seen.add(directory);
+        FileTime modified = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS);
+        DirectoryState scanned = scannedDirectories.get(directory);
+        if (scanned != null && scanned.modified().equals(modified)) {
+            for (Path subdirectory : scanned.subdirectories()) {
+                try {
+                    scanDirectory(subdirectory, seen);
+                } catch (NoSuchFileException e) {
+                    // Deleted since this directory was read; its parent's new mtime
+                    // makes the next refresh re-list it
+                }
+            }
+            return;
+        }
+
+        List<Path> subdirectories = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    subdirectories.add(entry);
+                } else if (attributes.isRegularFile()) {
+                    FileEntry file = toEntry(entry, attributes);
+                    index.put(file.path(), file);
+                    present.add(file.path());
+                }
+            }
+        }
+
+        String prefix = directory.equals(root) ? "" : relativize(directory) + "/";
+        for (String path : directChildren(prefix)) {
+            if (!present.contains(path)) {
+                index.remove(path);
+            }
+        }
+        scannedDirectories.put(directory, new DirectoryState(modified, List.copyOf(subdirectories)));
+        for (Path subdirectory : subdirectories) {
+            scanDirectory(subdirectory, seen);
+        }
+        removeVanishedSubtrees(directory, subdirectories);
+    }
+
+    private void removeVanishedSubtrees(Path directory, List<Path> subdirectories) {
+        String prefix = directory.equals(root) ? "" : relativize(directory) + "/";
+        Set<String> live = new HashSet<>();
+        for (Path subdirectory : subdirectories) {
+            live.add(relativize(subdirectory) + "/");
+        }
+        for (String path : index.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+            int slash = path.indexOf('/', prefix.length());
+            if (slash >= 0 && !live.contains(path.substring(0, slash + 1))) {
+                index.remove(path);
+            }
+        }
+    }
+
+    private List<String> directChildren(String prefix) {
+        List<String> children = new ArrayList<>();
+        for (String path : index.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+            if (path.indexOf('/', prefix.length()) < 0) {
+                children.add(path);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * List indexed files in path order, starting after the given cursor.
+     *
+     * @param cursor path of the last entry of the previous page, or null for the first page
+     */
+    public List<FileEntry> list(String cursor, int limit) {
+        NavigableMap<String, FileEntry> view = cursor == null ? index : index.tailMap(cursor, false);
+        List<FileEntry> page = new ArrayList<>(Math.min(limit, view.size()));
+        for (FileEntry entry : view.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Look up a file by relative path, checking the filesystem for current size.
+     * An indexed entry is updated with what was found.
+     */
+    public FileEntry stat(String relativePath) throws IOException {
+        Path file = resolve(relativePath);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isRegularFile()) {
+            throw new IllegalArgumentException("Not a file: " + relativePath);
+        }
+        FileEntry entry = toEntry(file, attributes);
+        index.replace(entry.path(), entry);
+        return entry;
+    }
+
+    /**
+     * Map a page of the given file. The length is capped at the configured max page size.
+     */
+    public Page read(String relativePath, long offset, long length) throws IOException {
+        FileEntry file = stat(relativePath);
+        if (offset < 0 || (offset > file.size())) {
+            throw new IllegalArgumentException("Offset " + offset + " outside file of size " + file.size());
+        }
+        long available = file.size() - offset;
+        long pageLength = Math.min(Math.min(length < 0 ? maxPageSize : length, maxPageSize), available);
+
+        try (FileChannel channel = FileChannel.open(resolve(relativePath), StandardOpenOption.READ,
+                LinkOption.NOFOLLOW_LINKS)) {
+            if (pageLength == 0) {
+                return new Page(file, offset, ByteBuffer.allocate(0));
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, pageLength);
+            return new Page(file, offset, mapped.asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Resource template specification serving any indexed file by URI.
+     */
+    public McpServerFeatures.SyncResourceTemplateSpecification getFileResourceTemplate() {
+        McpSchema.ResourceTemplate template = new McpSchema.ResourceTemplate(
+            URI_PREFIX + "{path}",
+            "Files",
+            "Files under " + root + ". {path} is URL-encoded; page with ?offset=N&length=M",
+            null,
+            null
+        );
+        return new McpServerFeatures.SyncResourceTemplateSpecification(template,
+            (exchange, request) -> readResource(request.uri()));
+    }
+
+    /**
+     * Resource specifications for the indexed files, up to the given limit.
+     */
+    public List<McpServerFeatures.SyncResourceSpecification> getFileResources(int limit) {
+        List<McpServerFeatures.SyncResourceSpecification> specifications = new ArrayList<>();
+        for (FileEntry file : list(null, limit)) {
+            specifications.add(toSpecification(file));
+        }
+        if (index.size() > limit) {
+            logger.info("Listing {} of {} files as resources; the rest are readable via the template",
+                limit, index.size());
+        }
+        return specifications;
+    }
+
+    McpServerFeatures.SyncResourceSpecification toSpecification(FileEntry file) {
+        McpSchema.Resource resource = McpSchema.Resource.builder()
+            .uri(file.uri())
+            .name(file.path())
+            .mimeType(file.mimeType())
+            .size(file.size())
+            .build();
+        return new McpServerFeatures.SyncResourceSpecification(resource,
+            (exchange, request) -> readResource(request.uri()));
+    }
+
+    McpSchema.ReadResourceResult readResource(String uri) {
+        logger.info("File resource '{}' requested", uri);
+        String spec = uri.substring(URI_PREFIX.length());
+        long offset = 0;
+        long length = -1;
+        int query = spec.indexOf('?');
+        if (query >= 0) {
+            for (String parameter : spec.substring(query + 1).split("&")) {
+                String[] pair = parameter.split("=", 2);
+                if (pair.length == 2 && "offset".equals(pair[0])) {
+                    offset = Long.parseLong(pair[1]);
+                } else if (pair.length == 2 && "length".equals(pair[0])) {
+                    length = Long.parseLong(pair[1]);
+                }
+            }
+            spec = spec.substring(0, query);
+        }
+        String path = URLDecoder.decode(spec, StandardCharsets.UTF_8);
+
+        try {
+            Page page = read(path, offset, length);
+            ByteBuffer data = page.data();
+            McpSchema.ResourceContents contents = null;
+            if (isText(page.file().mimeType())) {
+                // A page boundary can split a multi-byte character; such pages are sent
+                // as a blob so the client can reassemble the exact bytes.
+                try {
+                    contents = new McpSchema.TextResourceContents(uri, page.file().mimeType(),
+                        StandardCharsets.UTF_8.newDecoder().decode(data.duplicate()).toString());
+                } catch (CharacterCodingException e) {
+                    logger.debug("Page of '{}' at offset {} is not valid UTF-8, sending as blob", path, offset);
+                }
+            }
+            if (contents == null) {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                contents = new McpSchema.BlobResourceContents(uri, page.file().mimeType(),
+                    Base64.getEncoder().encodeToString(bytes));
+            }
+            return new McpSchema.ReadResourceResult(List.of(contents));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read resource " + uri + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolve a relative path under the root, rejecting paths that escape it, textually
+     * or through a symbolic link anywhere along the way.
+     *
+     * @throws NoSuchFileException if the file does not exist
+     */
+    Path resolve(String relativePath) throws IOException {
+        Path resolved = root.resolve(relativePath).normalize();
+        if (!resolved.startsWith(root) || resolved.equals(root)) {
+            throw new IllegalArgumentException("Path outside resource root: " + relativePath);
+        }
+        if (!resolved.toRealPath().equals(resolved)) {
+            throw new IllegalArgumentException("Not a file: " + relativePath);
+        }
+        return resolved;
+    }
+
+    private FileEntry toEntry(Path file, BasicFileAttributes attributes) {
+        return new FileEntry(relativize(file), attributes.size(),
+            attributes.lastModifiedTime().toMillis(), mimeType(file));
+    }
+
+    String relativize(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    static boolean isText(String mimeType) {
+        return mimeType.startsWith("text/")
+            || mimeType.equals("application/json")
+            || mimeType.equals("application/xml")
+            || mimeType.equals("application/x-ndjson");
+    }
+
+    private static String mimeType(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        int dot = name.lastIndexOf('.');
+        String extension = dot >= 0 ? name.substring(dot + 1) : "";
+        switch (extension) {
+            case "txt":
+            case "log":
+                return "text/plain";
+            case "md":
+                return "text/markdown";
+            case "csv":
+                return "text/csv";
+            case "html":
+            case "htm":
+                return "text/html";
+            case "json":
+                return "application/json";
+            case "jsonl":
+            case "ndjson":
+                return "application/x-ndjson";
+            case "xml":
+                return "application/xml";
+            case "yaml":
+            case "yml":
+                return "text/yaml";
+            case "java":
+            case "py":
+            case "js":
+            case "ts":
+            case "sh":
+            case "properties":
+                return "text/plain";
+            case "pdf":
+                return "application/pdf";
+            case "png":
+                return "image/png";
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "gz":
+                return "application/gzip";
+            case "zip":
+                return "application/zip";
+            default:
+                return "application/octet-stream";
+        }
+    }
+}
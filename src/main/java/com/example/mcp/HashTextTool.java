@@ -0,0 +1,78 @@
+package com.example.mcp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * CPU-bound example tool registered through the {@link McpTool} service provider
+ * interface: computes an iterated SHA-256 digest of a text.
+ */
+public class HashTextTool implements McpTool {
+    private static final int MAX_ITERATIONS = 1_000_000;
+
+    private int textSlot;
+    private int iterationsSlot;
+
+    @Override
+    public String name() {
+        return "hash_text";
+    }
+
+    @Override
+    public String description() {
+        return "Compute the SHA-256 digest of a text, optionally re-hashed several times";
+    }
+
+    @Override
+    public String inputSchema() {
+        return """
+                {
+                    "type": "object",
+                    "properties": {
+                        "text": {
+                            "type": "string",
+                            "description": "The text to hash"
+                        },
+                        "iterations": {
+                            "type": "integer",
+                            "description": "Number of hashing rounds (default: 1, max: 1000000)"
+                        }
+                    },
+                    "required": ["text"]
+                }
+                """;
+    }
+
+    @Override
+    public ExecutionProfile executionProfile() {
+        return ExecutionProfile.CPU;
+    }
+
+    @Override
+    public void bind(ToolSchema schema) {
+        textSlot = schema.slot("text");
+        iterationsSlot = schema.slot("iterations");
+    }
+
+    @Override
+    public McpSchema.CallToolResult call(ToolSchema.Arguments arguments) throws Exception {
+        int iterations = (int) arguments.number(iterationsSlot, 1);
+        if (iterations < 1 || iterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("Parameter 'iterations' must be between 1 and " + MAX_ITERATIONS);
+        }
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = arguments.string(textSlot).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < iterations; i++) {
+            hash = digest.digest(hash);
+        }
+        return new McpSchema.CallToolResult(
+            List.of(new McpSchema.TextContent(HexFormat.of().formatHex(hash))),
+            false
+        );
+    }
+}
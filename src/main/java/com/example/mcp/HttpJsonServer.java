@@ -1,101 +1,363 @@
 package com.example.mcp;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.BindException;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import io.modelcontextprotocol.spec.McpSchema;
+
 /**
  * Simple HTTP JSON API Server for MCP tools.
  * Uses Java's built-in HttpServer and Jackson for JSON handling.
  * Provides REST endpoints for all MCP tools.
+ *
+ * Requests are accepted on a fixed pool of HTTP worker threads. Cheap tools run
+ * inline on that pool, while ai_chat is handed to the {@link ToolScheduler} AI lane
+ * and its response is written from the AI worker once the upstream call completes,
+ * so slow AI calls never occupy HTTP workers. The tenant for fair queueing is taken
+ * from the X-Tenant-Id header, falling back to a hash of X-API-Key.
+ *
+ * ai_chat responses are cached in an {@link AIResponseCache}. When a
+ * {@link ClusterRouter} is configured, each ai_chat request is routed to the node
+ * owning its cache key so the cache hit rate does not shrink as replicas are added.
+ *
+ * Tools loaded through the {@link McpTool} SPI are served at POST /tools/&lt;name&gt; and
+ * executed by the {@link ToolExecutor} according to their execution profile.
+ *
+ * POST /tools/batch executes several tool calls in one round trip, POST /tools/dag runs a
+ * DAG of dependent calls concurrently and streams each result as it completes, and when a
+ * {@link FileResourceProvider} is configured, /resources lists and pages through
+ * file resources. With an {@link AIBatchJobs} store, /batch/jobs collects offline ai_chat
+ * prompts into jobs run through the Azure OpenAI Batch API.
+ *
+ * POST tool endpoints honour an Idempotency-Key header through an {@link IdempotencyStore}:
+ * retries of a call with the same key attach to the running execution or replay its
+ * stored response instead of executing again.
+ *
+ * Pool sizes, scheduler limits and cache sizes follow the {@link RuntimeConfig}, which
+ * GET/PUT /admin/config reads and changes without a restart.
+ *
+ * Every request continues the caller's trace from its traceparent header as a
+ * {@link Tracing} server span.
+ *
+ * {@link #drain} shuts the server down without failing requests in flight: GET
+ * /health/ready turns 503 first so load balancers stop routing here, then the
+ * listening socket is closed and running requests (including queued ai_chat calls)
+ * are given until a deadline to complete. With {@link #setReusePort} a replacement
+ * process can bind the same port while this one is still serving.
  */
 public class HttpJsonServer {
+    private static final String TENANT_HEADER = "X-Tenant-Id";
+    private static final String API_KEY_HEADER = "X-API-Key";
+    private static final int MAX_TENANT_LENGTH = 128;
+    private static final String DEFAULT_TENANT = "anonymous";
+    private static final int DAG_MAX_NODES = ToolScheduler.intEnv("MCP_DAG_MAX_NODES", 32);
+    private static final int BIND_RETRY_SECONDS = ToolScheduler.intEnv("MCP_BIND_RETRY_SECONDS", 30);
+    private static final ToolSchema.Binder<ToolArguments.AIChat> AI_CHAT_ARGUMENTS = ToolArguments.aiChatBinder(0.7);
+
     private final int port;
     private final ObjectMapper mapper;
+    private final ToolScheduler scheduler;
+    private final AIResponseCache aiCache;
+    private final ClusterRouter cluster;
+    private final FileResourceProvider fileResources;
+    private final ToolRegistry plugins;
+    private final AIBatchJobs batchJobs;
+    private final IdempotencyStore idempotency;
     private HttpServer server;
+    private JfrEvents.HttpFilter jfrFilter;
+    private Tracing.HttpFilter tracingFilter;
+    private ThreadPoolExecutor httpExecutor;
+    private Filter drainFilter;
+    private Filter idempotencyFilter;
+    private boolean reusePort;
+    private volatile boolean ready;
+    private volatile boolean accepting = true;
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     public HttpJsonServer(int port) {
+        this(port, ToolScheduler.fromEnvironment(), null, null, null);
+    }
+
+    /**
+     * @param cluster cluster router, or null to run as a standalone node
+     * @param fileResources file resource provider, or null when no resource directory is served
+     * @param batchJobs offline batch job store, or null when batch mode is disabled
+     */
+    public HttpJsonServer(int port, ToolScheduler scheduler, ClusterRouter cluster,
+                          FileResourceProvider fileResources, AIBatchJobs batchJobs) {
         this.port = port;
         this.mapper = new ObjectMapper();
+        this.scheduler = scheduler;
+        this.aiCache = AIResponseCache.fromEnvironment();
+        this.cluster = cluster;
+        this.fileResources = fileResources;
+        this.plugins = ToolsProvider.plugins();
+        this.batchJobs = batchJobs;
+        this.idempotency = IdempotencyStore.fromEnvironment();
+    }
+
+    /**
+     * Bind with SO_REUSEPORT so that a new process can take over the port without a
+     * gap: the new process binds next to this one, and this one drains. Where the
+     * option cannot be set, binding is retried until the old process releases the port.
+     * Must be called before {@link #start}.
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
     }
 
     public void start() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server = bind(new InetSocketAddress(port));
+        Map<String, String> toolEndpoints = new HashMap<>();
+        for (ToolCatalog.Entry entry : ToolsProvider.catalog().entries()) {
+            toolEndpoints.put(entry.httpEndpoint(), entry.name());
+        }
+        jfrFilter = new JfrEvents.HttpFilter(toolEndpoints);
+        tracingFilter = new Tracing.HttpFilter();
+        drainFilter = new DrainFilter();
+        idempotencyFilter = idempotency.filter(this::resolveTenant);
 
         // Register endpoints
-        server.createContext("/tools", this::handleListTools);
-        server.createContext("/tools/add", this::handleAdd);
-        server.createContext("/tools/multiply", this::handleMultiply);
-        server.createContext("/tools/time", this::handleGetTime);
-        server.createContext("/tools/greet", this::handleGreet);
-        server.createContext("/tools/ai_chat", this::handleAIChat);
-
-        server.setExecutor(null); // Use default executor
+        context("/tools", this::handleListTools);
+        context("/tools/add", this::handleAdd);
+        context("/tools/multiply", this::handleMultiply);
+        context("/tools/time", this::handleGetTime);
+        context("/tools/greet", this::handleGreet);
+        context("/tools/ai_chat", this::handleAIChat);
+        context("/tools/batch", this::handleBatch);
+        context("/tools/dag", this::handleDag);
+        context("/batch/jobs", this::handleBatchJobs);
+        context("/cluster", this::handleClusterStatus);
+        context("/admin/jfr/dump", this::handleJfrDump);
+        context("/admin/usage", this::handleUsage);
+        context("/admin/config", this::handleConfig);
+        context("/health/live", this::handleHealth);
+        context("/health/ready", this::handleHealth);
+        context("/resources", this::handleListResources);
+        context("/resources/read", this::handleReadResource);
+        for (ToolRegistry.Registration registration : plugins.tools()) {
+            context(registration.endpoint(), exchange -> handlePluginTool(exchange, registration));
+        }
+
+        int httpThreads = RuntimeConfig.current().http().threads();
+        httpExecutor = new ThreadPoolExecutor(httpThreads, httpThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), namedThreads("http-worker-"));
+        server.setExecutor(JfrEvents.HttpFilter.timing(httpExecutor));
+        RuntimeConfig.getInstance().addListener(this::configChanged);
         server.start();
+        ready = true;
+    }
+
+    /**
+     * Resize the HTTP pool, the scheduler and the caches to a new {@link ServerConfig}.
+     */
+    private void configChanged(ServerConfig previous, ServerConfig config) {
+        int threads = config.http().threads();
+        if (threads != previous.http().threads()) {
+            // Core may never exceed max, so the order depends on the direction
+            if (threads > httpExecutor.getMaximumPoolSize()) {
+                httpExecutor.setMaximumPoolSize(threads);
+                httpExecutor.setCorePoolSize(threads);
+            } else {
+                httpExecutor.setCorePoolSize(threads);
+                httpExecutor.setMaximumPoolSize(threads);
+            }
+            System.out.println("HTTP worker threads: " + threads);
+        }
+        if (!config.scheduler().equals(previous.scheduler())) {
+            ServerConfig.Scheduler lane = config.scheduler();
+            scheduler.reconfigure(lane.aiWorkers(), lane.queuePerTenant(), lane.queueTotal(), lane.tenantWeights());
+        }
+        ServerConfig.Cache cache = config.cache();
+        if (!cache.equals(previous.cache())) {
+            aiCache.resize(cache.aiCacheSize(), cache.aiCacheTtlSeconds());
+            idempotency.resize(cache.idempotencySize(), cache.idempotencyTtlSeconds());
+        }
+    }
+
+    private void context(String path, HttpHandler handler) {
+        List<Filter> filters = server.createContext(path, handler).getFilters();
+        filters.add(drainFilter);
+        filters.add(jfrFilter);
+        filters.add(tracingFilter);
+        if (path.startsWith("/tools/")) {
+            filters.add(idempotencyFilter);
+        }
+    }
+
+    private HttpServer bind(InetSocketAddress address) throws IOException {
+        HttpServer created = HttpServer.create();
+        if (!reusePort) {
+            created.bind(address, 0);
+            return created;
+        }
+        if (enableReusePort(created)) {
+            created.bind(address, 0);
+            System.out.println("Bound port " + address.getPort() + " with SO_REUSEPORT");
+            return created;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(BIND_RETRY_SECONDS);
+        while (true) {
+            try {
+                created.bind(address, 0);
+                return created;
+            } catch (BindException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * HttpServer has no socket options, so SO_REUSEPORT is set on its channel before
+     * binding. This needs the jdk.httpserver internals opened to us, which the jar
+     * manifest does (Add-Opens); returns false when that or the option is unavailable.
+     */
+    private static boolean enableReusePort(HttpServer unbound) {
+        try {
+            Field implField = unbound.getClass().getDeclaredField("server");
+            implField.setAccessible(true);
+            Object impl = implField.get(unbound);
+            Field channelField = impl.getClass().getDeclaredField("schan");
+            channelField.setAccessible(true);
+            ServerSocketChannel channel = (ServerSocketChannel) channelField.get(impl);
+            if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                System.err.println("SO_REUSEPORT is not supported here, waiting for the port instead");
+                return false;
+            }
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException | IOException e) {
+            System.err.println("Cannot set SO_REUSEPORT (" + e.getMessage() + "), waiting for the port instead");
+            return false;
+        }
+    }
+
+    /**
+     * Shut down without failing requests in flight. Readiness turns false first; after
+     * {@code readyDelaySeconds} (time for load balancers to notice) the listening socket
+     * is closed, requests arriving on open connections are answered 503, and running
+     * requests get until {@code drainSeconds} to finish before connections are closed.
+     * Finally the AI workers and batch poller are stopped.
+     */
+    public void drain(int readyDelaySeconds, int drainSeconds) {
+        ready = false;
+        System.out.println("Shutting down: readiness off, " + inFlight.get() + " requests in flight");
+        if (readyDelaySeconds > 0) {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(readyDelaySeconds));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        accepting = false;
+        long started = System.nanoTime();
+        if (server != null) {
+            // Closes the listener at once, then waits for open exchanges up to the delay
+            server.stop(drainSeconds);
+        }
+        int abandoned = inFlight.get();
+        System.out.println("Drained in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms"
+            + (abandoned > 0 ? ", " + abandoned + " requests abandoned at the deadline" : ""));
+        scheduler.shutdown();
+        if (batchJobs != null) {
+            batchJobs.shutdown();
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdown();
+        }
+        System.out.flush();
+    }
+
+    /**
+     * True from {@link #start} until {@link #drain} begins.
+     */
+    public boolean isReady() {
+        return ready;
     }
 
     public void stop() {
         if (server != null) {
             server.stop(0);
         }
+        scheduler.shutdown();
+        if (batchJobs != null) {
+            batchJobs.shutdown();
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdown();
+        }
     }
 
+    /**
+     * Serve the pre-serialized tool catalog. The catalog ETag lets clients revalidate
+     * with If-None-Match and receive 304 when nothing changed.
+     */
     private void handleListTools(HttpExchange exchange) throws IOException {
         if (!"GET".equals(exchange.getRequestMethod())) {
             sendError(exchange, 405, "Method not allowed. Use GET.");
             return;
         }
 
-        ObjectNode response = mapper.createObjectNode();
-        response.put("server", "mcp-server-java");
-        response.put("version", "1.0.0");
-        
-        var toolsArray = response.putArray("tools");
-        toolsArray.addObject()
-            .put("name", "add")
-            .put("description", "Add two numbers")
-            .put("endpoint", "/tools/add")
-            .put("method", "POST")
-            .put("parameters", "{\"a\": number, \"b\": number}");
-        
-        toolsArray.addObject()
-            .put("name", "multiply")
-            .put("description", "Multiply two numbers")
-            .put("endpoint", "/tools/multiply")
-            .put("method", "POST")
-            .put("parameters", "{\"x\": number, \"y\": number}");
-        
-        toolsArray.addObject()
-            .put("name", "get_current_time")
-            .put("description", "Get the current date and time")
-            .put("endpoint", "/tools/time")
-            .put("method", "GET");
-        
-        toolsArray.addObject()
-            .put("name", "greet")
-            .put("description", "Greet a person by name")
-            .put("endpoint", "/tools/greet")
-            .put("method", "POST")
-            .put("parameters", "{\"name\": string}");
-        
-        toolsArray.addObject()
-            .put("name", "ai_chat")
-            .put("description", "Chat with Azure AI Foundry agent")
-            .put("endpoint", "/tools/ai_chat")
-            .put("method", "POST")
-            .put("parameters", "{\"prompt\": string, \"max_tokens\": number (optional), \"temperature\": number (optional)}");
-
-        sendJsonResponse(exchange, 200, response);
+        ToolCatalog catalog = ToolsProvider.catalog();
+        exchange.getResponseHeaders().add("ETag", catalog.etag());
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(catalog.etag()))) {
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        sendBytes(exchange, 200, catalog.httpListing());
     }
 
     private void handleAdd(HttpExchange exchange) throws IOException {
@@ -105,24 +367,9 @@ public class HttpJsonServer {
         }
 
         try {
-            Map<String, Object> params = parseJsonBody(exchange);
-            
-            if (!params.containsKey("a") || !params.containsKey("b")) {
-                sendError(exchange, 400, "Missing required parameters: a and b");
-                return;
-            }
-
-            double a = getNumberParam(params, "a");
-            double b = getNumberParam(params, "b");
-            double result = a + b;
-
-            ObjectNode response = mapper.createObjectNode();
-            response.put("tool", "add");
-            response.put("result", result);
-            response.put("message", "The result is: " + result);
-
-            sendJsonResponse(exchange, 200, response);
-
+            sendJsonResponse(exchange, 200, add(ToolArguments.ADD.bind(exchange.getRequestBody().readAllBytes())));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
         } catch (Exception e) {
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
@@ -135,24 +382,9 @@ public class HttpJsonServer {
         }
 
         try {
-            Map<String, Object> params = parseJsonBody(exchange);
-            
-            if (!params.containsKey("x") || !params.containsKey("y")) {
-                sendError(exchange, 400, "Missing required parameters: x and y");
-                return;
-            }
-
-            double x = getNumberParam(params, "x");
-            double y = getNumberParam(params, "y");
-            double result = x * y;
-
-            ObjectNode response = mapper.createObjectNode();
-            response.put("tool", "multiply");
-            response.put("result", result);
-            response.put("message", "The result is: " + result);
-
-            sendJsonResponse(exchange, 200, response);
-
+            sendJsonResponse(exchange, 200, multiply(ToolArguments.MULTIPLY.bind(exchange.getRequestBody().readAllBytes())));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
         } catch (Exception e) {
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
         }
@@ -164,6 +396,45 @@ public class HttpJsonServer {
             return;
         }
 
+        sendJsonResponse(exchange, 200, currentTime());
+    }
+
+    private void handleGreet(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use POST.");
+            return;
+        }
+
+        try {
+            sendJsonResponse(exchange, 200, greet(ToolArguments.GREET.bind(exchange.getRequestBody().readAllBytes())));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+        }
+    }
+
+    private ObjectNode add(ToolArguments.Add arguments) {
+        double result = arguments.a() + arguments.b();
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("tool", "add");
+        response.put("result", result);
+        response.put("message", "The result is: " + result);
+        return response;
+    }
+
+    private ObjectNode multiply(ToolArguments.Multiply arguments) {
+        double result = arguments.x() * arguments.y();
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("tool", "multiply");
+        response.put("result", result);
+        response.put("message", "The result is: " + result);
+        return response;
+    }
+
+    private ObjectNode currentTime() {
         LocalDateTime now = LocalDateTime.now();
         String formattedTime = now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
 
@@ -171,57 +442,626 @@ public class HttpJsonServer {
         response.put("tool", "get_current_time");
         response.put("time", formattedTime);
         response.put("message", "Current time: " + formattedTime);
+        return response;
+    }
 
-        sendJsonResponse(exchange, 200, response);
+    private ObjectNode greet(ToolArguments.Greet arguments) {
+        String greeting = "Hello " + arguments.name() + " welcome to the Java MCP Server!";
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("tool", "greet");
+        response.put("message", greeting);
+        return response;
     }
 
-    private void handleGreet(HttpExchange exchange) throws IOException {
+    /**
+     * Execute several tool calls in one request.
+     * Body: {"calls": [{"id": "1", "tool": "add", "arguments": {"a": 1, "b": 2}}, ...]}
+     * Response: {"results": [{"id": "1", "status": 200, "body": {...}}, ...]} in request order.
+     * Cheap tools run inline; ai_chat calls are queued on the AI lane and the response
+     * is written once every call has completed.
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
         if (!"POST".equals(exchange.getRequestMethod())) {
             sendError(exchange, 405, "Method not allowed. Use POST.");
             return;
         }
 
+        JsonNode calls;
         try {
-            Map<String, Object> params = parseJsonBody(exchange);
-            
-            if (!params.containsKey("name")) {
-                sendError(exchange, 400, "Missing required parameter: name");
+            calls = mapper.readTree(exchange.getRequestBody()).path("calls");
+            if (!calls.isArray()) {
+                sendError(exchange, 400, "Missing required parameter: calls");
                 return;
             }
+        } catch (Exception e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        }
 
-            String name = params.get("name").toString();
-            String greeting = "Hello " + name + " welcome to the Java MCP Server!";
+        String tenant = resolveTenant(exchange);
+        List<CompletableFuture<ObjectNode>> results = new ArrayList<>();
+        for (JsonNode call : calls) {
+            results.add(executeBatchCall(call, tenant, "batch"));
+        }
 
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
             ObjectNode response = mapper.createObjectNode();
-            response.put("tool", "greet");
-            response.put("message", greeting);
+            var resultsArray = response.putArray("results");
+            for (CompletableFuture<ObjectNode> result : results) {
+                resultsArray.add(result.join());
+            }
+            try {
+                sendJsonResponse(exchange, 200, response);
+            } catch (Exception ex) {
+                System.err.println("Failed to send batch response: " + ex.getMessage());
+            }
+        });
+    }
+
+    private CompletableFuture<ObjectNode> executeBatchCall(JsonNode call, String tenant, String transport) {
+        JsonNode arguments = call.path("arguments");
+        JfrEvents.ToolInvocationEvent event = JfrEvents.beginTool(call.path("tool").asText(), transport, -1,
+            arguments.size());
+        CompletableFuture<ObjectNode> result = runBatchCall(call, tenant);
+        if (event != null) {
+            result.whenComplete((outcome, error) ->
+                JfrEvents.endTool(event, error == null ? outcome.path("status").asInt() : 500));
+        }
+        return result;
+    }
+
+    private CompletableFuture<ObjectNode> runBatchCall(JsonNode call, String tenant) {
+        ObjectNode outcome = mapper.createObjectNode();
+        outcome.set("id", call.path("id"));
+        String tool = call.path("tool").asText();
+        JsonNode arguments = call.has("arguments") ? call.get("arguments") : mapper.createObjectNode();
+        try {
+            if ("ai_chat".equals(tool)) {
+                ToolArguments.AIChat chat = AI_CHAT_ARGUMENTS.bind(mapper.treeAsTokens(arguments));
+                String prompt = chat.prompt();
+                String cacheKey = AIResponseCache.key(prompt, chat.maxTokens(), chat.temperature());
+
+                String cached = aiCache.get(cacheKey);
+                CompletableFuture<String> response = cached != null
+                    ? CompletableFuture.completedFuture(cached)
+                    : submitAIChat(tenant, prompt, cacheKey, chat.maxTokens(), chat.temperature());
+                return response.handle((aiResponse, error) -> error == null
+                    ? batchOutcome(outcome, 200, aiChatResponse(prompt, aiResponse))
+                    : batchOutcome(outcome, 500, errorBody(500, "AI Chat error: " + unwrap(error).getMessage())));
+            }
+
+            ObjectNode body;
+            switch (tool) {
+                case "add":
+                    body = add(ToolArguments.ADD.bind(mapper.treeAsTokens(arguments)));
+                    break;
+                case "multiply":
+                    body = multiply(ToolArguments.MULTIPLY.bind(mapper.treeAsTokens(arguments)));
+                    break;
+                case "get_current_time":
+                case "time":
+                    body = currentTime();
+                    break;
+                case "greet":
+                    body = greet(ToolArguments.GREET.bind(mapper.treeAsTokens(arguments)));
+                    break;
+                default:
+                    ToolRegistry.Registration registration = plugins.get(tool);
+                    if (registration != null) {
+                        return executePlugin(registration, registration.schema().read(mapper.treeAsTokens(arguments)))
+                            .thenApply(result -> batchOutcome(outcome, result.status(), result.body()));
+                    }
+                    return CompletableFuture.completedFuture(
+                        batchOutcome(outcome, 404, errorBody(404, "Unknown tool: " + tool)));
+            }
+            return CompletableFuture.completedFuture(batchOutcome(outcome, 200, body));
+        } catch (ToolScheduler.LoadShedException e) {
+            int status = e.isTenantLimit() ? 429 : 503;
+            return CompletableFuture.completedFuture(batchOutcome(outcome, status, errorBody(status, e.getMessage())));
+        } catch (TokenAccounting.QuotaExceededException e) {
+            return CompletableFuture.completedFuture(batchOutcome(outcome, 429, errorBody(429, e.getMessage())));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(batchOutcome(outcome, 400, errorBody(400, e.getMessage())));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(
+                batchOutcome(outcome, 400, errorBody(400, "Invalid request: " + e.getMessage())));
+        }
+    }
+
+    /**
+     * Execute a DAG of tool calls: POST /tools/dag with {"nodes": [...]} (see {@link ToolDag}).
+     * The response is streamed as newline delimited JSON, one line per node in completion
+     * order, followed by {"done": true, "nodes": N, "failed": F, "elapsed_ms": T}.
+     */
+    private void handleDag(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use POST.");
+            return;
+        }
+
+        ToolDag dag;
+        try {
+            dag = ToolDag.parse(mapper.readTree(exchange.getRequestBody()).path("nodes"), DAG_MAX_NODES);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        } catch (Exception e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        }
+
+        String tenant = resolveTenant(exchange);
+        long start = System.nanoTime();
+        exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream os = exchange.getResponseBody();
+
+        dag.execute((node, arguments) -> {
+            ObjectNode call = mapper.createObjectNode();
+            call.put("id", node.id());
+            call.put("tool", node.tool());
+            call.set("arguments", arguments);
+            return executeBatchCall(call, tenant, "dag").thenApply(outcome ->
+                new ToolDag.NodeResult(outcome.get("status").asInt(), outcome.get("body")));
+        }, line -> writeLine(os, line)).whenComplete((failed, error) -> {
+            ObjectNode summary = mapper.createObjectNode();
+            summary.put("done", true);
+            summary.put("nodes", dag.nodes().size());
+            summary.put("failed", failed != null ? failed : dag.nodes().size());
+            summary.put("elapsed_ms", (System.nanoTime() - start) / 1_000_000);
+            writeLine(os, summary);
+            exchange.close();
+        });
+    }
+
+    private void writeLine(OutputStream os, ObjectNode line) {
+        try {
+            byte[] bytes = mapper.writeValueAsBytes(line);
+            synchronized (os) {
+                os.write(bytes);
+                os.write('\n');
+                os.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to stream DAG result: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dump the continuous JFR recording to a file: POST /admin/jfr/dump.
+     * Responds with the file's path and size.
+     */
+    private void handleJfrDump(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use POST.");
+            return;
+        }
+        if (!authorizeAdmin(exchange)) {
+            return;
+        }
+        JfrRecording recording = JfrRecording.active();
+        if (recording == null) {
+            sendError(exchange, 404, "No JFR recording is running. Start with --jfr.");
+            return;
+        }
+
+        Path file = recording.dump();
+        ObjectNode response = mapper.createObjectNode();
+        response.put("file", file.toAbsolutePath().toString());
+        response.put("size", Files.size(file));
+        sendJsonResponse(exchange, 200, response);
+    }
+
+    /**
+     * Admin endpoints require "Authorization: Bearer &lt;MCP_ADMIN_TOKEN&gt;". Without a
+     * configured token they are only served to loopback clients. Sends the error
+     * response and returns false when the request is not allowed.
+     */
+    private boolean authorizeAdmin(HttpExchange exchange) throws IOException {
+        return authorizeAdmin(exchange, false);
+    }
+
+    /**
+     * @param requireToken refuse the request when no MCP_ADMIN_TOKEN is configured, even
+     *                     from loopback; used for changes that persist, such as configuration
+     */
+    private boolean authorizeAdmin(HttpExchange exchange, boolean requireToken) throws IOException {
+        String token = System.getenv("MCP_ADMIN_TOKEN");
+        if (token == null || token.isEmpty()) {
+            if (requireToken) {
+                sendError(exchange, 403, "Set MCP_ADMIN_TOKEN to enable this admin endpoint");
+                return false;
+            }
+            if (exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+                return true;
+            }
+            sendError(exchange, 403, "Admin endpoints are only available from localhost unless MCP_ADMIN_TOKEN is set");
+            return false;
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !MessageDigest.isEqual(("Bearer " + token).getBytes(StandardCharsets.UTF_8),
+                authorization.trim().getBytes(StandardCharsets.UTF_8))) {
+            exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer");
+            sendError(exchange, 401, "Missing or invalid admin token");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Offline ai_chat jobs:
+     *   GET  /batch/jobs                  - list jobs
+     *   POST /batch/jobs                  - create a job: {"prompts": [...], "submit": true}
+     *   GET  /batch/jobs/{id}             - job status
+     *   POST /batch/jobs/{id}/prompts     - add prompts to an open job: {"prompts": [...]}
+     *   POST /batch/jobs/{id}/submit      - submit an open job to the Batch API
+     *   GET  /batch/jobs/{id}/results     - results of a completed job as JSON lines
+     * Prompts are strings or {"custom_id", "prompt", "max_tokens"} objects.
+     */
+    private void handleBatchJobs(HttpExchange exchange) throws IOException {
+        if (batchJobs == null) {
+            sendError(exchange, 404, "Batch jobs are not enabled. Start with --batch-dir.");
+            return;
+        }
+
+        String[] path = exchange.getRequestURI().getPath().substring("/batch/jobs".length()).split("/");
+        String jobId = path.length > 1 ? path[1] : null;
+        String action = path.length > 2 ? path[2] : null;
+        String method = exchange.getRequestMethod();
+        if (path.length > 3 || (jobId != null && batchJobs.get(jobId) == null)) {
+            sendError(exchange, 404, "Unknown job: " + jobId);
+            return;
+        }
+
+        try {
+            if (jobId == null && "GET".equals(method)) {
+                ObjectNode response = mapper.createObjectNode();
+                var jobsArray = response.putArray("jobs");
+                for (AIBatchJobs.Job job : batchJobs.list()) {
+                    jobsArray.add(batchJobs.describe(job));
+                }
+                sendJsonResponse(exchange, 200, response);
+            } else if (jobId == null && "POST".equals(method)) {
+                JsonNode body = readBody(exchange);
+                AIBatchJobs.Job job = batchJobs.create(parseBatchPrompts(body.path("prompts")));
+                if (body.path("submit").asBoolean(true) && job.prompts > 0) {
+                    batchJobs.submit(job.id);
+                }
+                sendJsonResponse(exchange, 201, batchJobs.describe(job));
+            } else if (action == null && "GET".equals(method)) {
+                sendJsonResponse(exchange, 200, batchJobs.describe(batchJobs.get(jobId)));
+            } else if ("prompts".equals(action) && "POST".equals(method)) {
+                List<AIBatchJobs.Prompt> prompts = parseBatchPrompts(readBody(exchange).path("prompts"));
+                sendJsonResponse(exchange, 200, batchJobs.describe(batchJobs.append(jobId, prompts)));
+            } else if ("submit".equals(action) && "POST".equals(method)) {
+                sendJsonResponse(exchange, 200, batchJobs.describe(batchJobs.submit(jobId)));
+            } else if ("results".equals(action) && "GET".equals(method)) {
+                Path results = batchJobs.results(jobId);
+                if (results == null) {
+                    sendError(exchange, 409, "Job " + jobId + " has no results yet (status "
+                        + batchJobs.get(jobId).status + ")");
+                    return;
+                }
+                byte[] lines = Files.readAllBytes(results);
+                exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(200, lines.length == 0 ? -1 : lines.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(lines);
+                }
+            } else {
+                sendError(exchange, 405, "Method not allowed.");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (JsonProcessingException e) {
+            sendError(exchange, 400, "Invalid request: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            sendError(exchange, 502, "Batch API error: " + e.getMessage());
+        }
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        return body.length == 0 ? mapper.createObjectNode() : mapper.readTree(body);
+    }
+
+    private List<AIBatchJobs.Prompt> parseBatchPrompts(JsonNode prompts) throws IOException {
+        List<AIBatchJobs.Prompt> parsed = new ArrayList<>();
+        if (prompts.isMissingNode()) {
+            return parsed;
+        }
+        if (!prompts.isArray()) {
+            throw new IllegalArgumentException("Parameter 'prompts' must be an array");
+        }
+        for (JsonNode entry : prompts) {
+            if (entry.isTextual()) {
+                parsed.add(new AIBatchJobs.Prompt(null, entry.asText(), RuntimeConfig.current().tools().aiChatMaxTokens()));
+            } else {
+                ToolArguments.AIChat arguments = AI_CHAT_ARGUMENTS.bind(mapper.treeAsTokens(entry));
+                String customId = entry.hasNonNull("custom_id") ? entry.get("custom_id").asText() : null;
+                parsed.add(new AIBatchJobs.Prompt(customId, arguments.prompt(), arguments.maxTokens()));
+            }
+        }
+        return parsed;
+    }
 
-            sendJsonResponse(exchange, 200, response);
+    /**
+     * Execute a tool loaded through the {@link McpTool} SPI: POST /tools/&lt;name&gt;.
+     * The call runs on the executor matching the tool's profile and the response is
+     * written when it completes.
+     */
+    private void handlePluginTool(HttpExchange exchange, ToolRegistry.Registration registration) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use POST.");
+            return;
+        }
 
+        ToolSchema.Arguments arguments;
+        try {
+            arguments = registration.schema().read(exchange.getRequestBody().readAllBytes());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
         } catch (Exception e) {
             sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        }
+
+        executePlugin(registration, arguments).thenAccept(result -> {
+            try {
+                if (result.status() == 429 || result.status() == 503) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                }
+                sendJsonResponse(exchange, result.status(), result.body());
+            } catch (Exception e) {
+                System.err.println("Failed to send " + registration.name() + " response: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Run a provided tool and map the outcome to an HTTP status and body. The future never
+     * completes exceptionally.
+     */
+    private CompletableFuture<ToolOutcome> executePlugin(ToolRegistry.Registration registration,
+                                                         ToolSchema.Arguments arguments) {
+        try {
+            return ToolExecutor.getInstance().execute(registration, arguments).handle((result, error) -> {
+                if (error != null) {
+                    Throwable cause = unwrap(error);
+                    if (cause instanceof IllegalArgumentException) {
+                        return new ToolOutcome(400, errorBody(400, cause.getMessage()));
+                    }
+                    System.err.println("ERROR in " + registration.name() + ": " + cause.getMessage());
+                    return new ToolOutcome(500, errorBody(500, "Tool error: " + cause.getMessage()));
+                }
+
+                StringBuilder text = new StringBuilder();
+                for (McpSchema.Content content : result.content()) {
+                    if (content instanceof McpSchema.TextContent) {
+                        text.append(((McpSchema.TextContent) content).text());
+                    }
+                }
+                if (Boolean.TRUE.equals(result.isError())) {
+                    return new ToolOutcome(500, errorBody(500, text.toString()));
+                }
+                ObjectNode body = mapper.createObjectNode();
+                body.put("tool", registration.name());
+                body.put("message", text.toString());
+                return new ToolOutcome(200, body);
+            });
+        } catch (ToolScheduler.LoadShedException e) {
+            int status = e.isTenantLimit() ? 429 : 503;
+            return CompletableFuture.completedFuture(new ToolOutcome(status, errorBody(status, e.getMessage())));
         }
     }
 
-    private Map<String, Object> parseJsonBody(HttpExchange exchange) throws IOException {
-        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        @SuppressWarnings("unchecked")
-        Map<String, Object> map = mapper.readValue(body, HashMap.class);
-        return map;
+    private ObjectNode batchOutcome(ObjectNode outcome, int status, ObjectNode body) {
+        outcome.put("status", status);
+        outcome.set("body", body);
+        return outcome;
     }
 
-    private double getNumberParam(Map<String, Object> params, String key) {
-        Object value = params.get(key);
-        if (value instanceof Number) {
-            return ((Number) value).doubleValue();
+    /**
+     * List file resources: GET /resources?cursor=&lt;path&gt;&amp;limit=N
+     */
+    private void handleListResources(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use GET.");
+            return;
+        }
+        if (fileResources == null) {
+            sendError(exchange, 404, "File resources are not enabled. Start with --resources-dir.");
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange);
+        int limit;
+        try {
+            limit = query.containsKey("limit") ? Math.max(1, Math.min(1000, Integer.parseInt(query.get("limit")))) : 100;
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid limit: " + query.get("limit"));
+            return;
         }
-        return Double.parseDouble(value.toString());
+        fileResources.refreshIfUnwatched();
+        List<FileResourceProvider.FileEntry> listed = fileResources.list(query.get("cursor"), limit);
+        List<FileResourceProvider.FileEntry> page = fileResources.revalidate(listed);
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("total", fileResources.size());
+        var resourcesArray = response.putArray("resources");
+        for (FileResourceProvider.FileEntry file : page) {
+            resourcesArray.addObject()
+                .put("uri", file.uri())
+                .put("path", file.path())
+                .put("size", file.size())
+                .put("mimeType", file.mimeType())
+                .put("lastModified", file.lastModified());
+        }
+        if (listed.size() == limit) {
+            response.put("nextCursor", listed.get(listed.size() - 1).path());
+        }
+        sendJsonResponse(exchange, 200, response);
+    }
+
+    /**
+     * Read a file resource: GET /resources/read?path=&lt;path&gt;&amp;offset=N&amp;length=M.
+     * A standard "Range: bytes=start-end" header is honoured as well and answered with 206,
+     * or 416 when it starts past the end of the file.
+     * The response carries an ETag derived from the file's size and modification time;
+     * a matching If-None-Match is answered with 304 and no body.
+     * The mapped page is written straight to the response without copying it onto the heap.
+     */
+    private void handleReadResource(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use GET.");
+            return;
+        }
+        if (fileResources == null) {
+            sendError(exchange, 404, "File resources are not enabled. Start with --resources-dir.");
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange);
+        String path = query.get("path");
+        if (path == null) {
+            sendError(exchange, 400, "Missing required parameter: path");
+            return;
+        }
+
+        FileResourceProvider.Page page;
+        boolean partial;
+        String etag;
+        try {
+            etag = fileResources.etag(path);
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag))) {
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            long offset = query.containsKey("offset") ? Long.parseLong(query.get("offset")) : 0;
+            long length = query.containsKey("length") ? Long.parseLong(query.get("length")) : -1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            long[] bounds = parseByteRange(range);
+            if (bounds != null) {
+                // A valid range starting past the end is a 416; invalid ones were
+                // already ignored by parseByteRange (RFC 9110 14.2).
+                long size = fileResources.stat(path).size();
+                boolean satisfiable;
+                if (bounds[0] < 0) {
+                    offset = Math.max(0, size - bounds[1]);
+                    length = size - offset;
+                    satisfiable = bounds[1] > 0 && size > 0;
+                } else {
+                    offset = bounds[0];
+                    length = bounds[1] < 0 ? -1 : bounds[1] - offset + 1;
+                    satisfiable = offset < size;
+                }
+                if (!satisfiable) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + size);
+                    sendError(exchange, 416, "Range not satisfiable: " + range);
+                    return;
+                }
+            }
+            page = fileResources.read(path, offset, length);
+            partial = page.offset() > 0 || !page.lastPage();
+        } catch (java.nio.file.NoSuchFileException e) {
+            sendError(exchange, 404, "Resource not found: " + path);
+            return;
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+
+        var headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", page.file().mimeType());
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Accept-Ranges", "bytes");
+        headers.add("ETag", etag);
+        if (partial) {
+            headers.add("Content-Range", "bytes " + page.offset() + "-" + (page.offset() + page.length() - 1)
+                + "/" + page.file().size());
+        }
+        exchange.sendResponseHeaders(partial ? 206 : 200, page.length() == 0 ? -1 : page.length());
+        try (OutputStream os = exchange.getResponseBody()) {
+            WritableByteChannel channel = Channels.newChannel(os);
+            ByteBuffer data = page.data();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * Parse a single "bytes=first-last" or "bytes=-suffix" range. Returns {first, last}
+     * with last = -1 for an open end, or {-1, suffix} for a suffix range; returns null
+     * when the header is absent, a multi-range, or not a valid range (including
+     * last &lt; first), in which case it is ignored and the full resource is served.
+     */
+    private static long[] parseByteRange(String range) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String[] bounds = range.substring("bytes=".length()).trim().split("-", 2);
+        if (bounds.length != 2 || (bounds[0].isEmpty() && bounds[1].isEmpty())) {
+            return null;
+        }
+        try {
+            if (bounds[0].isEmpty()) {
+                return new long[] {-1, parseRangeBound(bounds[1])};
+            }
+            long first = parseRangeBound(bounds[0]);
+            if (bounds[1].isEmpty()) {
+                return new long[] {first, -1};
+            }
+            long last = parseRangeBound(bounds[1]);
+            return last < first ? null : new long[] {first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseRangeBound(String bound) {
+        for (int i = 0; i < bound.length(); i++) {
+            char c = bound.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid range bound: " + bound);
+            }
+        }
+        return Long.parseLong(bound);
+    }
+
+    private Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String parameter : raw.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            query.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                pair.length == 2 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+        return query;
     }
 
     private void sendJsonResponse(HttpExchange exchange, int statusCode, ObjectNode json) throws IOException {
-        String response = mapper.writeValueAsString(json);
-        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-        
+        sendBytes(exchange, statusCode, mapper.writeValueAsBytes(json));
+    }
+
+    private void sendBytes(HttpExchange exchange, int statusCode, byte[] bytes) throws IOException {
         exchange.getResponseHeaders().add("Content-Type", "application/json");
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.sendResponseHeaders(statusCode, bytes.length);
@@ -237,51 +1077,351 @@ public class HttpJsonServer {
             return;
         }
 
+        byte[] body;
+        String prompt;
+        int maxTokens;
+        double temperature;
         try {
-            Map<String, Object> params = parseJsonBody(exchange);
-            
-            if (!params.containsKey("prompt")) {
-                sendError(exchange, 400, "Missing required parameter: prompt");
+            body = exchange.getRequestBody().readAllBytes();
+            ToolArguments.AIChat arguments = AI_CHAT_ARGUMENTS.bind(body);
+            prompt = arguments.prompt();
+            maxTokens = arguments.maxTokens();
+            temperature = arguments.temperature();
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        } catch (Exception e) {
+            sendError(exchange, 400, "Invalid request: " + e.getMessage());
+            return;
+        }
+
+        String cacheKey = AIResponseCache.key(prompt, maxTokens, temperature);
+        if (cluster != null && !cluster.isForwardedByPeer(
+                exchange.getRequestHeaders().getFirst(ClusterRouter.FORWARDED_HEADER),
+                exchange.getRemoteAddress().getAddress())) {
+            String owner = cluster.ownerFor(cacheKey);
+            if (!cluster.isSelf(owner)) {
+                forwardAIChat(exchange, owner, body, prompt, cacheKey, maxTokens, temperature);
                 return;
             }
+        }
+        executeAIChat(exchange, prompt, cacheKey, maxTokens, temperature);
+    }
 
-            String prompt = params.get("prompt").toString();
-            
-            int maxTokens = 500;
-            if (params.containsKey("max_tokens")) {
-                maxTokens = ((Number) params.get("max_tokens")).intValue();
-            }
-            
-            double temperature = 0.7;
-            if (params.containsKey("temperature")) {
-                temperature = getNumberParam(params, "temperature");
+    private void forwardAIChat(HttpExchange exchange, String owner, byte[] body, String prompt,
+                               String cacheKey, int maxTokens, double temperature) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(TENANT_HEADER, resolveTenant(exchange));
+        Tracing.inject(headers);
+
+        cluster.forward(owner, "/tools/ai_chat", body, headers).whenComplete((forwarded, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = unwrap(error);
+                    // Only a request that never reached the owner is safe to run here; once it
+                    // was sent, the owner may already be calling (and paying for) the upstream
+                    if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+                        System.err.println("Cannot reach " + owner + " for ai_chat, serving locally: " + cause);
+                        executeAIChat(exchange, prompt, cacheKey, maxTokens, temperature);
+                    } else if (cause instanceof HttpTimeoutException) {
+                        sendError(exchange, 504, "Timed out waiting for cluster node " + owner);
+                    } else {
+                        System.err.println("Forwarding ai_chat to " + owner + " failed: " + cause);
+                        sendError(exchange, 502, "Cluster node " + owner + " failed: " + cause.getMessage());
+                    }
+                    return;
+                }
+                forwarded.headers().firstValue(ClusterRouter.SERVED_BY_HEADER)
+                    .ifPresent(node -> exchange.getResponseHeaders().add(ClusterRouter.SERVED_BY_HEADER, node));
+                forwarded.headers().firstValue("X-MCP-Cache")
+                    .ifPresent(status -> exchange.getResponseHeaders().add("X-MCP-Cache", status));
+                forwarded.headers().firstValue("Retry-After")
+                    .ifPresent(value -> exchange.getResponseHeaders().add("Retry-After", value));
+                sendBytes(exchange, forwarded.statusCode(), forwarded.body());
+            } catch (Exception ex) {
+                System.err.println("Failed to relay forwarded AI Chat response: " + ex.getMessage());
             }
+        });
+    }
 
-            AzureAIClient aiClient = AzureAIClient.getInstance();
-            String aiResponse = aiClient.chat(prompt, maxTokens, temperature);
+    private void executeAIChat(HttpExchange exchange, String prompt, String cacheKey,
+                               int maxTokens, double temperature) throws IOException {
+        if (cluster != null) {
+            exchange.getResponseHeaders().add(ClusterRouter.SERVED_BY_HEADER, cluster.selfUrl());
+        }
 
-            ObjectNode response = mapper.createObjectNode();
-            response.put("tool", "ai_chat");
-            response.put("prompt", prompt);
-            response.put("response", aiResponse);
+        String cached = aiCache.get(cacheKey);
+        if (cached != null) {
+            exchange.getResponseHeaders().add("X-MCP-Cache", "HIT");
+            sendJsonResponse(exchange, 200, aiChatResponse(prompt, cached));
+            return;
+        }
+        exchange.getResponseHeaders().add("X-MCP-Cache", "MISS");
 
-            sendJsonResponse(exchange, 200, response);
+        CompletableFuture<String> result;
+        try {
+            result = submitAIChat(resolveTenant(exchange), prompt, cacheKey, maxTokens, temperature);
+        } catch (ToolScheduler.LoadShedException e) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            sendError(exchange, e.isTenantLimit() ? 429 : 503, e.getMessage());
+            return;
+        } catch (TokenAccounting.QuotaExceededException e) {
+            if (e.retryAfterSeconds() > 0) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(e.retryAfterSeconds()));
+            }
+            sendError(exchange, 429, e.getMessage());
+            return;
+        }
 
-        } catch (Exception e) {
-            System.err.println("ERROR in handleAIChat: " + e.getMessage());
-            e.printStackTrace();
+        result.whenComplete((aiResponse, error) -> {
             try {
-                sendError(exchange, 500, "AI Chat error: " + e.getMessage());
+                if (error != null) {
+                    Throwable cause = unwrap(error);
+                    System.err.println("ERROR in handleAIChat: " + cause.getMessage());
+                    cause.printStackTrace();
+                    sendError(exchange, 500, "AI Chat error: " + cause.getMessage());
+                    return;
+                }
+
+                sendJsonResponse(exchange, 200, aiChatResponse(prompt, aiResponse));
             } catch (Exception ex) {
-                System.err.println("Failed to send error response: " + ex.getMessage());
+                System.err.println("Failed to send AI Chat response: " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Queue an upstream ai_chat call on the AI lane and account its token usage.
+     *
+     * @throws TokenAccounting.QuotaExceededException if the tenant's hard quota is used up
+     */
+    private CompletableFuture<String> submitAIChat(String tenant, String prompt, String cacheKey,
+                                                   int maxTokens, double temperature) {
+        TokenAccounting accounting = TokenAccounting.getInstance();
+        accounting.checkQuota(tenant);
+        return scheduler.submit(tenant, () -> {
+            LlmBackend aiClient = LlmBackends.get();
+            LlmBackend.Completion completion = aiClient.complete(prompt, maxTokens, temperature);
+            accounting.record(tenant, "ai_chat", completion.deployment(), completion.usage());
+            aiCache.put(cacheKey, completion.content());
+            return completion.content();
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private ObjectNode aiChatResponse(String prompt, String aiResponse) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("tool", "ai_chat");
+        response.put("prompt", prompt);
+        response.put("response", aiResponse);
+        return response;
+    }
+
+    /**
+     * Runtime configuration:
+     *   GET /admin/config  - configuration in effect, defaults, overrides and version
+     *   PUT /admin/config  - apply a JSON merge patch, e.g. {"scheduler": {"aiWorkers": 8}};
+     *                        only with MCP_ADMIN_TOKEN configured (PATCH is accepted too)
+     */
+    private void handleConfig(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"PUT".equals(method) && !"PATCH".equals(method)) {
+            sendError(exchange, 405, "Method not allowed. Use GET, PUT or PATCH.");
+            return;
+        }
+        if (!authorizeAdmin(exchange, !"GET".equals(method))) {
+            return;
+        }
+        RuntimeConfig config = RuntimeConfig.getInstance();
+        if (!"GET".equals(method)) {
+            try {
+                config.update(mapper.readTree(exchange.getRequestBody()));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            } catch (JsonProcessingException e) {
+                sendError(exchange, 400, "Invalid JSON: " + e.getOriginalMessage());
+                return;
+            } catch (IOException e) {
+                sendError(exchange, 500, "Configuration applied but not saved: " + e.getMessage());
+                return;
             }
         }
+        sendJsonResponse(exchange, 200, config.describe(mapper));
+    }
+
+    /**
+     * Token usage per tenant, tool and deployment with quota state: GET /admin/usage.
+     */
+    private void handleUsage(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use GET.");
+            return;
+        }
+        if (!authorizeAdmin(exchange)) {
+            return;
+        }
+        sendJsonResponse(exchange, 200, TokenAccounting.getInstance().describe(mapper));
+    }
+
+    /**
+     * GET /health/live is 200 while the process runs; GET /health/ready is 503 once
+     * shutdown has begun.
+     */
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use GET.");
+            return;
+        }
+        boolean readiness = exchange.getRequestURI().getPath().endsWith("/ready");
+        ObjectNode response = mapper.createObjectNode();
+        if (readiness && !ready) {
+            response.put("status", "draining");
+            sendJsonResponse(exchange, 503, response);
+            return;
+        }
+        response.put("status", readiness ? "ready" : "live");
+        response.put("in_flight", inFlight.get());
+        sendJsonResponse(exchange, 200, response);
+    }
+
+    /**
+     * Counts requests until their response is closed, and turns requests away once draining.
+     */
+    private final class DrainFilter extends Filter {
+        @Override
+        public String description() {
+            return "In-flight tracking for graceful shutdown";
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (!accepting) {
+                exchange.getResponseHeaders().add("Connection", "close");
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                sendError(exchange, 503, "Server is shutting down");
+                return;
+            }
+            inFlight.incrementAndGet();
+            AtomicBoolean counted = new AtomicBoolean(true);
+            Runnable done = () -> {
+                if (counted.compareAndSet(true, false)) {
+                    inFlight.decrementAndGet();
+                }
+            };
+            exchange.setStreams(null, new FilterOutputStream(exchange.getResponseBody()) {
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        done.run();
+                    }
+                }
+            });
+            try {
+                chain.doFilter(exchange);
+            } catch (IOException | RuntimeException e) {
+                done.run();
+                throw e;
+            }
+        }
+    }
+
+    private void handleClusterStatus(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method not allowed. Use GET.");
+            return;
+        }
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("clustered", cluster != null);
+        if (cluster != null) {
+            response.put("self", cluster.selfUrl());
+            var nodes = response.putArray("nodes");
+            cluster.nodes().forEach(nodes::add);
+        }
+        ObjectNode cache = response.putObject("ai_cache");
+        cache.put("size", aiCache.size());
+        cache.put("hits", aiCache.hits());
+        cache.put("misses", aiCache.misses());
+        ObjectNode idempotent = response.putObject("idempotency");
+        idempotent.put("keys", idempotency.size());
+        idempotent.put("executed", idempotency.executed());
+        idempotent.put("attached", idempotency.attached());
+        idempotent.put("replayed", idempotency.replayed());
+
+        LlmBackend aiClient = LlmBackends.getIfCreated();
+        LlmBackend.ConnectionStats stats = aiClient != null ? aiClient.connectionStats() : null;
+        if (aiClient != null) {
+            response.put("llm_backend", aiClient.name());
+        }
+        if (stats != null) {
+            ObjectNode upstream = response.putObject("upstream_connections");
+            upstream.put("exchanges", stats.exchanges());
+            upstream.put("handshakes", stats.handshakes());
+            upstream.put("reused", stats.reused());
+            upstream.put("keepalive_pings", stats.pings());
+            upstream.put("warm_up_ms", stats.warmUpMillis());
+        }
+
+        sendJsonResponse(exchange, 200, response);
+    }
+
+    /**
+     * The tenant of a request. An API key is never used as a name as is, since tenant
+     * names appear in logs, GET /admin/usage and the usage snapshot; it becomes
+     * "key:" and the first 12 hex digits of its SHA-256.
+     */
+    private String resolveTenant(HttpExchange exchange) {
+        String tenant = exchange.getRequestHeaders().getFirst(TENANT_HEADER);
+        if (tenant != null && !tenant.isBlank()) {
+            tenant = tenant.trim();
+            return tenant.length() > MAX_TENANT_LENGTH ? tenant.substring(0, MAX_TENANT_LENGTH) : tenant;
+        }
+        String apiKey = exchange.getRequestHeaders().getFirst(API_KEY_HEADER);
+        if (apiKey == null || apiKey.isBlank()) {
+            return DEFAULT_TENANT;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.trim().getBytes(StandardCharsets.UTF_8));
+            return "key:" + HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     private void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        sendJsonResponse(exchange, statusCode, errorBody(statusCode, message));
+    }
+
+    /**
+     * HTTP status and JSON body of one tool call.
+     */
+    private record ToolOutcome(int status, ObjectNode body) {
+    }
+
+    private ObjectNode errorBody(int statusCode, String message) {
         ObjectNode error = mapper.createObjectNode();
         error.put("error", message);
         error.put("status", statusCode);
-        sendJsonResponse(exchange, statusCode, error);
+        return error;
     }
 }
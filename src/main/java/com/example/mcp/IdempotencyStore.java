@@ -0,0 +1,302 @@
+package com.example.mcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Bounded, TTL-evicted store of tool responses keyed by the Idempotency-Key request header.
+ *
+ * The first POST with a given key (per tenant and endpoint) executes normally while its
+ * response is recorded. A duplicate that arrives while it is still running attaches to it
+ * and receives the same response when it completes; a duplicate that arrives later gets
+ * the stored response replayed. Either way the tool, and any upstream LLM call behind
+ * it, runs once. Replayed responses carry an Idempotent-Replayed: true header.
+ *
+ * Reusing a key with a different request body is rejected with 422. Responses with
+ * status 429 or 5xx are handed to requests already attached but are not kept, so a
+ * later retry executes again; responses larger than the body limit are not kept either.
+ *
+ * Configuration (environment variables; size and TTL also in the cache section of
+ * {@link ServerConfig}, and changeable with {@link #resize}):
+ *   MCP_IDEMPOTENCY_SIZE          - max stored keys (default 10000, 0 disables the header)
+ *   MCP_IDEMPOTENCY_TTL_SECONDS   - how long a completed response is replayed (default 86400)
+ *   MCP_IDEMPOTENCY_MAX_BODY_KB   - largest response body that is stored (default 256)
+ */
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * A recorded response.
+     */
+    record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    private static final class Entry {
+        final long fingerprint;
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+        volatile long expiresAtNanos = Long.MAX_VALUE;
+
+        Entry(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private final int maxBodyBytes;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder attached = new LongAdder();
+
+    public IdempotencyStore(int maxEntries, long ttlSeconds, int maxBodyBytes) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.maxBodyBytes = maxBodyBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Create a store from the current {@link RuntimeConfig}, which defaults to the
+     * environment variables.
+     */
+    public static IdempotencyStore fromEnvironment() {
+        ServerConfig.Cache config = RuntimeConfig.current().cache();
+        return new IdempotencyStore(
+            config.idempotencySize(),
+            config.idempotencyTtlSeconds(),
+            ToolScheduler.intEnv("MCP_IDEMPOTENCY_MAX_BODY_KB", 256) * 1024
+        );
+    }
+
+    /**
+     * Change the limits. Shrinking evicts the oldest keys, including ones still running,
+     * whose duplicates then execute again. The new time-to-live applies to responses
+     * completed from now on.
+     */
+    public void resize(int maxEntries, long ttlSeconds) {
+        synchronized (entries) {
+            this.maxEntries = maxEntries;
+            this.ttlNanos = ttlSeconds * 1_000_000_000L;
+            Iterator<String> oldest = entries.keySet().iterator();
+            while (entries.size() > Math.max(0, maxEntries) && oldest.hasNext()) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Requests with a key that executed the tool. */
+    public long executed() {
+        return executed.sum();
+    }
+
+    /** Duplicates answered from a completed response. */
+    public long replayed() {
+        return replayed.sum();
+    }
+
+    /** Duplicates that arrived while the original was running and waited for it. */
+    public long attached() {
+        return attached.sum();
+    }
+
+    /**
+     * A filter for POST tool endpoints. Requests without the header pass through.
+     *
+     * @param tenants resolves the tenant a key is scoped to
+     */
+    Filter filter(Function<HttpExchange, String> tenants) {
+        return new Filter() {
+            @Override
+            public String description() {
+                return "Idempotency-Key handling";
+            }
+
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                String key = exchange.getRequestHeaders().getFirst(HEADER);
+                if (key == null || maxEntries <= 0 || !"POST".equals(exchange.getRequestMethod())) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                handle(exchange, chain, key.trim(), tenants.apply(exchange));
+            }
+        };
+    }
+
+    private void handle(HttpExchange exchange, Filter.Chain chain, String key, String tenant) throws IOException {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            sendError(exchange, 400, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        long fingerprint = crc.getValue();
+        String storeKey = tenant + '\n' + exchange.getRequestURI().getPath() + '\n' + key;
+
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(storeKey);
+            if (entry != null && entry.expiresAtNanos - System.nanoTime() <= 0) {
+                entries.remove(storeKey);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(fingerprint);
+                entries.put(storeKey, entry);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            if (entry.fingerprint != fingerprint) {
+                sendError(exchange, 422, HEADER + " was already used with a different request body");
+                return;
+            }
+            (entry.response.isDone() ? replayed : attached).increment();
+            // Attached duplicates complete on the thread that finishes the original,
+            // so they do not hold an HTTP worker while waiting
+            entry.response.whenComplete((stored, error) -> replay(exchange, stored));
+            return;
+        }
+
+        executed.increment();
+        Entry recorded = entry;
+        exchange.setStreams(new ByteArrayInputStream(body),
+            new RecordingOutput(exchange, exchange.getResponseBody(), storeKey, recorded));
+        try {
+            chain.doFilter(exchange);
+        } catch (IOException | RuntimeException e) {
+            complete(storeKey, recorded, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Publish the outcome of the original request to waiting duplicates and decide
+     * whether it stays in the store.
+     *
+     * @param stored the recorded response, or null when it cannot be replayed
+     */
+    private void complete(String storeKey, Entry entry, StoredResponse stored) {
+        boolean keep = stored != null && stored.status() != 429 && stored.status() < 500;
+        if (keep) {
+            entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+        } else {
+            synchronized (entries) {
+                entries.remove(storeKey, entry);
+            }
+        }
+        entry.response.complete(stored);
+    }
+
+    private void replay(HttpExchange exchange, StoredResponse stored) {
+        try {
+            if (stored == null) {
+                sendError(exchange, 409, "The request with this " + HEADER
+                    + " did not produce a replayable response; retry it");
+                return;
+            }
+            if (stored.contentType() != null) {
+                exchange.getResponseHeaders().set("Content-Type", stored.contentType());
+            }
+            exchange.getResponseHeaders().set(REPLAYED_HEADER, "true");
+            byte[] body = stored.body();
+            exchange.sendResponseHeaders(stored.status(), body.length == 0 ? -1 : body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Passes the response through while keeping a copy, and records it when closed.
+     */
+    private final class RecordingOutput extends FilterOutputStream {
+        private final HttpExchange exchange;
+        private final String storeKey;
+        private final Entry entry;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private boolean closed;
+
+        RecordingOutput(HttpExchange exchange, OutputStream out, String storeKey, Entry entry) {
+            super(out);
+            this.exchange = exchange;
+            this.storeKey = storeKey;
+            this.entry = entry;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            if (copy != null) {
+                if (copy.size() + length > maxBodyBytes) {
+                    copy = null;
+                } else {
+                    copy.write(buffer, offset, length);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                StoredResponse stored = copy == null ? null : new StoredResponse(exchange.getResponseCode(),
+                    exchange.getResponseHeaders().getFirst("Content-Type"), copy.toByteArray());
+                complete(storeKey, entry, stored);
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.example.mcp;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom JDK Flight Recorder events for tool calls, HTTP requests and upstream LLM calls.
+ *
+ * The events are always compiled in; when no recording is running (or the events are
+ * disabled in the recording's settings) creating one is a small allocation and
+ * nothing is written. {@link JfrRecording} starts a continuous recording with --jfr;
+ * any other recording, e.g. from -XX:StartFlightRecording or jcmd JFR.start, sees
+ * them too. In JDK Mission Control they appear under "MCP Server".
+ */
+public final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("com.example.mcp.ToolInvocation")
+    @Label("Tool Invocation")
+    @Category({"MCP Server", "Tools"})
+    @Description("A tool call, from arguments received to result produced")
+    public static final class ToolInvocationEvent extends Event {
+        @Label("Tool")
+        String tool;
+
+        @Label("Transport")
+        @Description("http, batch, dag or mcp")
+        String transport;
+
+        @Label("Argument Bytes")
+        @Description("Size of the serialized arguments, -1 when they arrived already parsed")
+        @DataAmount
+        long argumentBytes;
+
+        @Label("Argument Count")
+        int argumentCount;
+
+        @Label("Status")
+        int status;
+
+        @Label("Outcome")
+        @Description("ok, invalid, rejected or error")
+        String outcome;
+    }
+
+    @Name("com.example.mcp.HttpRequest")
+    @Label("HTTP Request")
+    @Category({"MCP Server", "HTTP"})
+    @Description("An HTTP request from handler start to response closed, split into lifecycle phases")
+    public static final class HttpRequestEvent extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Path")
+        String path;
+
+        @Label("Status")
+        int status;
+
+        @Label("Accept Queue Time")
+        @Description("Time between the server accepting the request and a worker thread starting it")
+        @Timespan(Timespan.NANOSECONDS)
+        long acceptTime;
+
+        @Label("Parse Time")
+        @Description("Time until the request body was read to the end")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseTime;
+
+        @Label("Execute Time")
+        @Description("Time from the body being read to the first response byte, including queueing for AI workers")
+        @Timespan(Timespan.NANOSECONDS)
+        long executeTime;
+
+        @Label("Write Time")
+        @Description("Time from the first response byte to the response being closed")
+        @Timespan(Timespan.NANOSECONDS)
+        long writeTime;
+
+        @Label("Request Bytes")
+        @DataAmount
+        long requestBytes;
+
+        @Label("Response Bytes")
+        @DataAmount
+        long responseBytes;
+    }
+
+    @Name("com.example.mcp.UpstreamCall")
+    @Label("Upstream LLM Call")
+    @Category({"MCP Server", "Upstream"})
+    @Description("A chat completion request to the LLM backend, split into phases")
+    public static final class UpstreamCallEvent extends Event {
+        @Label("Backend")
+        String backend;
+
+        @Label("Streamed")
+        boolean streamed;
+
+        @Label("Status")
+        int status;
+
+        @Label("Serialize Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long serializeTime;
+
+        @Label("Time to First Byte")
+        @Description("From sending the request to receiving the response headers")
+        @Timespan(Timespan.NANOSECONDS)
+        long firstByteTime;
+
+        @Label("Body Time")
+        @Description("Reading the response body, or all streamed chunks")
+        @Timespan(Timespan.NANOSECONDS)
+        long bodyTime;
+
+        @Label("Parse Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseTime;
+
+        @Label("Request Bytes")
+        @DataAmount
+        long requestBytes;
+
+        @Label("Response Bytes")
+        @DataAmount
+        long responseBytes;
+
+        @Label("Error")
+        String error;
+    }
+
+    /**
+     * Begin a tool invocation event, or return null when the event is disabled.
+     */
+    public static ToolInvocationEvent beginTool(String tool, String transport, long argumentBytes, int argumentCount) {
+        ToolInvocationEvent event = new ToolInvocationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        event.tool = tool;
+        event.transport = transport;
+        event.argumentBytes = argumentBytes;
+        event.argumentCount = argumentCount;
+        return event;
+    }
+
+    /**
+     * Complete a tool invocation event with an HTTP style status. Accepts null.
+     */
+    public static void endTool(ToolInvocationEvent event, int status) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.status = status;
+            event.outcome = outcome(status);
+            event.commit();
+        }
+    }
+
+    static String outcome(int status) {
+        if (status >= 200 && status < 300) {
+            return "ok";
+        } else if (status == 429 || status == 503) {
+            return "rejected";
+        } else if (status >= 400 && status < 500) {
+            return "invalid";
+        }
+        return "error";
+    }
+
+    /**
+     * Begin tracing an upstream call. The returned trace is never null; its methods do
+     * nothing when the event is disabled.
+     */
+    public static UpstreamTrace beginUpstream(String backend, boolean streamed) {
+        UpstreamCallEvent event = new UpstreamCallEvent();
+        if (!event.isEnabled()) {
+            return new UpstreamTrace(null);
+        }
+        event.begin();
+        event.backend = backend;
+        event.streamed = streamed;
+        return new UpstreamTrace(event);
+    }
+
+    /**
+     * Phase timestamps of one upstream call, recorded into an {@link UpstreamCallEvent}.
+     */
+    public static final class UpstreamTrace {
+        private final UpstreamCallEvent event;
+        private final long start = System.nanoTime();
+        private volatile long sent;
+        private volatile long headers;
+        private long bodyRead;
+
+        UpstreamTrace(UpstreamCallEvent event) {
+            this.event = event;
+        }
+
+        /** The request body is serialized and about to be sent. */
+        public void sent(long requestBytes) {
+            if (event != null) {
+                sent = System.nanoTime();
+                event.requestBytes = requestBytes;
+            }
+        }
+
+        /**
+         * Wrap a body handler so the arrival of the response headers is recorded.
+         */
+        public <T> HttpResponse.BodyHandler<T> observe(HttpResponse.BodyHandler<T> handler) {
+            if (event == null) {
+                return handler;
+            }
+            return responseInfo -> {
+                headers = System.nanoTime();
+                event.status = responseInfo.statusCode();
+                return handler.apply(responseInfo);
+            };
+        }
+
+        /** The response body has been received completely. */
+        public void bodyRead(long responseBytes) {
+            if (event != null) {
+                bodyRead = System.nanoTime();
+                event.responseBytes = responseBytes;
+            }
+        }
+
+        /**
+         * Commit the event after the response has been parsed.
+         *
+         * @param error failure message, or null on success
+         */
+        public void end(String error) {
+            if (event == null) {
+                return;
+            }
+            long end = System.nanoTime();
+            event.end();
+            if (event.shouldCommit()) {
+                long sentAt = sent != 0 ? sent : start;
+                long headersAt = headers != 0 ? headers : end;
+                long bodyAt = bodyRead != 0 ? bodyRead : headersAt;
+                event.serializeTime = sentAt - start;
+                event.firstByteTime = Math.max(0, headersAt - sentAt);
+                event.bodyTime = Math.max(0, bodyAt - headersAt);
+                event.parseTime = Math.max(0, end - bodyAt);
+                event.error = error;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Emits an {@link HttpRequestEvent} per request, and a {@link ToolInvocationEvent}
+     * for requests to tool endpoints. Phases are observed through the request and
+     * response streams, so the event is committed by whichever thread closes the
+     * response, which for ai_chat is the AI worker.
+     */
+    static final class HttpFilter extends Filter {
+        private static final ThreadLocal<Long> DISPATCHED_AT = new ThreadLocal<>();
+
+        private final Map<String, String> toolEndpoints;
+
+        /**
+         * @param toolEndpoints tool name by HTTP endpoint path
+         */
+        HttpFilter(Map<String, String> toolEndpoints) {
+            this.toolEndpoints = toolEndpoints;
+        }
+
+        /**
+         * Wrap a server executor so the filter can measure how long requests wait for a worker.
+         */
+        static Executor timing(Executor executor) {
+            return command -> {
+                long dispatched = System.nanoTime();
+                executor.execute(() -> {
+                    DISPATCHED_AT.set(dispatched);
+                    try {
+                        command.run();
+                    } finally {
+                        DISPATCHED_AT.remove();
+                    }
+                });
+            };
+        }
+
+        @Override
+        public String description() {
+            return "JFR request events";
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            HttpRequestEvent event = new HttpRequestEvent();
+            if (!event.isEnabled()) {
+                chain.doFilter(exchange);
+                return;
+            }
+            event.begin();
+            Trace trace = new Trace(exchange, event, System.nanoTime(), DISPATCHED_AT.get());
+            String tool = toolEndpoints.get(exchange.getRequestURI().getPath());
+            trace.tool = tool != null ? beginTool(tool, "http", -1, -1) : null;
+            exchange.setStreams(trace.new TracedInput(exchange.getRequestBody()),
+                trace.new TracedOutput(exchange.getResponseBody()));
+            chain.doFilter(exchange);
+        }
+    }
+
+    /**
+     * Phase timestamps of one HTTP exchange.
+     */
+    private static final class Trace {
+        final HttpExchange exchange;
+        final HttpRequestEvent event;
+        final long start;
+        final Long dispatched;
+        ToolInvocationEvent tool;
+        volatile long bodyRead;
+        volatile long firstWrite;
+        long requestBytes;
+        long responseBytes;
+        boolean committed;
+
+        Trace(HttpExchange exchange, HttpRequestEvent event, long start, Long dispatched) {
+            this.exchange = exchange;
+            this.event = event;
+            this.start = start;
+            this.dispatched = dispatched;
+        }
+
+        synchronized void commit() {
+            if (committed) {
+                return;
+            }
+            committed = true;
+            long end = System.nanoTime();
+            long parsed = bodyRead != 0 ? bodyRead : start;
+            long written = firstWrite != 0 ? firstWrite : end;
+            int status = exchange.getResponseCode();
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = exchange.getRequestMethod();
+                event.path = exchange.getRequestURI().getPath();
+                event.status = status;
+                event.acceptTime = dispatched != null ? start - dispatched : 0;
+                event.parseTime = parsed - start;
+                event.executeTime = Math.max(0, written - parsed);
+                event.writeTime = end - written;
+                event.requestBytes = requestBytes;
+                event.responseBytes = responseBytes;
+                event.commit();
+            }
+            if (tool != null) {
+                tool.argumentBytes = requestBytes;
+                endTool(tool, status);
+            }
+        }
+
+        final class TracedInput extends FilterInputStream {
+            TracedInput(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                count(b < 0 ? -1 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                count(n);
+                return n;
+            }
+
+            private void count(int n) {
+                if (n < 0) {
+                    if (bodyRead == 0) {
+                        bodyRead = System.nanoTime();
+                    }
+                } else {
+                    requestBytes += n;
+                }
+            }
+        }
+
+        final class TracedOutput extends FilterOutputStream {
+            TracedOutput(OutputStream out) {
+                super(out);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                markWrite(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                markWrite(length);
+                out.write(buffer, offset, length);
+            }
+
+            private void markWrite(int n) {
+                if (firstWrite == 0) {
+                    firstWrite = System.nanoTime();
+                }
+                responseBytes += n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Continuous, low-overhead flight recording started with --jfr.
+ *
+ * Uses the JDK's "default" settings (designed for production, around 1% overhead)
+ * plus the {@link JfrEvents} events. Data is kept in the JFR disk repository and
+ * rotated by age and size, so the recording can run indefinitely; {@link #dump}
+ * writes the retained window to a file on demand, and the window is dumped once
+ * more when the JVM exits.
+ *
+ * Configuration (environment variables):
+ *   MCP_JFR_MAX_AGE_MINUTES  - how much history to keep (default 30)
+ *   MCP_JFR_MAX_SIZE_MB      - upper bound for the retained data (default 256)
+ *   MCP_JFR_DIR              - directory for dumps (default "jfr")
+ */
+public final class JfrRecording {
+    private static final Logger logger = LoggerFactory.getLogger(JfrRecording.class);
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private static volatile JfrRecording active;
+
+    private final Recording recording;
+    private final Path dumpDirectory;
+
+    private JfrRecording(Recording recording, Path dumpDirectory) {
+        this.recording = recording;
+        this.dumpDirectory = dumpDirectory;
+    }
+
+    /**
+     * Start the continuous recording, configured from environment variables.
+     */
+    public static synchronized JfrRecording start() throws IOException {
+        if (active != null) {
+            return active;
+        }
+        Configuration settings;
+        try {
+            settings = Configuration.getConfiguration("default");
+        } catch (ParseException e) {
+            throw new IOException("Cannot read JFR default settings", e);
+        }
+
+        Path dumpDirectory = Paths.get(envOrDefault("MCP_JFR_DIR", "jfr"));
+        Files.createDirectories(dumpDirectory);
+
+        Recording recording = new Recording(settings);
+        recording.setName("mcp-server-continuous");
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMinutes(ToolScheduler.intEnv("MCP_JFR_MAX_AGE_MINUTES", 30)));
+        recording.setMaxSize(ToolScheduler.intEnv("MCP_JFR_MAX_SIZE_MB", 256) * 1024L * 1024L);
+        recording.enable(JfrEvents.ToolInvocationEvent.class);
+        recording.enable(JfrEvents.HttpRequestEvent.class);
+        recording.enable(JfrEvents.UpstreamCallEvent.class);
+        recording.setDestination(dumpDirectory.resolve("mcp-server-exit.jfr"));
+        recording.setDumpOnExit(true);
+        recording.start();
+
+        active = new JfrRecording(recording, dumpDirectory);
+        logger.info("Continuous JFR recording started (max age {}, max size {} bytes, dumps in {})",
+            recording.getMaxAge(), recording.getMaxSize(), dumpDirectory.toAbsolutePath());
+        return active;
+    }
+
+    /**
+     * The running recording, or null when --jfr was not given.
+     */
+    public static JfrRecording active() {
+        return active;
+    }
+
+    /**
+     * Write the currently retained window of the recording to a new file.
+     *
+     * @return the file written
+     */
+    public Path dump() throws IOException {
+        Path file = dumpDirectory.resolve("mcp-server-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        recording.dump(file);
+        logger.info("JFR recording dumped to {}", file);
+        return file;
+    }
+
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.mcp;
+
+import java.util.function.Consumer;
+
+/**
+ * A chat completion backend for the ai_chat tool.
+ *
+ * {@link AzureAIClient} is the production implementation. {@link LlmBackends} picks
+ * the backend for the process, which can also be an Azure client pointed at an
+ * in-process {@link LlmStubServer} so the AI path can be exercised without a live service.
+ *
+ * Implementations must be thread safe.
+ */
+public interface LlmBackend {
+
+    /**
+     * Connection counters: exchanges sent, TLS handshakes (new connections), and
+     * exchanges that reused an open connection.
+     */
+    record ConnectionStats(long exchanges, long handshakes, long reused, long pings, long warmUpMillis) {
+    }
+
+    /**
+     * A response with the token usage the backend reported (null if it reported none)
+     * and the deployment or model that produced it.
+     */
+    record Completion(String content, TokenAccounting.Usage usage, String deployment) {
+    }
+
+    /** Short name of the backend, for logs and status output. */
+    String name();
+
+    /**
+     * Send a prompt and return the complete response text.
+     *
+     * @throws RuntimeException if the backend fails or returns no content
+     */
+    String chat(String prompt, Integer maxTokens, Double temperature);
+
+    /**
+     * Like {@link #chat}, but also returns the token usage. Backends that do not
+     * report usage return the response with a null usage.
+     */
+    default Completion complete(String prompt, Integer maxTokens, Double temperature) {
+        return new Completion(chat(prompt, maxTokens, temperature), null, name());
+    }
+
+    /**
+     * Like {@link #complete}, but streams the response: {@code onDelta} receives each
+     * piece of text as it arrives. Backends without streaming deliver the whole
+     * response as a single piece.
+     */
+    default Completion completeStream(String prompt, Integer maxTokens, Double temperature,
+                                      Consumer<String> onDelta) {
+        Completion completion = complete(prompt, maxTokens, temperature);
+        onDelta.accept(completion.content());
+        return completion;
+    }
+
+    /**
+     * Establish connections ahead of the first request. Does nothing by default.
+     */
+    default void warmUp() {
+    }
+
+    /**
+     * Connection counters, or null if the backend does not track them.
+     */
+    default ConnectionStats connectionStats() {
+        return null;
+    }
+
+    /**
+     * Release threads and connections at shutdown. Does nothing by default.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the process-wide {@link LlmBackend}.
+ *
+ * Configuration (environment variables):
+ *   MCP_LLM_BACKEND   - "azure" (default) for Azure OpenAI, or "stub" to start an
+ *                       {@link LlmStubServer} on an ephemeral port and send ai_chat calls
+ *                       to it through an {@link AzureAIClient}, so the whole HTTP path runs
+ *                       without credentials. The stub reads its own MCP_STUB_* settings.
+ *   MCP_CACHE_SOCKET  - when set, ai_chat calls go to the {@link CacheDaemon} on that socket,
+ *                       which shares its cache and upstream connections with every process
+ *                       on the host. The configured backend is used directly while the
+ *                       daemon is unreachable.
+ *
+ * upstream.endpoint and upstream.deployment of the {@link RuntimeConfig} select another
+ * Azure endpoint or deployment. When they change, a new client is swapped in for new
+ * calls; calls already running finish on the old client, which is closed after the
+ * upstream timeout.
+ */
+public final class LlmBackends {
+    private static final Logger logger = LoggerFactory.getLogger(LlmBackends.class);
+
+    private static volatile LlmBackend instance;
+    private static LlmBackend fallback;
+    private static LlmStubServer stub;
+
+    static {
+        RuntimeConfig.getInstance().addListener(LlmBackends::configChanged);
+    }
+
+    private LlmBackends() {
+    }
+
+    /**
+     * The configured backend, created on first use. Lock-free once created.
+     *
+     * @throws IllegalStateException if the Azure backend is selected and not configured
+     */
+    public static LlmBackend get() {
+        LlmBackend backend = instance;
+        if (backend != null) {
+            return backend;
+        }
+        synchronized (LlmBackends.class) {
+            if (instance == null) {
+                instance = create();
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * The configured backend itself, ignoring MCP_CACHE_SOCKET. The cache daemon uses
+     * this for its upstream calls; afterwards {@link #get} returns the same backend.
+     */
+    static synchronized LlmBackend upstream() {
+        if (instance == null) {
+            instance = createUpstream();
+        }
+        return instance;
+    }
+
+    /**
+     * The backend if it has been created, without creating it.
+     */
+    public static LlmBackend getIfCreated() {
+        return instance;
+    }
+
+    /**
+     * Warm up the backend on a background thread, unless AZURE_OPENAI_WARMUP is "false"
+     * or the Azure backend has no API key. Failures are logged and otherwise ignored.
+     */
+    public static void warmUpInBackground() {
+        String key = System.getenv("AZURE_OPENAI_API_KEY");
+        if ("false".equalsIgnoreCase(System.getenv("AZURE_OPENAI_WARMUP"))
+                || (!isStub() && (key == null || key.isEmpty()))) {
+            return;
+        }
+        Thread warmUp = new Thread(() -> {
+            try {
+                get().warmUp();
+            } catch (RuntimeException e) {
+                logger.warn("LLM backend warm-up failed: {}", e.getMessage());
+            }
+        }, "llm-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    /**
+     * Close the backends created so far, and stop the in-process stub if one was started.
+     * The stub is shared by the backend and its cache daemon fallback.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+        }
+        if (fallback != null) {
+            fallback.close();
+        }
+        if (stub != null) {
+            stub.stop();
+        }
+    }
+
+    private static boolean isStub() {
+        return "stub".equalsIgnoreCase(System.getenv("MCP_LLM_BACKEND"));
+    }
+
+    private static LlmBackend create() {
+        Path socket = CacheDaemon.configuredSocket();
+        if (socket != null) {
+            logger.info("Sending ai_chat calls through the cache daemon at {}", socket);
+            return new CacheDaemon.Client(socket, LlmBackends::fallback);
+        }
+        return createUpstream();
+    }
+
+    private static void configChanged(ServerConfig previous, ServerConfig config) {
+        ServerConfig.Upstream before = previous.upstream();
+        ServerConfig.Upstream after = config.upstream();
+        if (Objects.equals(before.endpoint(), after.endpoint())
+                && Objects.equals(before.deployment(), after.deployment())) {
+            return;
+        }
+        AzureAIClient retired;
+        LlmBackend replacement;
+        synchronized (LlmBackends.class) {
+            if (instance == null) {
+                // Created with the new settings on first use
+                return;
+            }
+            if (isStub() || !(instance instanceof AzureAIClient)) {
+                logger.warn("upstream.endpoint and upstream.deployment only apply to a direct Azure backend, "
+                    + "keeping {}", instance.name());
+                return;
+            }
+            retired = (AzureAIClient) instance;
+            replacement = createUpstream();
+            instance = replacement;
+        }
+        logger.info("LLM backend switched from {} to {}", retired.name(), replacement.name());
+        if (retired != replacement && !retired.isShared()) {
+            CompletableFuture.delayedExecutor(after.timeoutSeconds(), TimeUnit.SECONDS).execute(retired::close);
+        }
+    }
+
+    private static synchronized LlmBackend fallback() {
+        if (fallback == null) {
+            fallback = createUpstream();
+        }
+        return fallback;
+    }
+
+    private static LlmBackend createUpstream() {
+        if (!isStub()) {
+            ServerConfig.Upstream upstream = RuntimeConfig.current().upstream();
+            return upstream.endpoint() == null && upstream.deployment() == null
+                ? AzureAIClient.getInstance()
+                : new AzureAIClient(upstream.endpoint(), upstream.deployment());
+        }
+        synchronized (LlmBackends.class) {
+            if (stub == null) {
+                try {
+                    stub = LlmStubServer.start(0, LlmStubServer.Config.fromEnvironment());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to start LLM stub server", e);
+                }
+                logger.info("Using in-process LLM stub at {}", stub.url());
+            }
+            return new AzureAIClient(stub.url(), "stub", "stub-key", AzureAIClient.API_VERSION);
+        }
+    }
+}
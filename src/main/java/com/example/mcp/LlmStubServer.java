@@ -0,0 +1,362 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * OpenAI-compatible mock server for offline development and load testing.
+ *
+ * Answers POST .../chat/completions on both the Azure path
+ * (/openai/deployments/{deployment}/chat/completions) and the OpenAI path
+ * (/v1/chat/completions), with "stream": true answered as server-sent events (ending
+ * with a usage chunk when stream_options.include_usage is set), and
+ * GET .../models for keepalive requests. GET /stats returns request counters.
+ *
+ * Each request draws its latency and outcome from a random generator seeded with
+ * the configured seed and the request's sequence number, so a given request sequence
+ * sees the same latencies, errors and throttling on every run. Delays are scheduled
+ * rather than slept, so thousands of concurrent requests need only a few threads.
+ *
+ * Configuration (environment variables, see {@link Config#fromEnvironment}):
+ *   MCP_STUB_LATENCY        - fixed:MS | uniform:MIN,MAX | normal:MEAN,STDDEV | lognormal:MEDIAN,SIGMA
+ *                             (milliseconds to the first byte, default fixed:50)
+ *   MCP_STUB_ERROR_RATE     - fraction of requests answered with 500 (default 0)
+ *   MCP_STUB_429_RATE       - fraction of requests answered with 429 (default 0)
+ *   MCP_STUB_RETRY_AFTER    - Retry-After seconds on 429 responses (default 1)
+ *   MCP_STUB_CHUNK_MS       - delay between streamed chunks (default 10)
+ *   MCP_STUB_SEED           - random seed (default 42)
+ */
+public class LlmStubServer {
+    private static final Logger logger = LoggerFactory.getLogger(LlmStubServer.class);
+    private static final long SEQUENCE_MIX = 0x9E3779B97F4A7C15L;
+    private static final int WORDS_PER_CHUNK = 4;
+
+    /**
+     * Distribution of the delay before a response starts, in milliseconds.
+     */
+    public record Latency(String kind, double a, double b) {
+
+        /**
+         * Parse "fixed:50", "uniform:20,200", "normal:100,20" or "lognormal:100,0.5".
+         *
+         * @throws IllegalArgumentException for unknown kinds or missing parameters
+         */
+        public static Latency parse(String spec) {
+            String[] parts = spec.trim().split(":", 2);
+            String kind = parts[0].toLowerCase();
+            String[] values = parts.length > 1 ? parts[1].split(",") : new String[0];
+            int expected = "fixed".equals(kind) ? 1 : 2;
+            if (!(kind.equals("fixed") || kind.equals("uniform") || kind.equals("normal") || kind.equals("lognormal"))
+                    || values.length != expected) {
+                throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+            }
+            double a = Double.parseDouble(values[0].trim());
+            double b = expected == 2 ? Double.parseDouble(values[1].trim()) : 0;
+            return new Latency(kind, a, b);
+        }
+
+        long sampleMillis(SplittableRandom random) {
+            double millis;
+            switch (kind) {
+                case "uniform":
+                    millis = a + random.nextDouble() * (b - a);
+                    break;
+                case "normal":
+                    millis = a + gaussian(random) * b;
+                    break;
+                case "lognormal":
+                    millis = a * Math.exp(gaussian(random) * b);
+                    break;
+                default:
+                    millis = a;
+                    break;
+            }
+            return Math.max(0, Math.round(millis));
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            // Box-Muller; 1 - nextDouble() keeps the logarithm's argument above zero
+            return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+    }
+
+    /**
+     * Stub behaviour.
+     *
+     * @param errorRate fraction of requests answered with 500
+     * @param throttleRate fraction of requests answered with 429
+     */
+    public record Config(Latency latency, double errorRate, double throttleRate, int retryAfterSeconds,
+                         long chunkDelayMillis, long seed) {
+
+        public static Config fromEnvironment() {
+            String latency = System.getenv("MCP_STUB_LATENCY");
+            return new Config(
+                Latency.parse(latency == null || latency.isBlank() ? "fixed:50" : latency),
+                doubleEnv("MCP_STUB_ERROR_RATE", 0),
+                doubleEnv("MCP_STUB_429_RATE", 0),
+                ToolScheduler.intEnv("MCP_STUB_RETRY_AFTER", 1),
+                ToolScheduler.intEnv("MCP_STUB_CHUNK_MS", 10),
+                ToolScheduler.intEnv("MCP_STUB_SEED", 42));
+        }
+
+        private static double doubleEnv(String name, double defaultValue) {
+            String value = System.getenv(name);
+            return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+        }
+    }
+
+    private final Config config;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private LlmStubServer(HttpServer server, Config config) {
+        this.server = server;
+        this.config = config;
+        this.handlers = Executors.newCachedThreadPool(HttpJsonServer.namedThreads("llm-stub-"));
+        this.timer = Executors.newScheduledThreadPool(2, HttpJsonServer.namedThreads("llm-stub-timer-"));
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+    }
+
+    /**
+     * Start a stub on the given port, 0 for an ephemeral port.
+     */
+    public static LlmStubServer start(int port, Config config) throws IOException {
+        LlmStubServer stub = new LlmStubServer(HttpServer.create(new InetSocketAddress(port), 0), config);
+        stub.server.start();
+        logger.info("LLM stub listening on {} (latency {}, errors {}, 429s {})", stub.url(), config.latency(),
+            config.errorRate(), config.throttleRate());
+        return stub;
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        timer.shutdownNow();
+        handlers.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if ("GET".equals(method) && path.endsWith("/models")) {
+            ObjectNode models = mapper.createObjectNode();
+            models.put("object", "list");
+            models.putArray("data").addObject().put("id", "stub").put("object", "model");
+            send(exchange, 200, models);
+        } else if ("GET".equals(method) && path.equals("/stats")) {
+            ObjectNode stats = mapper.createObjectNode();
+            stats.put("requests", sequence.get());
+            stats.put("completed", completed.sum());
+            stats.put("streamed", streamed.sum());
+            stats.put("throttled", throttled.sum());
+            stats.put("failed", failed.sum());
+            send(exchange, 200, stats);
+        } else if ("POST".equals(method) && path.endsWith("/chat/completions")) {
+            handleCompletion(exchange);
+        } else {
+            send(exchange, 404, error("NotFound", "Unknown path: " + path));
+        }
+    }
+
+    private void handleCompletion(HttpExchange exchange) throws IOException {
+        JsonNode request;
+        try {
+            request = mapper.readTree(exchange.getRequestBody());
+        } catch (IOException e) {
+            send(exchange, 400, error("BadRequest", "Invalid JSON: " + e.getMessage()));
+            return;
+        }
+
+        long number = sequence.incrementAndGet();
+        SplittableRandom random = new SplittableRandom(config.seed() + number * SEQUENCE_MIX);
+        long delay = config.latency().sampleMillis(random);
+        double outcome = random.nextDouble();
+
+        Runnable respond;
+        if (outcome < config.throttleRate()) {
+            respond = () -> {
+                throttled.increment();
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(config.retryAfterSeconds()));
+                sendQuietly(exchange, 429, error("429", "Rate limit is exceeded. Try again in "
+                    + config.retryAfterSeconds() + " seconds."));
+            };
+        } else if (outcome < config.throttleRate() + config.errorRate()) {
+            respond = () -> {
+                failed.increment();
+                sendQuietly(exchange, 500, error("InternalServerError", "Injected failure"));
+            };
+        } else {
+            String[] words = answer(request);
+            respond = request.path("stream").asBoolean(false)
+                ? () -> stream(exchange, request, words)
+                : () -> {
+                    completed.increment();
+                    sendQuietly(exchange, 200, completion(number, request, words));
+                };
+        }
+        timer.schedule(respond, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deterministic answer: the prompt echoed back, cut to max_completion_tokens words.
+     */
+    private String[] answer(JsonNode request) {
+        JsonNode messages = request.path("messages");
+        String prompt = messages.size() > 0 ? messages.get(messages.size() - 1).path("content").asText() : "";
+        String[] words = ("Stub response to: " + prompt).split("\\s+");
+        int limit = request.path("max_completion_tokens").asInt(request.path("max_tokens").asInt(words.length));
+        if (limit > 0 && limit < words.length) {
+            String[] truncated = new String[limit];
+            System.arraycopy(words, 0, truncated, 0, limit);
+            return truncated;
+        }
+        return words;
+    }
+
+    private ObjectNode completion(long number, JsonNode request, String[] words) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("id", "chatcmpl-stub-" + number);
+        response.put("object", "chat.completion");
+        response.put("model", model(request));
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", String.join(" ", words));
+        choice.put("finish_reason", "stop");
+        response.set("usage", usage(request, words));
+        return response;
+    }
+
+    /**
+     * The model named in the request, echoed back like the real API does.
+     */
+    private static String model(JsonNode request) {
+        JsonNode model = request.path("model");
+        return model.isTextual() ? model.asText() : "stub";
+    }
+
+    /**
+     * Token usage counted in words: the prompt messages and the answer.
+     */
+    private ObjectNode usage(JsonNode request, String[] words) {
+        int promptTokens = 0;
+        for (JsonNode message : request.path("messages")) {
+            promptTokens += message.path("content").asText().split("\\s+").length;
+        }
+        ObjectNode usage = mapper.createObjectNode();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", words.length);
+        usage.put("total_tokens", promptTokens + words.length);
+        usage.putObject("completion_tokens_details").put("reasoning_tokens", 0);
+        return usage;
+    }
+
+    /**
+     * Send the answer as server-sent events, a few words per chunk, then "data: [DONE]".
+     */
+    private void stream(HttpExchange exchange, JsonNode request, String[] words) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+        } catch (IOException e) {
+            exchange.close();
+            return;
+        }
+        streamed.increment();
+        sendChunk(exchange, request, words, 0);
+    }
+
+    private void sendChunk(HttpExchange exchange, JsonNode request, String[] words, int offset) {
+        OutputStream os = exchange.getResponseBody();
+        try {
+            if (offset >= words.length) {
+                if (request.path("stream_options").path("include_usage").asBoolean(false)) {
+                    ObjectNode chunk = mapper.createObjectNode();
+                    chunk.put("object", "chat.completion.chunk");
+                    chunk.put("model", model(request));
+                    chunk.putArray("choices");
+                    chunk.set("usage", usage(request, words));
+                    os.write(("data: " + mapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                }
+                os.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                os.close();
+                return;
+            }
+            int end = Math.min(words.length, offset + WORDS_PER_CHUNK);
+            StringBuilder text = new StringBuilder();
+            for (int i = offset; i < end; i++) {
+                text.append(i > 0 ? " " : "").append(words[i]);
+            }
+            ObjectNode chunk = mapper.createObjectNode();
+            chunk.put("object", "chat.completion.chunk");
+            chunk.put("model", model(request));
+            ObjectNode choice = chunk.putArray("choices").addObject();
+            choice.put("index", 0);
+            choice.putObject("delta").put("content", text.toString());
+            if (end == words.length) {
+                choice.put("finish_reason", "stop");
+            } else {
+                choice.putNull("finish_reason");
+            }
+            os.write(("data: " + mapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            timer.schedule(() -> sendChunk(exchange, request, words, end), config.chunkDelayMillis(),
+                TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode error(String code, String message) {
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("error").put("code", code).put("message", message);
+        return body;
+    }
+
+    private void sendQuietly(HttpExchange exchange, int status, ObjectNode body) {
+        try {
+            send(exchange, status, body);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.example.mcp;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.modelcontextprotocol.json.McpJsonMapper;
 import io.modelcontextprotocol.server.McpServer;
+import io.modelcontextprotocol.server.McpServerFeatures;
 import io.modelcontextprotocol.server.McpSyncServer;
-import io.modelcontextprotocol.server.transport.StdioServerTransportProvider;
 import io.modelcontextprotocol.spec.McpSchema;
 
 /**
@@ -16,27 +21,131 @@ import io.modelcontextprotocol.spec.McpSchema;
  *   java -jar mcp-server-java.jar              # STDIO mode (default)
  *   java -jar mcp-server-java.jar --http       # HTTP JSON API mode on port 8080
  *   java -jar mcp-server-java.jar --http --port 3000  # Custom port
+ *   java -jar mcp-server-java.jar --http --port 8081 \
+ *       --peers http://localhost:8081,http://localhost:8082   # Cluster mode
+ *
+ * In cluster mode every node gets the same --peers list. --node-url sets this node's
+ * own URL as it appears in that list (default http://localhost:&lt;port&gt;).
+ *
+ * --resources-dir &lt;dir&gt; serves a local directory tree as file resources in either mode.
+ * --prompts-dir &lt;dir&gt; adds the *.prompt templates in a directory to the STDIO prompt catalog.
+ * --batch-dir &lt;dir&gt; enables offline ai_chat batch jobs (HTTP mode), stored in that directory.
+ * --llm-stub runs only the OpenAI-compatible {@link LlmStubServer} on --port, for load tests.
+ * --concurrent (STDIO mode) handles requests of the session in parallel, up to
+ * MCP_STDIO_MAX_IN_FLIGHT at once (default 16), and writes responses as they complete.
+ * --cache-daemon runs only the host-wide ai_chat {@link CacheDaemon} on MCP_CACHE_SOCKET;
+ * server processes started with the same MCP_CACHE_SOCKET send their ai_chat calls to it.
+ * --reuse-port (HTTP mode) lets a new process take over the port of a running one for
+ * zero-downtime restarts; see {@link HttpJsonServer#setReusePort}. On SIGTERM the HTTP
+ * server drains: readiness turns off, then in-flight requests get up to
+ * MCP_SHUTDOWN_DRAIN_SECONDS (default 30) after MCP_SHUTDOWN_READY_DELAY_SECONDS (default 0).
+ * --jfr starts a continuous flight recording ({@link JfrRecording}) in either mode.
+ * MCP_TRACE_EXPORTER=stdout|file exports {@link Tracing} spans; in STDIO mode the stdout
+ * exporter writes to stderr.
+ * --config &lt;file&gt; (or MCP_CONFIG_FILE) loads performance settings from a JSON file that
+ * is watched and reloaded on change; see {@link RuntimeConfig}. In HTTP mode they can also
+ * be read with GET /admin/config and, when MCP_ADMIN_TOKEN is set, changed with PUT or PATCH.
  */
 public class Main {
     public static void main(String[] args) {
         try {
             // Check if HTTP mode is requested
             boolean httpMode = false;
+            boolean llmStub = false;
+            boolean jfr = false;
+            boolean concurrent = false;
+            boolean cacheDaemon = false;
+            boolean reusePort = false;
             int port = 8080;
+            String peers = null;
+            String nodeUrl = null;
+            String resourcesDir = null;
+            String promptsDir = null;
+            String batchDir = null;
+            Path configFile = RuntimeConfig.configuredFile();
             
             for (int i = 0; i < args.length; i++) {
                 if ("--http".equals(args[i])) {
                     httpMode = true;
+                } else if ("--llm-stub".equals(args[i])) {
+                    llmStub = true;
+                } else if ("--jfr".equals(args[i])) {
+                    jfr = true;
+                } else if ("--concurrent".equals(args[i])) {
+                    concurrent = true;
+                } else if ("--cache-daemon".equals(args[i])) {
+                    cacheDaemon = true;
+                } else if ("--reuse-port".equals(args[i])) {
+                    reusePort = true;
                 } else if ("--port".equals(args[i]) && i + 1 < args.length) {
                     port = Integer.parseInt(args[i + 1]);
                     i++;
+                } else if ("--peers".equals(args[i]) && i + 1 < args.length) {
+                    peers = args[i + 1];
+                    i++;
+                } else if ("--node-url".equals(args[i]) && i + 1 < args.length) {
+                    nodeUrl = args[i + 1];
+                    i++;
+                } else if ("--resources-dir".equals(args[i]) && i + 1 < args.length) {
+                    resourcesDir = args[i + 1];
+                    i++;
+                } else if ("--prompts-dir".equals(args[i]) && i + 1 < args.length) {
+                    promptsDir = args[i + 1];
+                    i++;
+                } else if ("--batch-dir".equals(args[i]) && i + 1 < args.length) {
+                    batchDir = args[i + 1];
+                    i++;
+                } else if ("--config".equals(args[i]) && i + 1 < args.length) {
+                    configFile = Path.of(args[i + 1]);
+                    i++;
                 }
             }
             
+            if (configFile != null) {
+                RuntimeConfig.getInstance().watch(configFile);
+            }
+            
+            if (jfr) {
+                JfrRecording.start();
+            }
+            
+            if (llmStub) {
+                LlmStubServer stub = LlmStubServer.start(port, LlmStubServer.Config.fromEnvironment());
+                System.out.println("LLM stub server listening on " + stub.url());
+                System.out.println("  POST " + stub.url() + "/openai/deployments/<name>/chat/completions");
+                System.out.println("  POST " + stub.url() + "/v1/chat/completions");
+                System.out.println("  GET  " + stub.url() + "/stats");
+                Thread.currentThread().join();
+                return;
+            }
+            
+            if (cacheDaemon) {
+                CacheDaemon daemon = CacheDaemon.start(CacheDaemon.daemonSocket(), LlmBackends.upstream(),
+                    AIResponseCache.fromEnvironment());
+                LlmBackends.warmUpInBackground();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    daemon.stop();
+                    LlmBackends.shutdown();
+                }, "shutdown"));
+                System.out.println("Cache daemon listening on " + daemon.socketPath());
+                System.out.println("Start servers with MCP_CACHE_SOCKET=" + daemon.socketPath() + " to share it");
+                Thread.currentThread().join();
+                return;
+            }
+            
+            FileResourceProvider fileResources = resourcesDir != null
+                ? FileResourceProvider.forDirectory(resourcesDir) : null;
+            
             if (httpMode) {
-                startHttpServer(port);
+                ClusterRouter cluster = null;
+                if (peers != null && !peers.isBlank()) {
+                    cluster = ClusterRouter.fromPeerList(
+                        nodeUrl != null ? nodeUrl : "http://localhost:" + port, peers);
+                }
+                startHttpServer(port, cluster, fileResources,
+                    batchDir != null ? AIBatchJobs.create(batchDir) : null, reusePort);
             } else {
-                startStdioServer();
+                startStdioServer(fileResources, promptsDir, concurrent);
             }
 
         } catch (Exception e) {
@@ -46,7 +155,17 @@ public class Main {
         }
     }
     
-    private static void startStdioServer() throws InterruptedException {
+    private static void startResourceWatcher(FileResourceProvider fileResources, ResourceWatcher.Listener listener) {
+        try {
+            ResourceWatcher.start(fileResources, listener);
+        } catch (Exception e) {
+            System.err.println("Warning: file watching unavailable, resources will be rescanned on demand: "
+                + e.getMessage());
+        }
+    }
+
+    private static void startStdioServer(FileResourceProvider fileResources, String promptsDir, boolean concurrent)
+            throws Exception {
         System.err.println("Starting MCP Server with STDIO transport...");
 
         // Create a custom ObjectMapper configured to ignore unknown properties
@@ -66,46 +185,111 @@ public class Main {
             mcpMapper = McpJsonMapper.getDefault();
         }
 
+        // stdout carries the protocol, keep trace output off it
+        Tracing.setStdoutIsProtocol(true);
+
         // Create stdio transport provider
-        StdioServerTransportProvider transportProvider = 
-            new StdioServerTransportProvider(mcpMapper);
+        McpStdioTransportProvider transportProvider = concurrent
+            ? McpStdioTransportProvider.concurrent(mcpMapper, ToolScheduler.intEnv("MCP_STDIO_MAX_IN_FLIGHT", 16))
+            : new McpStdioTransportProvider(mcpMapper);
+        ResourceSubscriptions subscriptions = new ResourceSubscriptions(fileResources);
+        subscriptions.install(transportProvider);
+
+        // tools/list is answered with the catalog's pre-serialized listing
+        ToolCatalog tools = ToolsProvider.catalog();
+        transportProvider.interceptRequest(McpSchema.METHOD_TOOLS_LIST, params ->
+            new McpStdioTransportProvider.RawJson(tools.mcpListing()));
+
+        // The prompt catalog answers prompts/list (with pagination) and prompts/get itself
+        PromptTemplateEngine prompts = PromptTemplateEngine.create(promptsDir);
+        transportProvider.interceptRequest(McpSchema.METHOD_PROMPT_LIST, params ->
+            prompts.list(stringParam(params, "cursor")));
+        transportProvider.interceptRequest(McpSchema.METHOD_PROMPT_GET, params -> {
+            Object arguments = params instanceof Map ? ((Map<?, ?>) params).get("arguments") : null;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> argumentMap = arguments instanceof Map ? (Map<String, Object>) arguments : Map.of();
+            return prompts.render(stringParam(params, "name"), argumentMap);
+        });
+
+        List<McpServerFeatures.SyncResourceSpecification> resources = new ArrayList<>(List.of(
+            ResourcesProvider.getServerInfoResource(),
+            ResourcesProvider.getDocumentationResource()
+        ));
+        List<McpServerFeatures.SyncResourceTemplateSpecification> resourceTemplates = new ArrayList<>();
+        if (fileResources != null) {
+            resources.addAll(fileResources.getFileResources(ToolScheduler.intEnv("MCP_RESOURCE_LIST_LIMIT", 1000)));
+            resourceTemplates.add(fileResources.getFileResourceTemplate());
+        }
 
         // Build and configure the server with tools, resources, and prompts
         McpSyncServer server = McpServer.sync(transportProvider)
                 .serverInfo("mcp-server-java", "1.0.0")
                 .capabilities(McpSchema.ServerCapabilities.builder()
                     .tools(true)
-                    .resources(true, false)
+                    .resources(true, true)
                     .prompts(true)
                     .build())
-                .tools(
-                    ToolsProvider.getAddTool(),
-                    ToolsProvider.getMultiplyTool(),
-                    ToolsProvider.getCurrentTimeTool(),
-                    ToolsProvider.getGreetingTool(),
-                    ToolsProvider.getAIChatTool()
-                )
-                .resources(
-                    ResourcesProvider.getServerInfoResource(),
-                    ResourcesProvider.getDocumentationResource()
-                )
-                .prompts(
-                    PromptsProvider.getMathHelperPrompt(),
-                    PromptsProvider.getCurrentTimePrompt()
-                )
+                .tools(tools.specifications())
+                .resources(resources)
+                .resourceTemplates(resourceTemplates)
+                // In concurrent mode requests already run on their own worker, so
+                // handlers execute there instead of being handed to another pool
+                .immediateExecution(transportProvider.isConcurrent())
                 .build();
+        subscriptions.bind(server);
+
+        if (promptsDir != null) {
+            prompts.onReload(() -> transportProvider
+                .notifyClients(McpSchema.METHOD_NOTIFICATION_PROMPTS_LIST_CHANGED, null)
+                .subscribe());
+            prompts.startWatching();
+            System.err.println("Serving " + prompts.size() + " prompts from " + promptsDir);
+        }
+
+        if (fileResources != null) {
+            startResourceWatcher(fileResources, subscriptions);
+            System.err.println("Serving file resources from " + fileResources.root());
+        }
 
+        if (transportProvider.isConcurrent()) {
+            System.err.println("Handling requests concurrently, up to "
+                + ToolScheduler.intEnv("MCP_STDIO_MAX_IN_FLIGHT", 16) + " in flight");
+        }
+        // Persist token usage on exit so quotas carry over to the next session
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> TokenAccounting.getInstance().shutdown(), "shutdown"));
+        LlmBackends.warmUpInBackground();
         System.err.println("MCP Server started successfully and ready to accept requests");
 
         // Keep the main thread alive - server runs indefinitely
         Thread.currentThread().join();
     }
     
-    private static void startHttpServer(int port) throws Exception {
+    private static String stringParam(Object params, String name) {
+        if (params instanceof Map && ((Map<?, ?>) params).get(name) instanceof String) {
+            return (String) ((Map<?, ?>) params).get(name);
+        }
+        return null;
+    }
+
+    private static void startHttpServer(int port, ClusterRouter cluster, FileResourceProvider fileResources,
+                                        AIBatchJobs batchJobs, boolean reusePort) throws Exception {
         System.out.println("Starting HTTP JSON API Server on port " + port + "...");
         
-        HttpJsonServer httpServer = new HttpJsonServer(port);
+        HttpJsonServer httpServer = new HttpJsonServer(port, ToolScheduler.fromEnvironment(), cluster,
+            fileResources, batchJobs);
+        httpServer.setReusePort(reusePort);
         httpServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            httpServer.drain(ToolScheduler.intEnv("MCP_SHUTDOWN_READY_DELAY_SECONDS", 0),
+                ToolScheduler.intEnv("MCP_SHUTDOWN_DRAIN_SECONDS", 30));
+            TokenAccounting.getInstance().shutdown();
+            Tracing.shutdown();
+            LlmBackends.shutdown();
+        }, "shutdown"));
+        LlmBackends.warmUpInBackground();
+        if (fileResources != null) {
+            startResourceWatcher(fileResources, new ResourceWatcher.Listener() { });
+        }
         
         System.out.println("HTTP JSON API Server started successfully!");
         System.out.println("API Endpoints:");
@@ -115,6 +299,28 @@ public class Main {
         System.out.println("  http://localhost:" + port + "/tools/time    - Get current time");
         System.out.println("  http://localhost:" + port + "/tools/greet   - Greet by name");
         System.out.println("  http://localhost:" + port + "/tools/ai_chat - Chat with AI agent");
+        System.out.println("  http://localhost:" + port + "/tools/batch   - Execute several tool calls at once");
+        System.out.println("  http://localhost:" + port + "/tools/dag     - Run a DAG of tool calls, streamed as NDJSON");
+        for (ToolRegistry.Registration registration : ToolsProvider.plugins().tools()) {
+            System.out.println("  http://localhost:" + port + registration.endpoint() + " - "
+                + registration.definition().description());
+        }
+        if (batchJobs != null) {
+            System.out.println("  http://localhost:" + port + "/batch/jobs    - Offline AI batch jobs");
+        }
+        System.out.println("  http://localhost:" + port + "/cluster       - Cluster and cache status");
+        System.out.println("  http://localhost:" + port + "/health/ready  - Readiness (503 while shutting down)");
+        System.out.println("  http://localhost:" + port + "/admin/config  - Runtime configuration (GET admin, PUT/PATCH with token)");
+        if (JfrRecording.active() != null) {
+            System.out.println("  http://localhost:" + port + "/admin/jfr/dump - Dump the flight recording (POST, admin)");
+        }
+        if (fileResources != null) {
+            System.out.println("  http://localhost:" + port + "/resources     - List file resources");
+            System.out.println("  http://localhost:" + port + "/resources/read?path=... - Read a file resource");
+        }
+        if (cluster != null) {
+            System.out.println("Cluster mode: " + cluster.selfUrl() + " in " + cluster.nodes());
+        }
         System.out.println("\nPress Ctrl+C to stop the server");
         System.out.flush();
         
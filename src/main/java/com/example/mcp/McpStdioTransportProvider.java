@@ -0,0 +1,396 @@
+package com.example.mcp;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.json.TypeRef;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpServerSession;
+import io.modelcontextprotocol.spec.McpServerTransport;
+import io.modelcontextprotocol.spec.McpServerTransportProvider;
+import reactor.core.publisher.Mono;
+
+/**
+ * STDIO transport provider with support for request interception.
+ *
+ * Behaves like the SDK's StdioServerTransportProvider (one session, newline
+ * delimited JSON-RPC on stdin/stdout), but lets the server answer selected request
+ * methods directly through {@link #interceptRequest}. This is used for methods the
+ * SDK server does not implement, such as resources/subscribe.
+ *
+ * By default messages are handled one at a time on the reader thread. A provider
+ * created with {@link #concurrent} hands each request to a worker as soon as it is
+ * parsed, so a slow tool call does not hold up the requests behind it. Responses are
+ * then written in completion order by a single writer thread that drains a lock-free
+ * queue into a buffered stdout and flushes whenever the queue runs empty. At most
+ * {@code maxInFlight} requests of the session run at once; when the cap is reached
+ * the reader stops reading stdin until a request completes. Notifications, responses
+ * and the initialize request are still handled in order on the reader thread.
+ */
+public class McpStdioTransportProvider implements McpServerTransportProvider {
+    private static final Logger logger = LoggerFactory.getLogger(McpStdioTransportProvider.class);
+
+    /**
+     * An interceptor result that is already serialized JSON. It is written into the
+     * response envelope as-is, without going through the JSON mapper.
+     */
+    public record RawJson(byte[] json) {
+    }
+
+    private static final byte[] RESPONSE_PREFIX =
+        ("{\"jsonrpc\":\"" + McpSchema.JSONRPC_VERSION + "\",\"id\":").getBytes(StandardCharsets.UTF_8);
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final byte[] RESULT_FIELD = ",\"result\":".getBytes(StandardCharsets.UTF_8);
+
+    private final McpJsonMapper jsonMapper;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final Map<String, Function<Object, Object>> interceptors = new ConcurrentHashMap<>();
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final QueuedWriter writer;
+    private volatile McpServerSession session;
+
+    public McpStdioTransportProvider(McpJsonMapper jsonMapper) {
+        this(jsonMapper, System.in, System.out);
+    }
+
+    public McpStdioTransportProvider(McpJsonMapper jsonMapper, InputStream inputStream, OutputStream outputStream) {
+        this(jsonMapper, inputStream, outputStream, 0);
+    }
+
+    private McpStdioTransportProvider(McpJsonMapper jsonMapper, InputStream inputStream, OutputStream outputStream,
+                                      int maxInFlight) {
+        this.jsonMapper = jsonMapper;
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.maxInFlight = maxInFlight;
+        if (maxInFlight > 0) {
+            this.workers = ToolExecutor.newIoExecutor("mcp-stdio-worker-");
+            this.inFlight = new Semaphore(maxInFlight);
+            this.writer = new QueuedWriter(outputStream);
+        } else {
+            this.workers = null;
+            this.inFlight = null;
+            this.writer = null;
+        }
+    }
+
+    /**
+     * A provider on stdin/stdout that handles up to {@code maxInFlight} requests concurrently.
+     */
+    public static McpStdioTransportProvider concurrent(McpJsonMapper jsonMapper, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        return new McpStdioTransportProvider(jsonMapper, System.in, System.out, maxInFlight);
+    }
+
+    /**
+     * True if requests are handled concurrently.
+     */
+    public boolean isConcurrent() {
+        return workers != null;
+    }
+
+    /**
+     * Answer requests for the given method with the handler's result instead of
+     * passing them to the MCP session. The handler receives the raw request params.
+     * An {@link IllegalArgumentException} from the handler becomes an "invalid params" error.
+     * A handler may return {@link RawJson} to answer with a pre-serialized result.
+     */
+    public void interceptRequest(String method, Function<Object, Object> handler) {
+        interceptors.put(method, handler);
+    }
+
+    @Override
+    public void setSessionFactory(McpServerSession.Factory sessionFactory) {
+        this.session = sessionFactory.create(new SessionTransport());
+        if (writer != null) {
+            writer.start();
+        }
+        Thread reader = new Thread(this::readLoop, "mcp-stdio-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public Mono<Void> notifyClients(String method, Object params) {
+        if (session == null) {
+            return Mono.error(McpError.builder(McpSchema.ErrorCodes.INTERNAL_ERROR)
+                .message("No session to notify")
+                .build());
+        }
+        return session.sendNotification(method, params)
+            .doOnError(error -> logger.error("Failed to send notification {}: {}", method, error.getMessage()));
+    }
+
+    @Override
+    public Mono<Void> closeGracefully() {
+        Mono<Void> close = session == null ? Mono.empty() : session.closeGracefully();
+        return close.then(Mono.fromRunnable(this::shutdownConcurrency));
+    }
+
+    private void readLoop() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while (!closing.get() && (line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                McpSchema.JSONRPCMessage message;
+                try {
+                    message = McpSchema.deserializeJsonRpcMessage(jsonMapper, line);
+                } catch (Exception e) {
+                    logger.error("Discarding malformed JSON-RPC message: {}", e.getMessage());
+                    continue;
+                }
+                if (workers != null && message instanceof McpSchema.JSONRPCRequest
+                        && !McpSchema.METHOD_INITIALIZE.equals(((McpSchema.JSONRPCRequest) message).method())) {
+                    dispatchConcurrently((McpSchema.JSONRPCRequest) message);
+                } else {
+                    dispatch(message, null);
+                }
+            }
+        } catch (IOException e) {
+            if (!closing.get()) {
+                logger.error("Error reading from stdin", e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("STDIO input closed");
+        awaitInFlight();
+        closing.set(true);
+        session.closeGracefully().subscribe(null, error -> shutdownConcurrency(), this::shutdownConcurrency);
+    }
+
+    private void dispatchConcurrently(McpSchema.JSONRPCRequest request) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            workers.execute(() -> dispatch(request, inFlight::release));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            logger.error("Cannot dispatch {}: {}", request.method(), e.getMessage());
+        }
+    }
+
+    /**
+     * Handle one message; {@code done}, if not null, runs once its response has been queued.
+     */
+    private void dispatch(McpSchema.JSONRPCMessage message, Runnable done) {
+        if (message instanceof McpSchema.JSONRPCRequest) {
+            McpSchema.JSONRPCRequest request = (McpSchema.JSONRPCRequest) message;
+            Function<Object, Object> interceptor = interceptors.get(request.method());
+            if (interceptor != null) {
+                try {
+                    intercept(request, interceptor);
+                } finally {
+                    if (done != null) {
+                        done.run();
+                    }
+                }
+                return;
+            }
+        }
+        Mono<Void> handled = session.handle(message);
+        if (done != null) {
+            handled = handled.doFinally(signal -> done.run());
+        }
+        handled.subscribe(null, error -> logger.error("Error handling message: {}", error.getMessage()));
+    }
+
+    /**
+     * Let requests that are still running finish and queue their responses.
+     */
+    private void awaitInFlight() {
+        if (inFlight == null) {
+            return;
+        }
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("{} requests still running after {}s, closing anyway",
+                    maxInFlight - inFlight.availablePermits(), DRAIN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shutdownConcurrency() {
+        if (workers == null) {
+            return;
+        }
+        workers.shutdown();
+        writer.close();
+    }
+
+    private void intercept(McpSchema.JSONRPCRequest request, Function<Object, Object> handler) {
+        Object result;
+        try {
+            result = handler.apply(request.params());
+        } catch (IllegalArgumentException e) {
+            write(new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, request.id(), null,
+                new McpSchema.JSONRPCResponse.JSONRPCError(McpSchema.ErrorCodes.INVALID_PARAMS, e.getMessage(), null)));
+            return;
+        } catch (Exception e) {
+            logger.error("Error in {} handler", request.method(), e);
+            write(new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, request.id(), null,
+                new McpSchema.JSONRPCResponse.JSONRPCError(McpSchema.ErrorCodes.INTERNAL_ERROR, e.getMessage(), null)));
+            return;
+        }
+
+        if (result instanceof RawJson) {
+            try {
+                write(RESPONSE_PREFIX, jsonMapper.writeValueAsBytes(request.id()), RESULT_FIELD,
+                    ((RawJson) result).json(), new byte[] {'}'});
+            } catch (IOException e) {
+                logger.error("Error serializing response id", e);
+            }
+        } else {
+            write(new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, request.id(), result, null));
+        }
+    }
+
+    private void write(McpSchema.JSONRPCMessage message) {
+        try {
+            write(jsonMapper.writeValueAsBytes(message));
+        } catch (IOException e) {
+            logger.error("Error serializing message", e);
+        }
+    }
+
+    private void write(byte[]... parts) {
+        if (writer != null) {
+            writer.enqueue(parts);
+            return;
+        }
+        try {
+            synchronized (outputStream) {
+                for (byte[] part : parts) {
+                    outputStream.write(part);
+                }
+                outputStream.write('\n');
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            if (!closing.get()) {
+                logger.error("Error writing to stdout", e);
+            }
+        }
+    }
+
+    /**
+     * Single consumer of a lock-free queue of outgoing lines. Producers never block
+     * on stdout; the writer thread writes queued lines into a buffer and flushes only
+     * when it has caught up, so bursts of responses share one flush.
+     */
+    private final class QueuedWriter implements Runnable {
+        private final ConcurrentLinkedQueue<byte[][]> queue = new ConcurrentLinkedQueue<>();
+        private final OutputStream out;
+        private volatile boolean closed;
+        private volatile Thread thread;
+
+        QueuedWriter(OutputStream out) {
+            this.out = new BufferedOutputStream(out, 64 * 1024);
+        }
+
+        void start() {
+            Thread writerThread = new Thread(this, "mcp-stdio-writer");
+            writerThread.setDaemon(true);
+            thread = writerThread;
+            writerThread.start();
+        }
+
+        void enqueue(byte[][] parts) {
+            queue.add(parts);
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Stop after writing everything queued so far, waiting up to a second.
+         */
+        void close() {
+            closed = true;
+            Thread writerThread = thread;
+            if (writerThread != null && writerThread != Thread.currentThread()) {
+                LockSupport.unpark(writerThread);
+                try {
+                    writerThread.join(TimeUnit.SECONDS.toMillis(1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[][] parts = queue.poll();
+                    if (parts != null) {
+                        for (byte[] part : parts) {
+                            out.write(part);
+                        }
+                        out.write('\n');
+                        continue;
+                    }
+                    out.flush();
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    // An enqueue between poll() and here leaves a permit, so park returns at once
+                    LockSupport.park(this);
+                }
+            } catch (IOException e) {
+                if (!closing.get()) {
+                    logger.error("Error writing to stdout", e);
+                }
+                closing.set(true);
+            }
+        }
+    }
+
+    private final class SessionTransport implements McpServerTransport {
+        @Override
+        public Mono<Void> sendMessage(McpSchema.JSONRPCMessage message) {
+            return Mono.fromRunnable(() -> write(message));
+        }
+
+        @Override
+        public <T> T unmarshalFrom(Object data, TypeRef<T> typeRef) {
+            return jsonMapper.convertValue(data, typeRef);
+        }
+
+        @Override
+        public Mono<Void> closeGracefully() {
+            return Mono.fromRunnable(this::close);
+        }
+
+        @Override
+        public void close() {
+            closing.set(true);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.mcp;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Service provider interface for tools.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader}: list the
+ * class name in META-INF/services/com.example.mcp.McpTool and put the jar on the
+ * classpath (the shaded jar merges service files from all dependencies). Each tool
+ * is then listed in tools/list and GET /tools, callable over MCP, at
+ * POST /tools/&lt;name&gt; and from /tools/batch, and executed according to its
+ * {@link ExecutionProfile} by the {@link ToolExecutor}.
+ *
+ * Implementations need a public no-argument constructor and must be thread safe.
+ */
+public interface McpTool {
+
+    /**
+     * How a tool's calls are executed.
+     */
+    enum ExecutionProfile {
+        /** Microsecond-scale work, run on the calling thread. */
+        INLINE,
+        /** CPU-bound work, run on a fork/join pool sized to the available cores. */
+        CPU,
+        /** Work that mostly waits on I/O, run on its own (virtual where available) thread. */
+        IO
+    }
+
+    /** Unique tool name. */
+    String name();
+
+    String description();
+
+    /** JSON Schema of the tool's arguments. */
+    String inputSchema();
+
+    default ExecutionProfile executionProfile() {
+        return ExecutionProfile.INLINE;
+    }
+
+    /**
+     * Maximum number of calls of this tool executing at once; further calls wait
+     * their turn. 0 means unlimited. Can be overridden with MCP_TOOL_CONCURRENCY.
+     */
+    default int maxConcurrency() {
+        return 0;
+    }
+
+    /**
+     * Called once with the compiled input schema before the first call, so the tool
+     * can resolve its parameter slots with {@link ToolSchema#slot}.
+     */
+    default void bind(ToolSchema schema) {
+    }
+
+    /**
+     * Execute the tool. Arguments have already been validated against the input schema.
+     * Throw {@link IllegalArgumentException} for invalid input the schema cannot express.
+     */
+    McpSchema.CallToolResult call(ToolSchema.Arguments arguments) throws Exception;
+}
@@ -0,0 +1,180 @@
+package com.example.mcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * A prompt template compiled into a flat list of segments.
+ *
+ * The template text is parsed once into literal strings and argument slots
+ * ({{name}} or {{name|default}}); rendering just appends segments into a reused,
+ * per-thread StringBuilder, with no regex or format-string parsing per call.
+ *
+ * Template files look like this:
+ * <pre>
+ * ---
+ * title: Mathematical Operation Helper
+ * argument: operation | The mathematical operation to perform | required
+ * ---
+ * I need help with the {{operation|add}} operation.
+ * </pre>
+ */
+public final class PromptTemplate {
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final String name;
+    private final String description;
+    private final McpSchema.Prompt prompt;
+    private final String[] literals;
+    private final String[] slotNames;
+    private final String[] slotDefaults;
+    private final String[] requiredArguments;
+
+    private PromptTemplate(String name, String description, List<McpSchema.PromptArgument> arguments,
+                           List<String> literals, List<String> slotNames, List<String> slotDefaults) {
+        this.name = name;
+        this.description = description;
+        this.prompt = new McpSchema.Prompt(name, description, List.copyOf(arguments));
+        this.literals = literals.toArray(new String[0]);
+        this.slotNames = slotNames.toArray(new String[0]);
+        this.slotDefaults = slotDefaults.toArray(new String[0]);
+        this.requiredArguments = arguments.stream()
+            .filter(argument -> Boolean.TRUE.equals(argument.required()))
+            .map(McpSchema.PromptArgument::name)
+            .filter(argument -> !hasDefault(argument))
+            .toArray(String[]::new);
+    }
+
+    private boolean hasDefault(String argument) {
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slotNames[i].equals(argument) && slotDefaults[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public McpSchema.Prompt prompt() {
+        return prompt;
+    }
+
+    /**
+     * Render the template with the given arguments.
+     *
+     * @throws IllegalArgumentException if a required argument without default is missing
+     */
+    public String render(Map<String, Object> arguments) {
+        for (String required : requiredArguments) {
+            if (arguments == null || arguments.get(required) == null) {
+                throw new IllegalArgumentException("Missing required argument: " + required);
+            }
+        }
+
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        for (int i = 0; i < slotNames.length; i++) {
+            buffer.append(literals[i]);
+            Object value = arguments != null ? arguments.get(slotNames[i]) : null;
+            if (value != null) {
+                buffer.append(value);
+            } else if (slotDefaults[i] != null) {
+                buffer.append(slotDefaults[i]);
+            }
+        }
+        buffer.append(literals[slotNames.length]);
+        String rendered = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return rendered;
+    }
+
+    /**
+     * Render the template into an MCP prompt result.
+     */
+    public McpSchema.GetPromptResult toResult(Map<String, Object> arguments) {
+        return new McpSchema.GetPromptResult(
+            description,
+            List.of(new McpSchema.PromptMessage(
+                McpSchema.Role.USER,
+                new McpSchema.TextContent(render(arguments))
+            ))
+        );
+    }
+
+    /**
+     * Compile a template from its source text (optional front matter plus body).
+     *
+     * @throws IllegalArgumentException if the source is malformed
+     */
+    public static PromptTemplate compile(String name, String source) {
+        String description = name;
+        List<McpSchema.PromptArgument> arguments = new ArrayList<>();
+        String body = source;
+
+        if (source.startsWith("---")) {
+            int headerStart = source.indexOf('\n') + 1;
+            int headerEnd = source.indexOf("\n---", headerStart - 1);
+            if (headerStart == 0 || headerEnd < 0) {
+                throw new IllegalArgumentException("Unterminated front matter in prompt " + name);
+            }
+            for (String line : source.substring(headerStart, Math.max(headerStart, headerEnd)).split("\n")) {
+                int colon = line.indexOf(':');
+                if (line.isBlank() || colon < 0) {
+                    continue;
+                }
+                String key = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if ("title".equals(key) || "description".equals(key)) {
+                    description = value;
+                } else if ("argument".equals(key)) {
+                    String[] parts = value.split("\\|");
+                    arguments.add(new McpSchema.PromptArgument(
+                        parts[0].trim(),
+                        parts.length > 1 ? parts[1].trim() : null,
+                        parts.length > 2 && "required".equalsIgnoreCase(parts[2].trim())
+                    ));
+                }
+            }
+            int bodyStart = source.indexOf('\n', headerEnd + 1);
+            body = bodyStart < 0 ? "" : source.substring(bodyStart + 1);
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        List<String> slotDefaults = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = body.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            int close = body.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder in prompt " + name);
+            }
+            literals.add(body.substring(position, open));
+            String slot = body.substring(open + 2, close).trim();
+            int bar = slot.indexOf('|');
+            slotNames.add(bar < 0 ? slot : slot.substring(0, bar).trim());
+            slotDefaults.add(bar < 0 ? null : slot.substring(bar + 1).trim());
+            position = close + 2;
+        }
+        literals.add(body.substring(position));
+
+        for (String slotName : slotNames) {
+            if (arguments.stream().noneMatch(argument -> argument.name().equals(slotName))) {
+                arguments.add(new McpSchema.PromptArgument(slotName, null, false));
+            }
+        }
+        return new PromptTemplate(name, description, arguments, literals, slotNames, slotDefaults);
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Catalog of compiled {@link PromptTemplate}s.
+ *
+ * Templates are the built-in prompts plus every *.prompt file in an optional
+ * directory (the file name without extension is the prompt name; a file overrides
+ * a built-in of the same name). Each file is compiled once when it is loaded or
+ * changes. The catalog is published as an immutable snapshot, so lookups and
+ * listing never lock: the full prompt list is precomputed, and a page is a view
+ * over it found through a name index.
+ *
+ * Configuration (environment variables):
+ *   MCP_PROMPTS_PAGE_SIZE   - prompts per prompts/list page (default 100)
+ *   MCP_PROMPTS_DEBOUNCE_MS - quiet period before a changed file is recompiled (default 250)
+ */
+public class PromptTemplateEngine implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PromptTemplateEngine.class);
+
+    public static final String FILE_EXTENSION = ".prompt";
+
+    /**
+     * Immutable view of the catalog, replaced as a whole on every reload.
+     */
+    private static final class Catalog {
+        final PromptTemplate[] templates;
+        final String[] names;
+        final List<McpSchema.Prompt> prompts;
+        final Map<String, Integer> index;
+
+        Catalog(Collection<PromptTemplate> sorted) {
+            this.templates = sorted.toArray(new PromptTemplate[0]);
+            this.names = new String[templates.length];
+            this.index = new HashMap<>(templates.length * 2);
+            McpSchema.Prompt[] prompts = new McpSchema.Prompt[templates.length];
+            for (int i = 0; i < templates.length; i++) {
+                names[i] = templates[i].name();
+                prompts[i] = templates[i].prompt();
+                index.put(names[i], i);
+            }
+            this.prompts = List.of(prompts);
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, PromptTemplate> builtIns;
+    private final Map<String, PromptTemplate> loaded = new HashMap<>();
+    private final int pageSize;
+    private final long debounceNanos;
+    private volatile Catalog catalog;
+    private volatile Runnable reloadListener = () -> { };
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public PromptTemplateEngine(Path directory, Collection<PromptTemplate> builtIns, int pageSize,
+                                long debounceMillis) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.directory = directory != null ? directory.toAbsolutePath().normalize() : null;
+        this.builtIns = new LinkedHashMap<>();
+        for (PromptTemplate template : builtIns) {
+            this.builtIns.put(template.name(), template);
+        }
+        this.pageSize = pageSize;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+
+        if (this.directory != null) {
+            if (!Files.isDirectory(this.directory)) {
+                throw new IOException("Not a directory: " + this.directory);
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + FILE_EXTENSION)) {
+                for (Path file : files) {
+                    load(file);
+                }
+            }
+        }
+        publish();
+        logger.info("Prompt catalog ready: {} templates ({} from {})",
+            catalog.templates.length, loaded.size(), this.directory);
+    }
+
+    /**
+     * Create an engine configured from environment variables, with the built-in prompts
+     * and the templates in the given directory (may be null).
+     */
+    public static PromptTemplateEngine create(String directory) throws IOException {
+        return new PromptTemplateEngine(
+            directory != null ? Paths.get(directory) : null,
+            PromptsProvider.builtInTemplates(),
+            ToolScheduler.intEnv("MCP_PROMPTS_PAGE_SIZE", 100),
+            ToolScheduler.intEnv("MCP_PROMPTS_DEBOUNCE_MS", 250)
+        );
+    }
+
+    /**
+     * Look up a template by prompt name, or null if there is none.
+     */
+    public PromptTemplate get(String name) {
+        Catalog current = catalog;
+        Integer position = current.index.get(name);
+        return position != null ? current.templates[position] : null;
+    }
+
+    /**
+     * Number of templates in the catalog.
+     */
+    public int size() {
+        return catalog.templates.length;
+    }
+
+    /**
+     * One page of the catalog. The cursor is the name of the first prompt of the page,
+     * as returned in nextCursor; null starts from the beginning. If that prompt has since
+     * been removed, listing continues with the next name in order.
+     */
+    public McpSchema.ListPromptsResult list(String cursor) {
+        Catalog current = catalog;
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            Integer position = current.index.get(cursor);
+            if (position != null) {
+                start = position;
+            } else {
+                int insertion = Arrays.binarySearch(current.names, cursor);
+                start = insertion >= 0 ? insertion : -insertion - 1;
+            }
+        }
+        int end = Math.min(start + pageSize, current.templates.length);
+        String nextCursor = end < current.templates.length ? current.names[end] : null;
+        return new McpSchema.ListPromptsResult(current.prompts.subList(start, end), nextCursor);
+    }
+
+    /**
+     * Render the named prompt.
+     *
+     * @throws IllegalArgumentException if the prompt does not exist or an argument is missing
+     */
+    public McpSchema.GetPromptResult render(String name, Map<String, Object> arguments) {
+        PromptTemplate template = get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt: " + name);
+        }
+        return template.toResult(arguments);
+    }
+
+    /**
+     * Register a callback run after the catalog changed on disk.
+     */
+    public void onReload(Runnable listener) {
+        this.reloadListener = listener;
+    }
+
+    /**
+     * Start watching the template directory and recompile files as they change.
+     */
+    public synchronized void startWatching() throws IOException {
+        if (directory == null || watchService != null) {
+            return;
+        }
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        watchThread = new Thread(this::watchLoop, "prompt-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("Watching {} for prompt template changes", directory);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Error closing prompt watch service: {}", e.getMessage());
+        }
+        watchThread.interrupt();
+    }
+
+    private void watchLoop() {
+        Map<Path, Long> pending = new LinkedHashMap<>();
+        long pollNanos = Math.max(debounceNanos / 2, TimeUnit.MILLISECONDS.toNanos(10));
+        while (true) {
+            try {
+                WatchKey key = pending.isEmpty()
+                    ? watchService.take()
+                    : watchService.poll(pollNanos, TimeUnit.NANOSECONDS);
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+                                files.forEach(file -> pending.put(file, System.nanoTime()));
+                            }
+                            continue;
+                        }
+                        Path file = directory.resolve((Path) event.context());
+                        if (file.getFileName().toString().endsWith(FILE_EXTENSION)) {
+                            pending.put(file, System.nanoTime());
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll();
+                }
+
+                long now = System.nanoTime();
+                List<Path> ready = new ArrayList<>();
+                pending.entrySet().removeIf(entry -> {
+                    if (now - entry.getValue() >= debounceNanos) {
+                        ready.add(entry.getKey());
+                        return true;
+                    }
+                    return false;
+                });
+                if (!ready.isEmpty() && reload(ready)) {
+                    reloadListener.run();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Error processing prompt template changes", e);
+            }
+        }
+    }
+
+    private synchronized boolean reload(List<Path> files) {
+        boolean changed = false;
+        for (Path file : files) {
+            if (Files.isRegularFile(file)) {
+                changed |= load(file);
+            } else if (loaded.remove(promptName(file)) != null) {
+                logger.info("Removed prompt template {}", promptName(file));
+                changed = true;
+            }
+        }
+        if (changed) {
+            publish();
+        }
+        return changed;
+    }
+
+    /**
+     * Compile one file into the loaded set. A file that fails to compile keeps its
+     * previous version, if any.
+     */
+    private boolean load(Path file) {
+        String name = promptName(file);
+        try {
+            PromptTemplate template = PromptTemplate.compile(name,
+                Files.readString(file, StandardCharsets.UTF_8).replace("\r\n", "\n"));
+            loaded.put(name, template);
+            logger.debug("Compiled prompt template {} from {}", name, file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Skipping prompt template {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private void publish() {
+        Map<String, PromptTemplate> merged = new TreeMap<>(Comparator.naturalOrder());
+        merged.putAll(builtIns);
+        merged.putAll(loaded);
+        catalog = new Catalog(merged.values());
+    }
+
+    private static String promptName(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.server.McpSyncServer;
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Tracks resources/subscribe requests and turns file watcher events into MCP notifications.
+ *
+ * Subscribing to a file resource records its content hash as a baseline, so the
+ * {@link ResourceWatcher} can tell real content changes from touches and rewrites
+ * of identical content. Subscribers get notifications/resources/updated only for
+ * real changes; created and deleted files are added to or removed from the server's
+ * resource list, which emits notifications/resources/list_changed.
+ */
+public class ResourceSubscriptions implements ResourceWatcher.Listener {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceSubscriptions.class);
+
+    private final FileResourceProvider files;
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    private volatile McpSyncServer server;
+
+    public ResourceSubscriptions(FileResourceProvider files) {
+        this.files = files;
+    }
+
+    /**
+     * Handle resources/subscribe and resources/unsubscribe on the given transport.
+     */
+    public void install(McpStdioTransportProvider transport) {
+        transport.interceptRequest(McpSchema.METHOD_RESOURCES_SUBSCRIBE, this::subscribe);
+        transport.interceptRequest(McpSchema.METHOD_RESOURCES_UNSUBSCRIBE, this::unsubscribe);
+    }
+
+    /**
+     * Attach the server used to send notifications.
+     */
+    public void bind(McpSyncServer server) {
+        this.server = server;
+    }
+
+    private Object subscribe(Object params) {
+        String uri = uriParam(params);
+        String path = files != null ? FileResourceProvider.pathFromUri(uri) : null;
+        if (path != null) {
+            try {
+                files.contentHash(path);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot subscribe to " + uri + ": " + e.getMessage());
+            }
+        }
+        subscribed.add(uri);
+        logger.info("Subscribed to resource {}", uri);
+        return Map.of();
+    }
+
+    private Object unsubscribe(Object params) {
+        String uri = uriParam(params);
+        subscribed.remove(uri);
+        logger.info("Unsubscribed from resource {}", uri);
+        return Map.of();
+    }
+
+    private static String uriParam(Object params) {
+        if (params instanceof Map && ((Map<?, ?>) params).get("uri") instanceof String) {
+            return (String) ((Map<?, ?>) params).get("uri");
+        }
+        throw new IllegalArgumentException("Missing required parameter: uri");
+    }
+
+    @Override
+    public void resourceCreated(FileResourceProvider.FileEntry file) {
+        McpSyncServer target = server;
+        if (target != null) {
+            target.addResource(files.toSpecification(file));
+        }
+    }
+
+    @Override
+    public void resourceDeleted(FileResourceProvider.FileEntry file) {
+        McpSyncServer target = server;
+        if (target != null) {
+            try {
+                target.removeResource(file.uri());
+            } catch (Exception e) {
+                logger.debug("Resource {} was not registered: {}", file.uri(), e.getMessage());
+            }
+        }
+        resourceUpdated(file);
+    }
+
+    @Override
+    public void resourceUpdated(FileResourceProvider.FileEntry file) {
+        McpSyncServer target = server;
+        if (target != null && subscribed.contains(file.uri())) {
+            logger.info("Resource {} changed, notifying subscriber", file.uri());
+            target.notifyResourcesUpdated(new McpSchema.ResourcesUpdatedNotification(file.uri()));
+        }
+    }
+}
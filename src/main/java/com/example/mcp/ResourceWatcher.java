@@ -0,0 +1,213 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the file resource root with a {@link WatchService} and keeps the
+ * {@link FileResourceProvider} index current.
+ *
+ * Events are debounced and coalesced per path: a path is processed once it has been
+ * quiet for the debounce interval, so a burst of writes to one file produces a single
+ * update. Updates are only reported when the file's content hash actually changed;
+ * files whose hash was never computed (nobody read or subscribed to them) just have
+ * their index entry refreshed.
+ *
+ * Configuration (environment variables):
+ *   MCP_RESOURCE_DEBOUNCE_MS - quiet period before a change is processed (default 250)
+ */
+public class ResourceWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceWatcher.class);
+
+    /**
+     * Receives resource changes after debouncing.
+     */
+    public interface Listener {
+        default void resourceCreated(FileResourceProvider.FileEntry file) {
+        }
+
+        default void resourceDeleted(FileResourceProvider.FileEntry file) {
+        }
+
+        /** Called when an existing file's content hash changed. */
+        default void resourceUpdated(FileResourceProvider.FileEntry file) {
+        }
+    }
+
+    private final FileResourceProvider provider;
+    private final Listener listener;
+    private final long debounceNanos;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public ResourceWatcher(FileResourceProvider provider, Listener listener, long debounceMillis) throws IOException {
+        this.provider = provider;
+        this.listener = listener;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.watchService = provider.root().getFileSystem().newWatchService();
+        registerTree(provider.root());
+        provider.setWatched(true);
+
+        this.thread = new Thread(this::watchLoop, "resource-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} directories under {} (debounce {} ms)",
+            directories.size(), provider.root(), debounceMillis);
+    }
+
+    /**
+     * Start a watcher configured from environment variables.
+     */
+    public static ResourceWatcher start(FileResourceProvider provider, Listener listener) throws IOException {
+        return new ResourceWatcher(provider, listener, ToolScheduler.intEnv("MCP_RESOURCE_DEBOUNCE_MS", 250));
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchLoop() {
+        long pollNanos = Math.max(debounceNanos / 2, TimeUnit.MILLISECONDS.toNanos(10));
+        while (running) {
+            try {
+                WatchKey key = pending.isEmpty()
+                    ? watchService.take()
+                    : watchService.poll(pollNanos, TimeUnit.NANOSECONDS);
+                while (key != null) {
+                    collect(key);
+                    key = watchService.poll();
+                }
+                flushQuietPaths();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Error processing file change events", e);
+            }
+        }
+    }
+
+    private void collect(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        long now = System.nanoTime();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.warn("File watch events overflowed, rescanning {}", provider.root());
+                provider.setWatched(false);
+                provider.refresh();
+                provider.setWatched(true);
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(child);
+                try (var files = Files.walk(child)) {
+                    files.filter(Files::isRegularFile).forEach(file -> pending.put(file, now));
+                }
+                continue;
+            }
+            pending.remove(child);
+            pending.put(child, now);
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void flushQuietPaths() {
+        long now = System.nanoTime();
+        List<Path> ready = new ArrayList<>();
+        Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (now - entry.getValue() >= debounceNanos) {
+                ready.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        for (Path path : ready) {
+            try {
+                process(path);
+            } catch (Exception e) {
+                logger.warn("Failed to process change to {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    private void process(Path path) throws IOException {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                for (FileResourceProvider.FileEntry removed : provider.onFileDeleted(path)) {
+                    listener.resourceDeleted(removed);
+                }
+            }
+            return;
+        }
+
+        FileResourceProvider.FileEntry previous = provider.onFileChanged(path);
+        String relative = provider.relativize(path);
+        FileResourceProvider.FileEntry current = provider.stat(relative);
+        if (previous == null) {
+            listener.resourceCreated(current);
+            return;
+        }
+
+        String before = provider.cachedContentHash(relative);
+        if (before == null) {
+            return;
+        }
+        provider.invalidateContentHash(relative);
+        String after = provider.contentHash(relative);
+        if (!before.equals(after)) {
+            listener.resourceUpdated(current);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        provider.setWatched(false);
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Error closing watch service: {}", e.getMessage());
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The process-wide {@link ServerConfig}, reloadable without a restart.
+ *
+ * The effective configuration is the environment defaults with an overrides document
+ * applied as a JSON merge patch (RFC 7386). The overrides come from the config file
+ * (--config or MCP_CONFIG_FILE), which is watched and reloaded when it changes, and
+ * from PUT /admin/config, which also writes them back to the file. A change is
+ * validated in full before anything is applied; an invalid file is logged and the
+ * running configuration is kept.
+ *
+ * Request paths read {@link #current()}, a single volatile read of an immutable
+ * snapshot. Components that own sized resources (thread pools, caches, the scheduler)
+ * register a {@link Listener} and resize them after the snapshot is swapped.
+ *
+ * Configuration (environment variables):
+ *   MCP_CONFIG_FILE          - config file, when --config is not given
+ *   MCP_CONFIG_DEBOUNCE_MS   - quiet period after a file change before reloading (default 250)
+ */
+public final class RuntimeConfig {
+    private static final Logger logger = LoggerFactory.getLogger(RuntimeConfig.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Notified after a new configuration has been swapped in.
+     */
+    public interface Listener {
+        void configChanged(ServerConfig previous, ServerConfig current);
+    }
+
+    private static final class InstanceHolder {
+        static final RuntimeConfig INSTANCE = new RuntimeConfig(ServerConfig.fromEnvironment());
+    }
+
+    private final ServerConfig defaults;
+    private final AtomicReference<ServerConfig> current;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object updateLock = new Object();
+    private ObjectNode overrides = MAPPER.createObjectNode();
+    private long version;
+    private Path file;
+    private Thread watcher;
+
+    private RuntimeConfig(ServerConfig defaults) {
+        defaults.validate();
+        this.defaults = defaults;
+        this.current = new AtomicReference<>(defaults);
+    }
+
+    public static RuntimeConfig getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * The configuration in effect. Never null; lock-free.
+     */
+    public static ServerConfig current() {
+        return InstanceHolder.INSTANCE.current.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Load the config file and watch it for changes.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if its content is not a valid configuration
+     */
+    public void watch(Path configFile) throws IOException {
+        Path path = configFile.toAbsolutePath();
+        synchronized (updateLock) {
+            ObjectNode loaded = read(path);
+            ServerConfig config = resolve(loaded);
+            file = path;
+            apply(loaded, config, "file " + path);
+        }
+        WatchService watchService = path.getFileSystem().newWatchService();
+        path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        long debounceMillis = ToolScheduler.intEnv("MCP_CONFIG_DEBOUNCE_MS", 250);
+        watcher = new Thread(() -> watchLoop(watchService, path, debounceMillis), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Watching configuration file {}", path);
+    }
+
+    /**
+     * The config file from MCP_CONFIG_FILE, or null.
+     */
+    static Path configuredFile() {
+        String value = System.getenv("MCP_CONFIG_FILE");
+        return value == null || value.isBlank() ? null : Path.of(value.trim());
+    }
+
+    /**
+     * Apply a JSON merge patch to the overrides, e.g. {"scheduler": {"aiWorkers": 8}}.
+     * A null value resets a setting to its environment default. When a config file is
+     * watched, the new overrides are written to it.
+     *
+     * @return the configuration now in effect
+     * @throws IllegalArgumentException if the result is not a valid configuration
+     * @throws IOException if the config file cannot be written; the change is still applied
+     */
+    public ServerConfig update(JsonNode patch) throws IOException {
+        if (patch == null || !patch.isObject()) {
+            throw new IllegalArgumentException("Configuration patch must be a JSON object");
+        }
+        synchronized (updateLock) {
+            ObjectNode next = overrides.deepCopy();
+            mergePatch(next, patch);
+            ServerConfig config = resolve(next);
+            apply(next, config, "admin update");
+            if (file != null) {
+                write(file, next);
+            }
+            return config;
+        }
+    }
+
+    /**
+     * Current and default configuration, overrides and version: GET /admin/config.
+     */
+    public ObjectNode describe(ObjectMapper mapper) {
+        synchronized (updateLock) {
+            ObjectNode result = mapper.createObjectNode();
+            result.put("version", version);
+            result.put("file", file != null ? file.toString() : null);
+            result.set("config", mapper.valueToTree(current.get()));
+            result.set("overrides", overrides.deepCopy());
+            result.set("defaults", mapper.valueToTree(defaults));
+            return result;
+        }
+    }
+
+    private ServerConfig resolve(ObjectNode overrideTree) {
+        ObjectNode tree = MAPPER.valueToTree(defaults);
+        mergePatch(tree, overrideTree);
+        ServerConfig config;
+        try {
+            config = MAPPER.treeToValue(tree, ServerConfig.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid configuration: " + e.getOriginalMessage(), e);
+        }
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Swap in a validated configuration and notify listeners. Called with updateLock held.
+     */
+    private void apply(ObjectNode overrideTree, ServerConfig config, String origin) {
+        overrides = overrideTree;
+        ServerConfig previous = current.getAndSet(config);
+        if (previous.equals(config)) {
+            return;
+        }
+        version++;
+        logger.info("Configuration version {} applied from {}", version, origin);
+        for (Listener listener : listeners) {
+            try {
+                listener.configChanged(previous, config);
+            } catch (RuntimeException e) {
+                logger.error("Failed to apply configuration change", e);
+            }
+        }
+    }
+
+    private void watchLoop(WatchService watchService, Path path, long debounceMillis) {
+        Path name = path.getFileName();
+        while (true) {
+            try {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                    }
+                    key.reset();
+                    // Editors write in several steps; wait until the file has been quiet
+                    key = changed ? watchService.poll(debounceMillis, TimeUnit.MILLISECONDS) : null;
+                } while (key != null);
+                if (changed) {
+                    reload(path);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private void reload(Path path) {
+        synchronized (updateLock) {
+            try {
+                ObjectNode loaded = read(path);
+                if (loaded.equals(overrides)) {
+                    return;
+                }
+                apply(loaded, resolve(loaded), "file " + path);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn("Ignoring configuration file change, keeping version {}: {}", version, e.getMessage());
+            }
+        }
+    }
+
+    private static ObjectNode read(Path path) throws IOException {
+        JsonNode tree;
+        try {
+            tree = MAPPER.readTree(path.toFile());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON in " + path + ": " + e.getOriginalMessage(), e);
+        }
+        if (tree == null || tree.isMissingNode()) {
+            return MAPPER.createObjectNode();
+        }
+        if (!tree.isObject()) {
+            throw new IllegalArgumentException(path + " must contain a JSON object");
+        }
+        return (ObjectNode) tree;
+    }
+
+    private static void write(Path path, ObjectNode tree) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        MAPPER.writeValue(tmp.toFile(), tree);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Apply an RFC 7386 merge patch to target in place.
+     */
+    private static void mergePatch(ObjectNode target, JsonNode patch) {
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            JsonNode existing = target.get(field.getKey());
+            if (value.isNull()) {
+                target.remove(field.getKey());
+            } else if (value.isObject() && existing != null && existing.isObject()) {
+                mergePatch((ObjectNode) existing, value);
+            } else if (value.isObject()) {
+                ObjectNode created = target.putObject(field.getKey());
+                mergePatch(created, value);
+            } else {
+                target.set(field.getKey(), value.deepCopy());
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.mcp;
+
+import java.util.Map;
+
+/**
+ * Typed, immutable snapshot of the performance settings that can change at runtime.
+ *
+ * The defaults come from the environment variables each component has always read;
+ * {@link RuntimeConfig} overlays a config file and admin updates on top and swaps in
+ * a new snapshot as a whole, so a reader sees either all old or all new values.
+ *
+ * JSON form (every section and field is optional in a config file):
+ * <pre>
+ * {
+ *   "http":      {"threads": 16},
+ *   "scheduler": {"aiWorkers": 4, "queuePerTenant": 32, "queueTotal": 256, "tenantWeights": {"gold": 4}},
+ *   "cache":     {"aiCacheSize": 1000, "aiCacheTtlSeconds": 3600,
+ *                 "idempotencySize": 10000, "idempotencyTtlSeconds": 86400},
+ *   "upstream":  {"endpoint": null, "deployment": null, "timeoutSeconds": 60, "forwardTimeoutSeconds": 120},
+ *   "tools":     {"aiChatMaxTokens": 500}
+ * }
+ * </pre>
+ */
+public record ServerConfig(Http http, Scheduler scheduler, Cache cache, Upstream upstream, Tools tools) {
+
+    /**
+     * @param threads HTTP worker threads (MCP_HTTP_THREADS)
+     */
+    public record Http(int threads) {
+    }
+
+    /**
+     * AI lane of the {@link ToolScheduler}.
+     *
+     * @param aiWorkers worker threads (MCP_AI_WORKERS)
+     * @param queuePerTenant max queued tasks per tenant (MCP_AI_QUEUE_PER_TENANT)
+     * @param queueTotal max queued tasks overall (MCP_AI_QUEUE_TOTAL)
+     * @param tenantWeights fair queue weight per tenant, 1.0 when absent (MCP_TENANT_WEIGHTS)
+     */
+    public record Scheduler(int aiWorkers, int queuePerTenant, int queueTotal, Map<String, Double> tenantWeights) {
+        public Scheduler {
+            tenantWeights = tenantWeights == null ? Map.of() : Map.copyOf(tenantWeights);
+        }
+    }
+
+    /**
+     * @param aiCacheSize max cached ai_chat responses, 0 disables (MCP_AI_CACHE_SIZE)
+     * @param aiCacheTtlSeconds ai_chat response lifetime (MCP_AI_CACHE_TTL_SECONDS)
+     * @param idempotencySize max stored Idempotency-Keys, 0 disables (MCP_IDEMPOTENCY_SIZE)
+     * @param idempotencyTtlSeconds how long a response is replayed (MCP_IDEMPOTENCY_TTL_SECONDS)
+     */
+    public record Cache(int aiCacheSize, int aiCacheTtlSeconds, int idempotencySize, int idempotencyTtlSeconds) {
+    }
+
+    /**
+     * @param endpoint Azure OpenAI endpoint, null for AZURE_OPENAI_ENDPOINT or the built-in one
+     * @param deployment deployment name, null for AZURE_OPENAI_DEPLOYMENT or the built-in one
+     * @param timeoutSeconds request timeout of upstream chat calls
+     * @param forwardTimeoutSeconds timeout of ai_chat calls forwarded to a cluster peer
+     */
+    public record Upstream(String endpoint, String deployment, int timeoutSeconds, int forwardTimeoutSeconds) {
+    }
+
+    /**
+     * @param aiChatMaxTokens max_tokens of ai_chat calls that do not set it
+     */
+    public record Tools(int aiChatMaxTokens) {
+    }
+
+    /**
+     * The settings given by environment variables, with the components' defaults.
+     */
+    static ServerConfig fromEnvironment() {
+        return new ServerConfig(
+            new Http(ToolScheduler.intEnv("MCP_HTTP_THREADS", Math.max(4, Runtime.getRuntime().availableProcessors() * 2))),
+            new Scheduler(
+                ToolScheduler.intEnv("MCP_AI_WORKERS", 4),
+                ToolScheduler.intEnv("MCP_AI_QUEUE_PER_TENANT", 32),
+                ToolScheduler.intEnv("MCP_AI_QUEUE_TOTAL", 256),
+                ToolScheduler.parseWeights(System.getenv("MCP_TENANT_WEIGHTS"))),
+            new Cache(
+                ToolScheduler.intEnv("MCP_AI_CACHE_SIZE", 1000),
+                ToolScheduler.intEnv("MCP_AI_CACHE_TTL_SECONDS", 3600),
+                ToolScheduler.intEnv("MCP_IDEMPOTENCY_SIZE", 10_000),
+                ToolScheduler.intEnv("MCP_IDEMPOTENCY_TTL_SECONDS", 86_400)),
+            new Upstream(null, null, 60, 120),
+            new Tools(ToolArguments.DEFAULT_MAX_TOKENS));
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the first invalid setting
+     */
+    void validate() {
+        if (http == null || scheduler == null || cache == null || upstream == null || tools == null) {
+            throw new IllegalArgumentException("http, scheduler, cache, upstream and tools must not be null");
+        }
+        atLeast("http.threads", http.threads(), 1);
+        atLeast("scheduler.aiWorkers", scheduler.aiWorkers(), 1);
+        atLeast("scheduler.queuePerTenant", scheduler.queuePerTenant(), 1);
+        atLeast("scheduler.queueTotal", scheduler.queueTotal(), 1);
+        scheduler.tenantWeights().forEach((tenant, weight) -> {
+            if (weight == null || !(weight > 0)) {
+                throw new IllegalArgumentException("scheduler.tenantWeights." + tenant + " must be positive");
+            }
+        });
+        atLeast("cache.aiCacheSize", cache.aiCacheSize(), 0);
+        atLeast("cache.aiCacheTtlSeconds", cache.aiCacheTtlSeconds(), 1);
+        atLeast("cache.idempotencySize", cache.idempotencySize(), 0);
+        atLeast("cache.idempotencyTtlSeconds", cache.idempotencyTtlSeconds(), 1);
+        atLeast("upstream.timeoutSeconds", upstream.timeoutSeconds(), 1);
+        atLeast("upstream.forwardTimeoutSeconds", upstream.forwardTimeoutSeconds(), 1);
+        atLeast("tools.aiChatMaxTokens", tools.aiChatMaxTokens(), 1);
+    }
+
+    private static void atLeast(String name, int value, int minimum) {
+        if (value < minimum) {
+            throw new IllegalArgumentException(name + " must be at least " + minimum + ", got " + value);
+        }
+    }
+}
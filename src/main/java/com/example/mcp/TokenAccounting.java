@@ -0,0 +1,431 @@
+package com.example.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Token usage counters per tenant, tool and deployment, with per-tenant quotas.
+ *
+ * Usage comes from the "usage" block of chat completion responses. Counters are
+ * {@link LongAdder}s, so recording from many AI workers does not contend. Quotas are
+ * on total tokens (prompt + completion, which includes reasoning) per window: a soft
+ * quota logs a warning once and is reported in the usage listing, a hard quota
+ * rejects further upstream calls with {@link QuotaExceededException} until the
+ * window rolls over. Whether a tenant is over a quota is worked out when usage is
+ * recorded, so {@link #checkQuota} is a map lookup and a flag read.
+ *
+ * The counters of a window live in one object that is swapped out when the window
+ * rolls over, so a concurrent record lands entirely in the old or the new window.
+ * Tenant names come from request headers, so at most MCP_USAGE_MAX_TENANTS tenants
+ * are tracked per window; further tenants share the "(other)" counters and the "*"
+ * quota. Quotas are only as trustworthy as those headers: without a proxy that
+ * authenticates callers and sets them, treat quotas as advisory.
+ *
+ * With MCP_USAGE_FILE set, counters are written to that file every
+ * MCP_USAGE_SNAPSHOT_SECONDS and at shutdown, and read back at startup, so quotas
+ * survive restarts. The file is a small binary snapshot replaced atomically.
+ *
+ * Configuration (environment variables):
+ *   MCP_TOKEN_QUOTA_HARD        - hard quotas, e.g. "acme=2000000,*=500000" ("*" for other tenants)
+ *   MCP_TOKEN_QUOTA_SOFT        - soft quotas, same format
+ *   MCP_TOKEN_QUOTA_WINDOW      - "day" (UTC, default), "month" or "total"
+ *   MCP_USAGE_FILE              - snapshot file, unset to keep counters in memory only
+ *   MCP_USAGE_SNAPSHOT_SECONDS  - snapshot interval (default 30)
+ *   MCP_USAGE_MAX_TENANTS       - tenants tracked per window (default 10000)
+ */
+public final class TokenAccounting {
+    private static final Logger logger = LoggerFactory.getLogger(TokenAccounting.class);
+    private static final int SNAPSHOT_MAGIC = 0x4D435055;
+    private static final byte SNAPSHOT_VERSION = 1;
+    private static final String ANY_TENANT = "*";
+    static final String OTHER_TENANT = "(other)";
+
+    /**
+     * Tokens reported for one completion.
+     */
+    public record Usage(long promptTokens, long completionTokens, long reasoningTokens) {
+
+        /**
+         * Read an OpenAI style usage object, or return null if it is missing.
+         */
+        public static Usage fromJson(JsonNode usage) {
+            if (usage == null || !usage.isObject()) {
+                return null;
+            }
+            return new Usage(usage.path("prompt_tokens").asLong(),
+                usage.path("completion_tokens").asLong(),
+                usage.path("completion_tokens_details").path("reasoning_tokens").asLong());
+        }
+
+        public long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+    }
+
+    /**
+     * Thrown before an upstream call when the tenant has used up its hard quota.
+     */
+    public static class QuotaExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        QuotaExceededException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * Seconds until the quota window rolls over, or 0 if it never does.
+         */
+        public long retryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder requests = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder completionTokens = new LongAdder();
+        final LongAdder reasoningTokens = new LongAdder();
+        volatile boolean softExceeded;
+        volatile boolean hardExceeded;
+
+        void add(long requestCount, long prompt, long completion, long reasoning) {
+            requests.add(requestCount);
+            promptTokens.add(prompt);
+            completionTokens.add(completion);
+            reasoningTokens.add(reasoning);
+        }
+
+        long totalTokens() {
+            return promptTokens.sum() + completionTokens.sum();
+        }
+    }
+
+    private enum Window { DAY, MONTH, TOTAL }
+
+    /**
+     * The counters of one quota window.
+     */
+    private static final class WindowCounters {
+        final String id;
+        final Map<String, Counters> tenants = new ConcurrentHashMap<>();
+        final Map<String, Counters> tools = new ConcurrentHashMap<>();
+        final Map<String, Counters> deployments = new ConcurrentHashMap<>();
+
+        WindowCounters(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class InstanceHolder {
+        static final TokenAccounting INSTANCE = fromEnvironment();
+    }
+
+    private final Map<String, Long> hardQuotas;
+    private final Map<String, Long> softQuotas;
+    private final Window window;
+    private final int maxTenants;
+    private final Path snapshotFile;
+    private final ScheduledExecutorService snapshotter;
+    private volatile WindowCounters counters;
+
+    private TokenAccounting(Map<String, Long> hardQuotas, Map<String, Long> softQuotas, Window window,
+                            int maxTenants, Path snapshotFile, int snapshotSeconds) {
+        this.hardQuotas = hardQuotas;
+        this.softQuotas = softQuotas;
+        this.window = window;
+        this.maxTenants = maxTenants;
+        this.snapshotFile = snapshotFile;
+        this.counters = new WindowCounters(currentWindowId());
+        if (snapshotFile != null) {
+            load();
+        }
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(HttpJsonServer.namedThreads("usage-snapshot-"));
+        snapshotter.scheduleWithFixedDelay(this::tick, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The process-wide accounting, configured from environment variables.
+     */
+    public static TokenAccounting getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static TokenAccounting fromEnvironment() {
+        Window window;
+        try {
+            window = Window.valueOf(envOrDefault("MCP_TOKEN_QUOTA_WINDOW", "day").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown MCP_TOKEN_QUOTA_WINDOW, using day");
+            window = Window.DAY;
+        }
+        String file = System.getenv("MCP_USAGE_FILE");
+        return new TokenAccounting(
+            parseQuotas(System.getenv("MCP_TOKEN_QUOTA_HARD")),
+            parseQuotas(System.getenv("MCP_TOKEN_QUOTA_SOFT")),
+            window,
+            Math.max(1, ToolScheduler.intEnv("MCP_USAGE_MAX_TENANTS", 10_000)),
+            file == null || file.isBlank() ? null : Paths.get(file),
+            Math.max(1, ToolScheduler.intEnv("MCP_USAGE_SNAPSHOT_SECONDS", 30)));
+    }
+
+    /**
+     * Reject the call if the tenant has reached its hard quota.
+     *
+     * @throws QuotaExceededException if the hard quota is used up
+     */
+    public void checkQuota(String tenant) {
+        WindowCounters current = this.counters;
+        Counters counters = current.tenants.get(tenant);
+        if (counters == null && current.tenants.size() >= maxTenants) {
+            counters = current.tenants.get(OTHER_TENANT);
+        }
+        if (counters != null && counters.hardExceeded) {
+            throw new QuotaExceededException("Token quota of " + quota(hardQuotas, tenant)
+                + " exceeded for tenant " + tenant, secondsUntilRollover());
+        }
+    }
+
+    /**
+     * Add the usage of one completion. A null usage counts the request only.
+     */
+    public void record(String tenant, String tool, String deployment, Usage usage) {
+        long prompt = usage != null ? usage.promptTokens() : 0;
+        long completion = usage != null ? usage.completionTokens() : 0;
+        long reasoning = usage != null ? usage.reasoningTokens() : 0;
+        WindowCounters current = this.counters;
+        String accounted = current.tenants.containsKey(tenant) || current.tenants.size() < maxTenants
+            ? tenant : OTHER_TENANT;
+        Counters tenantCounters = current.tenants.computeIfAbsent(accounted, key -> {
+            if (key.equals(OTHER_TENANT)) {
+                logger.warn("Tracking {} tenants, accounting further tenants as {}", maxTenants, OTHER_TENANT);
+            }
+            return new Counters();
+        });
+        tenantCounters.add(1, prompt, completion, reasoning);
+        current.tools.computeIfAbsent(tool, key -> new Counters()).add(1, prompt, completion, reasoning);
+        current.deployments.computeIfAbsent(deployment, key -> new Counters()).add(1, prompt, completion, reasoning);
+        updateQuotaFlags(accounted, tenantCounters);
+    }
+
+    private void updateQuotaFlags(String tenant, Counters counters) {
+        long soft = quota(softQuotas, tenant);
+        long hard = quota(hardQuotas, tenant);
+        if (soft <= 0 && hard <= 0) {
+            return;
+        }
+        long total = counters.totalTokens();
+        if (soft > 0 && total >= soft && !counters.softExceeded) {
+            counters.softExceeded = true;
+            logger.warn("Tenant {} passed its soft token quota: {} of {} tokens", tenant, total, soft);
+        }
+        if (hard > 0 && total >= hard && !counters.hardExceeded) {
+            counters.hardExceeded = true;
+            logger.warn("Tenant {} reached its hard token quota of {} tokens, rejecting AI calls", tenant, hard);
+        }
+    }
+
+    private static long quota(Map<String, Long> quotas, String tenant) {
+        Long quota = quotas.get(tenant);
+        return quota != null ? quota : quotas.getOrDefault(ANY_TENANT, 0L);
+    }
+
+    /**
+     * Counters of every tenant, tool and deployment in the current window.
+     */
+    public ObjectNode describe(ObjectMapper mapper) {
+        WindowCounters current = this.counters;
+        ObjectNode result = mapper.createObjectNode();
+        result.put("window", window.name().toLowerCase());
+        result.put("window_id", current.id);
+        ObjectNode tenantNodes = describe(result.putObject("tenants"), current.tenants);
+        current.tenants.forEach((tenant, counters) -> {
+            ObjectNode node = (ObjectNode) tenantNodes.get(tenant);
+            long soft = quota(softQuotas, tenant);
+            long hard = quota(hardQuotas, tenant);
+            if (soft > 0) {
+                node.put("soft_quota", soft);
+                node.put("soft_exceeded", counters.softExceeded);
+            }
+            if (hard > 0) {
+                node.put("hard_quota", hard);
+                node.put("hard_exceeded", counters.hardExceeded);
+            }
+        });
+        describe(result.putObject("tools"), current.tools);
+        describe(result.putObject("deployments"), current.deployments);
+        return result;
+    }
+
+    private static ObjectNode describe(ObjectNode target, Map<String, Counters> counters) {
+        new TreeMap<>(counters).forEach((key, value) -> {
+            ObjectNode node = target.putObject(key);
+            node.put("requests", value.requests.sum());
+            node.put("prompt_tokens", value.promptTokens.sum());
+            node.put("completion_tokens", value.completionTokens.sum());
+            node.put("reasoning_tokens", value.reasoningTokens.sum());
+            node.put("total_tokens", value.totalTokens());
+        });
+        return target;
+    }
+
+    /**
+     * Stop the snapshot timer and write a final snapshot.
+     */
+    public void shutdown() {
+        snapshotter.shutdown();
+        snapshot();
+    }
+
+    private void tick() {
+        String current = currentWindowId();
+        String previous = counters.id;
+        if (!current.equals(previous)) {
+            logger.info("Token quota window {} ended, resetting counters", previous);
+            counters = new WindowCounters(current);
+        }
+        snapshot();
+    }
+
+    /**
+     * Write all counters to the snapshot file, if one is configured.
+     */
+    public synchronized void snapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            Path parent = snapshotFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            WindowCounters current = this.counters;
+            Map<String, Counters> tenants = Map.copyOf(current.tenants);
+            Map<String, Counters> tools = Map.copyOf(current.tools);
+            Map<String, Counters> deployments = Map.copyOf(current.deployments);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeByte(SNAPSHOT_VERSION);
+                out.writeUTF(current.id);
+                out.writeInt(tenants.size() + tools.size() + deployments.size());
+                write(out, 0, tenants);
+                write(out, 1, tools);
+                write(out, 2, deployments);
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Cannot write usage snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private static void write(DataOutputStream out, int dimension, Map<String, Counters> counters) throws IOException {
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            Counters value = entry.getValue();
+            out.writeByte(dimension);
+            out.writeUTF(entry.getKey());
+            out.writeLong(value.requests.sum());
+            out.writeLong(value.promptTokens.sum());
+            out.writeLong(value.completionTokens.sum());
+            out.writeLong(value.reasoningTokens.sum());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readByte() != SNAPSHOT_VERSION) {
+                logger.warn("Ignoring usage snapshot {} in an unknown format", snapshotFile);
+                return;
+            }
+            WindowCounters current = this.counters;
+            String savedWindow = in.readUTF();
+            if (!savedWindow.equals(current.id)) {
+                logger.info("Usage snapshot is from window {}, starting window {} from zero", savedWindow, current.id);
+                return;
+            }
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                int dimension = in.readByte();
+                String key = in.readUTF();
+                Map<String, Counters> target = dimension == 0 ? current.tenants
+                    : dimension == 1 ? current.tools : current.deployments;
+                target.computeIfAbsent(key, k -> new Counters())
+                    .add(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            }
+            current.tenants.forEach(this::updateQuotaFlags);
+            logger.info("Loaded token usage of {} tenants from {}", current.tenants.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Cannot read usage snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private String currentWindowId() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        switch (window) {
+            case DAY:
+                return today.toString();
+            case MONTH:
+                return today.toString().substring(0, 7);
+            default:
+                return "total";
+        }
+    }
+
+    private long secondsUntilRollover() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        ZonedDateTime next;
+        switch (window) {
+            case DAY:
+                next = now.toLocalDate().plusDays(1).atStartOfDay(ZoneOffset.UTC);
+                break;
+            case MONTH:
+                next = now.toLocalDate().withDayOfMonth(1).plusMonths(1).atStartOfDay(ZoneOffset.UTC);
+                break;
+            default:
+                return 0;
+        }
+        return Duration.between(now, next).getSeconds() + 1;
+    }
+
+    private static Map<String, Long> parseQuotas(String spec) {
+        Map<String, Long> quotas = new HashMap<>();
+        ToolScheduler.parseWeights(spec).forEach((tenant, tokens) -> quotas.put(tenant, tokens.longValue()));
+        return Map.copyOf(quotas);
+    }
+
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
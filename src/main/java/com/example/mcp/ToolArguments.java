@@ -0,0 +1,72 @@
+package com.example.mcp;
+
+/**
+ * Typed arguments for each tool, bound from the tool's compiled {@link ToolSchema}.
+ *
+ * The binders are created once from the {@link ToolCatalog}; binding a call reads
+ * the arguments directly into the record's primitive fields and reports invalid
+ * input as an {@link IllegalArgumentException}.
+ */
+public final class ToolArguments {
+
+    public record Add(double a, double b) {
+    }
+
+    public record Multiply(double x, double y) {
+    }
+
+    public record Greet(String name) {
+    }
+
+    public record AIChat(String prompt, int maxTokens, double temperature) {
+    }
+
+    /**
+     * Default max_tokens for ai_chat; o4-mini spends 200-400 tokens on reasoning alone.
+     * The default in effect is tools.aiChatMaxTokens of the {@link RuntimeConfig}.
+     */
+    public static final int DEFAULT_MAX_TOKENS = 500;
+
+    public static final ToolSchema.Binder<Add> ADD = addBinder();
+    public static final ToolSchema.Binder<Multiply> MULTIPLY = multiplyBinder();
+    public static final ToolSchema.Binder<Greet> GREET = greetBinder();
+
+    private ToolArguments() {
+    }
+
+    private static ToolSchema.Binder<Add> addBinder() {
+        ToolSchema schema = ToolsProvider.catalog().schema("add");
+        int a = schema.slot("a");
+        int b = schema.slot("b");
+        return schema.binder(values -> new Add(values.number(a), values.number(b)));
+    }
+
+    private static ToolSchema.Binder<Multiply> multiplyBinder() {
+        ToolSchema schema = ToolsProvider.catalog().schema("multiply");
+        int x = schema.slot("x");
+        int y = schema.slot("y");
+        return schema.binder(values -> new Multiply(values.number(x), values.number(y)));
+    }
+
+    private static ToolSchema.Binder<Greet> greetBinder() {
+        ToolSchema schema = ToolsProvider.catalog().schema("greet");
+        int name = schema.slot("name");
+        return schema.binder(values -> new Greet(values.string(name)));
+    }
+
+    /**
+     * Create an ai_chat binder. The MCP tool and the HTTP API use different default
+     * temperatures, so each creates its own binder at startup.
+     */
+    public static ToolSchema.Binder<AIChat> aiChatBinder(double defaultTemperature) {
+        ToolSchema schema = ToolsProvider.catalog().schema("ai_chat");
+        int prompt = schema.slot("prompt");
+        int maxTokens = schema.slot("max_tokens");
+        int temperature = schema.slot("temperature");
+        return schema.binder(values -> new AIChat(
+            values.string(prompt),
+            (int) values.number(maxTokens, RuntimeConfig.current().tools().aiChatMaxTokens()),
+            values.number(temperature, defaultTemperature)
+        ));
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Immutable, versioned catalog of the server's tools.
+ *
+ * Everything a listing needs is computed when the catalog is built: the MCP
+ * tools/list result and the HTTP GET /tools document are serialized to bytes
+ * once, each tool's input schema is compiled into a {@link ToolSchema}, and the
+ * ETag is a hash of both payloads. Serving a listing is then a single buffer write,
+ * and clients that send the ETag back in If-None-Match skip unchanged catalogs.
+ */
+public final class ToolCatalog {
+
+    /**
+     * One tool: its MCP specification plus how it is exposed over HTTP.
+     *
+     * @param httpParameters human readable parameter summary, or null for tools without parameters
+     * @param executionProfile execution profile of {@link McpTool} providers, null for built-in tools
+     * @param maxConcurrency concurrency cap, 0 when unlimited
+     */
+    public record Entry(McpServerFeatures.SyncToolSpecification specification, String httpEndpoint,
+                        String httpMethod, String httpDescription, String httpParameters,
+                        String executionProfile, int maxConcurrency) {
+        public Entry(McpServerFeatures.SyncToolSpecification specification, String httpEndpoint,
+                     String httpMethod, String httpDescription, String httpParameters) {
+            this(specification, httpEndpoint, httpMethod, httpDescription, httpParameters, null, 0);
+        }
+
+        public String name() {
+            return specification.tool().name();
+        }
+    }
+
+    private final int version;
+    private final List<Entry> entries;
+    private final List<McpServerFeatures.SyncToolSpecification> specifications;
+    private final Map<String, ToolSchema> schemas;
+    private final Map<String, McpServerFeatures.SyncToolSpecification> byName;
+    private final byte[] mcpListing;
+    private final byte[] httpListing;
+    private final String etag;
+
+    private ToolCatalog(int version, List<Entry> entries, McpJsonMapper mcpMapper) {
+        this.version = version;
+        this.entries = List.copyOf(entries);
+
+        List<McpServerFeatures.SyncToolSpecification> specifications = new ArrayList<>();
+        List<McpSchema.Tool> tools = new ArrayList<>();
+        Map<String, ToolSchema> schemas = new HashMap<>();
+        Map<String, McpServerFeatures.SyncToolSpecification> byName = new HashMap<>();
+        for (Entry entry : entries) {
+            specifications.add(entry.specification());
+            byName.put(entry.name(), entry.specification());
+            tools.add(entry.specification().tool());
+            schemas.put(entry.name(), ToolSchema.compile(entry.specification().tool()));
+        }
+        this.specifications = List.copyOf(specifications);
+        this.schemas = Map.copyOf(schemas);
+        this.byName = Map.copyOf(byName);
+
+        try {
+            this.mcpListing = mcpMapper.writeValueAsBytes(new McpSchema.ListToolsResult(tools, null));
+            this.httpListing = new ObjectMapper().writeValueAsBytes(buildHttpListing());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize tool catalog", e);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(mcpListing);
+        crc.update(httpListing);
+        this.etag = "\"tools-" + version + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    /**
+     * Build a catalog from the given entries.
+     */
+    public static ToolCatalog of(int version, List<Entry> entries, McpJsonMapper mcpMapper) {
+        return new ToolCatalog(version, entries, mcpMapper);
+    }
+
+    private ObjectNode buildHttpListing() {
+        ObjectNode listing = new ObjectMapper().createObjectNode();
+        listing.put("server", "mcp-server-java");
+        listing.put("version", "1.0.0");
+        listing.put("catalog_version", version);
+        listing.put("batch_endpoint", "/tools/batch");
+        listing.put("dag_endpoint", "/tools/dag");
+
+        ArrayNode tools = listing.putArray("tools");
+        for (Entry entry : entries) {
+            ObjectNode tool = tools.addObject()
+                .put("name", entry.name())
+                .put("description", entry.httpDescription())
+                .put("endpoint", entry.httpEndpoint())
+                .put("method", entry.httpMethod());
+            if (entry.httpParameters() != null) {
+                tool.put("parameters", entry.httpParameters());
+            }
+            if (entry.executionProfile() != null) {
+                tool.put("profile", entry.executionProfile());
+            }
+            if (entry.maxConcurrency() > 0) {
+                tool.put("max_concurrency", entry.maxConcurrency());
+            }
+        }
+        return listing;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * The MCP tool specifications, for registering with an MCP server.
+     */
+    public List<McpServerFeatures.SyncToolSpecification> specifications() {
+        return specifications;
+    }
+
+    /**
+     * The MCP specification of a tool, or null for unknown tools.
+     */
+    public McpServerFeatures.SyncToolSpecification specification(String toolName) {
+        return byName.get(toolName);
+    }
+
+    /**
+     * The compiled input schema of a tool, or null for unknown tools.
+     */
+    public ToolSchema schema(String toolName) {
+        return schemas.get(toolName);
+    }
+
+    /**
+     * Serialized MCP tools/list result. Callers must not modify the array.
+     */
+    public byte[] mcpListing() {
+        return mcpListing;
+    }
+
+    /**
+     * Serialized HTTP GET /tools document. Callers must not modify the array.
+     */
+    public byte[] httpListing() {
+        return httpListing;
+    }
+
+    /**
+     * Quoted entity tag identifying this catalog's content.
+     */
+    public String etag() {
+        return etag;
+    }
+}
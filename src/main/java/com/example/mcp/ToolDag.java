@@ -0,0 +1,251 @@
+package com.example.mcp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * A small DAG of tool calls executed as one request.
+ *
+ * Nodes are given in order as {"id": "t", "tool": "get_current_time", "arguments": {...}}.
+ * Argument values may refer to the output of earlier nodes, either as a whole value,
+ * {"$ref": "t.time"}, or inside a string, "It is ${t.time}". A reference is a node id
+ * followed by an optional dot separated path into that node's output body. References
+ * define the edges: a node starts as soon as the nodes it refers to have finished, so
+ * independent nodes run concurrently and total latency follows the critical path.
+ *
+ * Each node's result is reported as soon as it completes. Nodes whose dependencies
+ * failed are not executed and are reported with status 424.
+ */
+public final class ToolDag {
+    private static final Pattern INTERPOLATION = Pattern.compile("\\$\\{([^}]+)}");
+    private static final JsonNodeFactory JSON = JsonNodeFactory.instance;
+
+    /**
+     * One tool call in the DAG.
+     */
+    public record Node(String id, String tool, JsonNode arguments, Set<String> dependencies) {
+    }
+
+    /**
+     * Outcome of one node: an HTTP style status and the tool's JSON output.
+     */
+    public record NodeResult(int status, JsonNode body) {
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    /**
+     * Executes a single node with its references resolved.
+     */
+    public interface NodeExecutor {
+        CompletableFuture<NodeResult> execute(Node node, JsonNode arguments);
+    }
+
+    private final List<Node> nodes;
+
+    private ToolDag(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Parse and validate a node list.
+     *
+     * @throws IllegalArgumentException if the list is malformed, too long, has duplicate ids,
+     *         or refers to a node that is not defined earlier
+     */
+    public static ToolDag parse(JsonNode nodeList, int maxNodes) {
+        if (nodeList == null || !nodeList.isArray() || nodeList.isEmpty()) {
+            throw new IllegalArgumentException("Missing required parameter: nodes");
+        }
+        if (nodeList.size() > maxNodes) {
+            throw new IllegalArgumentException("Too many nodes: " + nodeList.size() + " (max " + maxNodes + ")");
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        Set<String> defined = new LinkedHashSet<>();
+        for (JsonNode entry : nodeList) {
+            String id = entry.path("id").asText();
+            String tool = entry.path("tool").asText();
+            if (id.isEmpty() || tool.isEmpty()) {
+                throw new IllegalArgumentException("Every node needs an id and a tool");
+            }
+            if (!defined.add(id)) {
+                throw new IllegalArgumentException("Duplicate node id: " + id);
+            }
+            JsonNode arguments = entry.has("arguments") ? entry.get("arguments") : JSON.objectNode();
+
+            Set<String> dependencies = new LinkedHashSet<>();
+            collectReferences(arguments, dependencies);
+            for (String dependency : dependencies) {
+                if (dependency.equals(id) || !defined.contains(dependency)) {
+                    throw new IllegalArgumentException(
+                        "Node '" + id + "' refers to '" + dependency + "', which is not an earlier node");
+                }
+            }
+            nodes.add(new Node(id, tool, arguments, Set.copyOf(dependencies)));
+        }
+        return new ToolDag(List.copyOf(nodes));
+    }
+
+    public List<Node> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Execute all nodes. The listener is called once per node, from whichever thread
+     * completed it, with {"id", "tool", "status", "body", "elapsed_ms"}. The returned
+     * future completes with the number of failed nodes once every node has finished.
+     */
+    public CompletableFuture<Integer> execute(NodeExecutor executor, Consumer<ObjectNode> listener) {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<NodeResult>> results = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> reported = new ArrayList<>();
+        AtomicInteger failed = new AtomicInteger();
+
+        for (Node node : nodes) {
+            CompletableFuture<?>[] dependencies = node.dependencies().stream()
+                .map(results::get)
+                .toArray(CompletableFuture<?>[]::new);
+
+            CompletableFuture<NodeResult> result = CompletableFuture.allOf(dependencies)
+                .thenCompose(ignored -> run(node, executor, results))
+                .exceptionally(error -> new NodeResult(500, errorBody(500, "Tool error: " + unwrap(error).getMessage())));
+            results.put(node.id(), result);
+
+            reported.add(result.thenAccept(outcome -> {
+                if (!outcome.isSuccess()) {
+                    failed.incrementAndGet();
+                }
+                ObjectNode line = JSON.objectNode();
+                line.put("id", node.id());
+                line.put("tool", node.tool());
+                line.put("status", outcome.status());
+                line.set("body", outcome.body());
+                line.put("elapsed_ms", (System.nanoTime() - start) / 1_000_000);
+                listener.accept(line);
+            }));
+        }
+
+        return CompletableFuture.allOf(reported.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> failed.get());
+    }
+
+    private static CompletableFuture<NodeResult> run(Node node, NodeExecutor executor,
+                                                     Map<String, CompletableFuture<NodeResult>> results) {
+        Map<String, JsonNode> outputs = new HashMap<>();
+        for (String dependency : node.dependencies()) {
+            NodeResult outcome = results.get(dependency).join();
+            if (!outcome.isSuccess()) {
+                return CompletableFuture.completedFuture(
+                    new NodeResult(424, errorBody(424, "Dependency '" + dependency + "' failed")));
+            }
+            outputs.put(dependency, outcome.body());
+        }
+
+        JsonNode arguments;
+        try {
+            arguments = resolve(node.arguments(), outputs);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new NodeResult(400, errorBody(400, e.getMessage())));
+        }
+        return executor.execute(node, arguments);
+    }
+
+    private static void collectReferences(JsonNode value, Set<String> references) {
+        if (value.isObject()) {
+            JsonNode reference = value.get("$ref");
+            if (reference != null && reference.isTextual() && value.size() == 1) {
+                references.add(nodeIdOf(reference.asText()));
+                return;
+            }
+            value.forEach(child -> collectReferences(child, references));
+        } else if (value.isArray()) {
+            value.forEach(child -> collectReferences(child, references));
+        } else if (value.isTextual()) {
+            Matcher matcher = INTERPOLATION.matcher(value.asText());
+            while (matcher.find()) {
+                references.add(nodeIdOf(matcher.group(1)));
+            }
+        }
+    }
+
+    private static JsonNode resolve(JsonNode value, Map<String, JsonNode> outputs) {
+        if (value.isObject()) {
+            JsonNode reference = value.get("$ref");
+            if (reference != null && reference.isTextual() && value.size() == 1) {
+                return lookup(reference.asText(), outputs);
+            }
+            ObjectNode resolved = JSON.objectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                resolved.set(field.getKey(), resolve(field.getValue(), outputs));
+            }
+            return resolved;
+        } else if (value.isArray()) {
+            var resolved = JSON.arrayNode();
+            value.forEach(child -> resolved.add(resolve(child, outputs)));
+            return resolved;
+        } else if (value.isTextual() && value.asText().contains("${")) {
+            Matcher matcher = INTERPOLATION.matcher(value.asText());
+            StringBuilder text = new StringBuilder();
+            while (matcher.find()) {
+                JsonNode referenced = lookup(matcher.group(1), outputs);
+                matcher.appendReplacement(text,
+                    Matcher.quoteReplacement(referenced.isValueNode() ? referenced.asText() : referenced.toString()));
+            }
+            matcher.appendTail(text);
+            return TextNode.valueOf(text.toString());
+        }
+        return value;
+    }
+
+    private static JsonNode lookup(String reference, Map<String, JsonNode> outputs) {
+        String[] path = reference.trim().split("\\.");
+        JsonNode current = outputs.get(path[0]);
+        for (int i = 1; i < path.length && current != null; i++) {
+            current = current.isArray() && path[i].chars().allMatch(Character::isDigit)
+                ? current.get(Integer.parseInt(path[i]))
+                : current.get(path[i]);
+        }
+        if (current == null || current.isMissingNode()) {
+            throw new IllegalArgumentException("Reference '" + reference + "' did not resolve");
+        }
+        return current;
+    }
+
+    private static String nodeIdOf(String reference) {
+        String trimmed = reference.trim();
+        int dot = trimmed.indexOf('.');
+        return dot < 0 ? trimmed : trimmed.substring(0, dot);
+    }
+
+    private static ObjectNode errorBody(int status, String message) {
+        ObjectNode error = JSON.objectNode();
+        error.put("error", message);
+        error.put("status", status);
+        return error;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.mcp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Executes {@link McpTool} calls according to their execution profile.
+ *
+ * INLINE tools run on the calling thread, CPU tools on a {@link ForkJoinPool} sized
+ * to the available cores, and IO tools on a thread per call: virtual threads when the
+ * runtime provides them (Java 21+), otherwise a cached pool of platform threads.
+ *
+ * Tools with a concurrency cap get a gate: at most that many calls execute at once
+ * and the rest wait in a FIFO queue without holding a thread. A full queue sheds the
+ * call with a {@link ToolScheduler.LoadShedException}.
+ *
+ * Configuration (environment variables):
+ *   MCP_CPU_TOOL_THREADS   - parallelism of the CPU pool (default: available cores)
+ *   MCP_TOOL_CONCURRENCY   - per-tool caps overriding the tools' own, e.g. "hash_text=2,report=8"
+ *   MCP_TOOL_QUEUE_LIMIT   - calls allowed to wait for a capped tool (default 1024)
+ */
+public class ToolExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ToolExecutor.class);
+
+    private static final Map<String, Integer> CONCURRENCY_OVERRIDES = parseLimits(System.getenv("MCP_TOOL_CONCURRENCY"));
+
+    private static final class InstanceHolder {
+        static final ToolExecutor INSTANCE = new ToolExecutor(
+            ToolScheduler.intEnv("MCP_CPU_TOOL_THREADS", Runtime.getRuntime().availableProcessors()),
+            ToolScheduler.intEnv("MCP_TOOL_QUEUE_LIMIT", 1024));
+    }
+
+    /**
+     * Admits at most {@code limit} concurrent calls; later calls queue until a slot frees up.
+     */
+    private static final class Gate {
+        final Semaphore permits;
+        final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+
+        Gate(int limit) {
+            this.permits = new Semaphore(limit);
+        }
+
+        void release() {
+            permits.release();
+            drain();
+        }
+
+        void drain() {
+            while (!waiting.isEmpty() && permits.tryAcquire()) {
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    permits.release();
+                } else {
+                    queued.decrementAndGet();
+                    next.run();
+                }
+            }
+        }
+    }
+
+    private final ForkJoinPool cpuPool;
+    private final ExecutorService ioPool;
+    private final int queueLimit;
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+
+    public ToolExecutor(int cpuThreads, int queueLimit) {
+        this.cpuPool = new ForkJoinPool(Math.max(1, cpuThreads));
+        this.ioPool = newIoExecutor("io-tool-");
+        this.queueLimit = queueLimit;
+        logger.info("Tool executor started: {} CPU threads, IO executor {}", cpuPool.getParallelism(),
+            ioPool.getClass().getSimpleName());
+    }
+
+    /**
+     * The shared executor, configured from environment variables.
+     */
+    public static ToolExecutor getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * The effective concurrency cap of a tool: the MCP_TOOL_CONCURRENCY override if set,
+     * otherwise the tool's declared cap. 0 means unlimited.
+     */
+    public static int concurrencyLimit(String toolName, int declared) {
+        return CONCURRENCY_OVERRIDES.getOrDefault(toolName, Math.max(0, declared));
+    }
+
+    /**
+     * Execute a registered tool with already validated arguments.
+     */
+    public CompletableFuture<McpSchema.CallToolResult> execute(ToolRegistry.Registration registration,
+                                                               ToolSchema.Arguments arguments) {
+        return submit(registration.name(), registration.tool().executionProfile(),
+            registration.maxConcurrency(), () -> registration.tool().call(arguments));
+    }
+
+    /**
+     * Run a task on the executor matching the profile, subject to the tool's concurrency cap.
+     *
+     * @throws ToolScheduler.LoadShedException if the tool's wait queue is full
+     */
+    public <T> CompletableFuture<T> submit(String toolName, McpTool.ExecutionProfile profile, int maxConcurrency,
+                                           Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Gate gate = maxConcurrency > 0
+            ? gates.computeIfAbsent(toolName, name -> new Gate(maxConcurrency))
+            : null;
+
+        Runnable task = () -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                if (gate != null) {
+                    gate.release();
+                }
+            }
+        };
+        Runnable start = () -> {
+            try {
+                dispatch(profile, task);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new ToolScheduler.LoadShedException("Tool executor is shut down", false));
+                if (gate != null) {
+                    gate.release();
+                }
+            }
+        };
+
+        if (gate == null) {
+            start.run();
+        } else {
+            if (gate.queued.incrementAndGet() > queueLimit) {
+                gate.queued.decrementAndGet();
+                throw new ToolScheduler.LoadShedException("Too many queued calls for tool " + toolName, false);
+            }
+            gate.waiting.add(start);
+            gate.drain();
+        }
+        return future;
+    }
+
+    private void dispatch(McpTool.ExecutionProfile profile, Runnable task) {
+        switch (profile) {
+            case CPU:
+                cpuPool.execute(task);
+                break;
+            case IO:
+                ioPool.execute(task);
+                break;
+            default:
+                task.run();
+                break;
+        }
+    }
+
+    public void shutdown() {
+        cpuPool.shutdown();
+        ioPool.shutdown();
+    }
+
+    /**
+     * Virtual-thread-per-task executor when running on Java 21+, cached platform threads otherwise.
+     */
+    static ExecutorService newIoExecutor(String threadPrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(HttpJsonServer.namedThreads(threadPrefix));
+        }
+    }
+
+    private static Map<String, Integer> parseLimits(String spec) {
+        Map<String, Integer> limits = new HashMap<>();
+        ToolScheduler.parseWeights(spec).forEach((tool, limit) -> limits.put(tool, limit.intValue()));
+        return Map.copyOf(limits);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.mcp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Tools discovered through the {@link McpTool} service provider interface.
+ *
+ * Each provider's schema is parsed and compiled once at load time. Providers that
+ * fail to load, declare an invalid schema, or reuse the name of another tool are
+ * skipped with a warning so one bad jar cannot keep the server from starting.
+ */
+public final class ToolRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ToolRegistry.class);
+
+    /**
+     * A loaded tool with its MCP definition, compiled schema and effective concurrency cap.
+     */
+    public record Registration(McpTool tool, McpSchema.Tool definition, ToolSchema schema, int maxConcurrency) {
+        public String name() {
+            return definition.name();
+        }
+
+        public String endpoint() {
+            return "/tools/" + name();
+        }
+    }
+
+    private final Map<String, Registration> tools;
+
+    private ToolRegistry(Map<String, Registration> tools) {
+        this.tools = tools;
+    }
+
+    /**
+     * Load all providers visible to this class's class loader.
+     *
+     * @param reservedNames tool names and HTTP endpoint names already taken by built-in tools
+     */
+    public static ToolRegistry load(Collection<String> reservedNames, McpJsonMapper mapper) {
+        Map<String, Registration> tools = new LinkedHashMap<>();
+        ServiceLoader<McpTool> loader = ServiceLoader.load(McpTool.class, ToolRegistry.class.getClassLoader());
+        for (ServiceLoader.Provider<McpTool> provider : loader.stream().toList()) {
+            try {
+                McpTool tool = provider.get();
+                String name = tool.name();
+                if (name == null || name.isBlank() || reservedNames.contains(name) || tools.containsKey(name)) {
+                    logger.warn("Skipping tool provider {}: tool name '{}' is missing or already taken",
+                        provider.type().getName(), name);
+                    continue;
+                }
+                McpSchema.Tool definition = McpSchema.Tool.builder()
+                    .name(name)
+                    .description(tool.description())
+                    .inputSchema(mapper, tool.inputSchema())
+                    .build();
+                ToolSchema schema = ToolSchema.compile(definition);
+                tool.bind(schema);
+                int maxConcurrency = ToolExecutor.concurrencyLimit(name, tool.maxConcurrency());
+                tools.put(name, new Registration(tool, definition, schema, maxConcurrency));
+                logger.info("Loaded tool '{}' from {} ({}, max concurrency {})", name,
+                    provider.type().getName(), tool.executionProfile(),
+                    maxConcurrency > 0 ? maxConcurrency : "unlimited");
+            } catch (ServiceConfigurationError | RuntimeException e) {
+                logger.warn("Skipping tool provider: {}", e.getMessage());
+            }
+        }
+        return new ToolRegistry(tools);
+    }
+
+    public Collection<Registration> tools() {
+        return tools.values();
+    }
+
+    /**
+     * The registration of a tool, or null if no provider supplies it.
+     */
+    public Registration get(String name) {
+        return tools.get(name);
+    }
+
+    /**
+     * Catalog entries for all loaded tools.
+     */
+    public List<ToolCatalog.Entry> catalogEntries() {
+        List<ToolCatalog.Entry> entries = new ArrayList<>();
+        for (Registration registration : tools.values()) {
+            entries.add(new ToolCatalog.Entry(specification(registration), registration.endpoint(), "POST",
+                registration.definition().description(), registration.schema().summary(),
+                registration.tool().executionProfile().name(), registration.maxConcurrency()));
+        }
+        return entries;
+    }
+
+    /**
+     * MCP specification for a loaded tool. Calls are routed through the shared {@link ToolExecutor}.
+     */
+    private static McpServerFeatures.SyncToolSpecification specification(Registration registration) {
+        return new McpServerFeatures.SyncToolSpecification(registration.definition(), null, (exchange, request) -> {
+            logger.info("Tool '{}' called", registration.name());
+            JfrEvents.ToolInvocationEvent event = JfrEvents.beginTool(registration.name(), "mcp", -1,
+                request.arguments() != null ? request.arguments().size() : 0);
+            int status = 500;
+            try {
+                ToolSchema.Arguments arguments = registration.schema().read(request.arguments());
+                McpSchema.CallToolResult result = ToolExecutor.getInstance().execute(registration, arguments).join();
+                status = Boolean.TRUE.equals(result.isError()) ? 500 : 200;
+                return result;
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof IllegalArgumentException) {
+                    status = 400;
+                } else if (cause instanceof ToolScheduler.LoadShedException) {
+                    status = 503;
+                } else {
+                    logger.error("Error in {} tool", registration.name(), cause);
+                }
+                return new McpSchema.CallToolResult(
+                    List.of(new McpSchema.TextContent("Error: " + cause.getMessage())),
+                    true
+                );
+            } finally {
+                JfrEvents.endTool(event, status);
+            }
+        });
+    }
+}
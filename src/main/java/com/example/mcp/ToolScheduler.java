@@ -0,0 +1,338 @@
+package com.example.mcp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler in front of tool execution for the HTTP JSON API.
+ *
+ * Tools are split by cost class. Cheap tools (add, multiply, time, greet) never enter
+ * the scheduler; they run inline on the HTTP worker thread that parsed the request.
+ * The AI lane (ai_chat) runs on a dedicated worker pool fed by a weighted fair queue
+ * keyed by tenant, so one tenant flooding ai_chat only consumes its own share of the
+ * AI workers and never holds up the cheap tools.
+ *
+ * The AI queue is bounded per tenant and globally. Work that does not fit is shed
+ * immediately with a {@link LoadShedException} instead of queueing without limit.
+ *
+ * Each task runs in an "execute" {@link Tracing} span under the submitting request's
+ * span, after a "queue" span recording the time it spent waiting.
+ *
+ * Worker count, queue limits and weights can be changed while running with
+ * {@link #reconfigure}; queued tasks are kept.
+ *
+ * Configuration (environment variables, or the scheduler section of {@link ServerConfig}):
+ *   MCP_AI_WORKERS           - AI lane worker threads (default 4)
+ *   MCP_AI_QUEUE_PER_TENANT  - max queued AI tasks per tenant (default 32)
+ *   MCP_AI_QUEUE_TOTAL       - max queued AI tasks overall (default 256)
+ *   MCP_TENANT_WEIGHTS       - comma separated tenant=weight pairs, e.g. "gold=4,silver=2"
+ */
+public class ToolScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ToolScheduler.class);
+
+    /**
+     * Thrown when a task is rejected because its queue is full.
+     */
+    public static class LoadShedException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean tenantLimit;
+
+        LoadShedException(String message, boolean tenantLimit) {
+            super(message);
+            this.tenantLimit = tenantLimit;
+        }
+
+        /**
+         * True when the tenant exceeded its own queue share, false when the whole lane is full.
+         */
+        public boolean isTenantLimit() {
+            return tenantLimit;
+        }
+    }
+
+    private static final class TenantState {
+        final double weight;
+        double lastFinishTag;
+        int queued;
+
+        TenantState(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class Task<T> {
+        final String tenant;
+        final double startTag;
+        final double finishTag;
+        final long sequence;
+        final Callable<T> callable;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Tracing.Span parent = Tracing.current();
+        final long submittedAt = System.nanoTime();
+
+        Task(String tenant, double startTag, double finishTag, long sequence, Callable<T> callable) {
+            this.tenant = tenant;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.callable = callable;
+        }
+
+        @SuppressWarnings("try") // the scope is only closed, never read
+        void run() {
+            Tracing.record(parent, "queue", submittedAt, System.nanoTime());
+            Tracing.Span span = Tracing.startSpan("execute", Tracing.Kind.INTERNAL, parent)
+                .attribute("mcp.tenant", tenant);
+            try (Tracing.Scope scope = span.makeCurrent()) {
+                future.complete(callable.call());
+            } catch (Throwable t) {
+                span.error(t.getMessage());
+                future.completeExceptionally(t);
+            } finally {
+                span.end();
+            }
+        }
+    }
+
+    // Guarded by lock
+    private int maxQueuedPerTenant;
+    private int maxQueuedTotal;
+    private Map<String, Double> tenantWeights;
+    private int targetWorkers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>((left, right) -> {
+        int cmp = Double.compare(left.finishTag, right.finishTag);
+        return cmp != 0 ? cmp : Long.compare(left.sequence, right.sequence);
+    });
+    private final Map<String, TenantState> tenants = new HashMap<>();
+    /** Worker thread per index; null where a worker has retired. Guarded by lock. */
+    private final List<Thread> workers = new ArrayList<>();
+    private double virtualTime;
+    private long sequence;
+    private volatile boolean running = true;
+
+    public ToolScheduler(int aiWorkers, int maxQueuedPerTenant, int maxQueuedTotal,
+                         Map<String, Double> tenantWeights) {
+        lock.lock();
+        try {
+            configure(aiWorkers, maxQueuedPerTenant, maxQueuedTotal, tenantWeights);
+        } finally {
+            lock.unlock();
+        }
+        logger.info("Tool scheduler started: {} AI workers, queue {} per tenant / {} total, weights {}",
+            aiWorkers, maxQueuedPerTenant, maxQueuedTotal, this.tenantWeights);
+    }
+
+    /**
+     * Create a scheduler from the current {@link RuntimeConfig}, which defaults to the
+     * environment variables.
+     */
+    public static ToolScheduler fromEnvironment() {
+        ServerConfig.Scheduler config = RuntimeConfig.current().scheduler();
+        return new ToolScheduler(config.aiWorkers(), config.queuePerTenant(), config.queueTotal(),
+            config.tenantWeights());
+    }
+
+    /**
+     * Change the worker count, queue limits and tenant weights. Extra workers are started
+     * at once; surplus workers finish their current task and exit. Lowered limits apply
+     * to new submissions only, and new weights to tenants that are not currently queued.
+     */
+    public void reconfigure(int aiWorkers, int maxQueuedPerTenant, int maxQueuedTotal,
+                            Map<String, Double> tenantWeights) {
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            configure(aiWorkers, maxQueuedPerTenant, maxQueuedTotal, tenantWeights);
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        logger.info("Tool scheduler reconfigured: {} AI workers, queue {} per tenant / {} total, weights {}",
+            aiWorkers, maxQueuedPerTenant, maxQueuedTotal, this.tenantWeights);
+    }
+
+    private void configure(int aiWorkers, int maxQueuedPerTenant, int maxQueuedTotal,
+                           Map<String, Double> tenantWeights) {
+        if (aiWorkers < 1 || maxQueuedPerTenant < 1 || maxQueuedTotal < 1) {
+            throw new IllegalArgumentException("Scheduler sizes must be positive");
+        }
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.maxQueuedTotal = maxQueuedTotal;
+        this.tenantWeights = Map.copyOf(tenantWeights);
+        this.targetWorkers = aiWorkers;
+        for (int i = 0; i < aiWorkers; i++) {
+            if (i < workers.size() && workers.get(i) != null) {
+                continue;
+            }
+            int index = i;
+            Thread worker = new Thread(() -> workerLoop(index), "ai-lane-worker-" + i);
+            worker.setDaemon(true);
+            if (i < workers.size()) {
+                workers.set(i, worker);
+            } else {
+                workers.add(worker);
+            }
+            worker.start();
+        }
+    }
+
+    /**
+     * Queue a task on the AI lane for the given tenant.
+     *
+     * @throws LoadShedException if the AI lane cannot accept the task
+     */
+    public <T> CompletableFuture<T> submit(String tenant, Callable<T> callable) {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new LoadShedException("Scheduler is shut down", false);
+            }
+            if (queue.size() >= maxQueuedTotal) {
+                throw new LoadShedException("AI lane is saturated, try again later", false);
+            }
+            TenantState state = tenants.computeIfAbsent(tenant,
+                key -> new TenantState(tenantWeights.getOrDefault(key, 1.0)));
+            if (state.queued >= maxQueuedPerTenant) {
+                throw new LoadShedException("Too many queued AI requests for tenant", true);
+            }
+
+            double startTag = Math.max(virtualTime, state.lastFinishTag);
+            double finishTag = startTag + 1.0 / state.weight;
+            state.lastFinishTag = finishTag;
+            state.queued++;
+
+            Task<T> task = new Task<>(tenant, startTag, finishTag, sequence++, callable);
+            queue.add(task);
+            notEmpty.signal();
+            return task.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of tasks currently waiting in the AI lane.
+     */
+    public int queuedTasks() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the AI workers. Queued tasks are failed with a {@link LoadShedException}.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            Task<?> task;
+            while ((task = queue.poll()) != null) {
+                task.future.completeExceptionally(new LoadShedException("Scheduler is shut down", false));
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        List<Thread> threads;
+        lock.lock();
+        try {
+            threads = new ArrayList<>(workers);
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : threads) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void workerLoop(int index) {
+        while (running) {
+            Task<?> task;
+            lock.lock();
+            try {
+                while (running && index < targetWorkers && queue.isEmpty()) {
+                    notEmpty.await();
+                }
+                if (!running) {
+                    return;
+                }
+                if (index >= targetWorkers) {
+                    workers.set(index, null);
+                    return;
+                }
+                task = queue.poll();
+                virtualTime = task.startTag;
+                TenantState state = tenants.get(task.tenant);
+                state.queued--;
+                if (state.queued == 0) {
+                    tenants.remove(task.tenant);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            task.run();
+        }
+    }
+
+    static Map<String, Double> parseWeights(String spec) {
+        Map<String, Double> weights = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return weights;
+        }
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                logger.warn("Ignoring malformed tenant weight '{}'", pair);
+                continue;
+            }
+            try {
+                double weight = Double.parseDouble(parts[1].trim());
+                if (weight > 0) {
+                    weights.put(parts[0].trim(), weight);
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring malformed tenant weight '{}'", pair);
+            }
+        }
+        return weights;
+    }
+
+    static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {}: '{}', using {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
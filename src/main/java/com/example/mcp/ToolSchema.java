@@ -0,0 +1,328 @@
+package com.example.mcp;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * A tool's input schema compiled into a flat argument validator and binder.
+ *
+ * The schema's properties and required list are turned into parallel arrays once.
+ * Each parameter gets a slot; reading arguments fills primitive slots (numbers are
+ * kept as doubles, never boxed) and checks types and required parameters as it goes.
+ * A {@link Binder} then turns the slots into a tool-specific record, so tool code
+ * works with typed fields instead of casting map values.
+ *
+ * Only the subset of JSON Schema the tools use is understood: top-level properties
+ * with a primitive "type", and "required". Validation failures are reported as
+ * {@link IllegalArgumentException}s with uniform messages:
+ * "Missing required parameter: x" and "Parameter 'x' must be a number".
+ */
+public final class ToolSchema {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * JSON types a parameter may declare.
+     */
+    enum ParameterType {
+        NUMBER, INTEGER, STRING, BOOLEAN, ANY;
+
+        static ParameterType of(Object type) {
+            if ("number".equals(type)) {
+                return NUMBER;
+            } else if ("integer".equals(type)) {
+                return INTEGER;
+            } else if ("string".equals(type)) {
+                return STRING;
+            } else if ("boolean".equals(type)) {
+                return BOOLEAN;
+            }
+            return ANY;
+        }
+
+        String jsonName() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Argument values of one call, indexed by slot. Only the accessor matching the
+     * parameter's declared type returns a meaningful value.
+     */
+    public static final class Arguments {
+        private final boolean[] present;
+        private final double[] numbers;
+        private final String[] strings;
+
+        private Arguments(int slots) {
+            this.present = new boolean[slots];
+            this.numbers = new double[slots];
+            this.strings = new String[slots];
+        }
+
+        public boolean has(int slot) {
+            return present[slot];
+        }
+
+        public double number(int slot) {
+            return numbers[slot];
+        }
+
+        public double number(int slot, double defaultValue) {
+            return present[slot] ? numbers[slot] : defaultValue;
+        }
+
+        /** Booleans are stored as 1 (true) or 0 (false). */
+        public boolean bool(int slot) {
+            return numbers[slot] != 0;
+        }
+
+        public String string(int slot) {
+            return strings[slot];
+        }
+    }
+
+    /**
+     * Reads arguments straight into a tool-specific value.
+     */
+    public static final class Binder<T> {
+        private final ToolSchema schema;
+        private final Function<Arguments, T> factory;
+
+        private Binder(ToolSchema schema, Function<Arguments, T> factory) {
+            this.schema = schema;
+            this.factory = factory;
+        }
+
+        public T bind(Map<String, Object> arguments) {
+            return factory.apply(schema.read(arguments));
+        }
+
+        public T bind(JsonParser parser) throws IOException {
+            return factory.apply(schema.read(parser));
+        }
+
+        /**
+         * Bind from a JSON object in UTF-8. An empty body binds as an empty object.
+         */
+        public T bind(byte[] json) throws IOException {
+            return factory.apply(schema.read(json));
+        }
+    }
+
+    private final String toolName;
+    private final String[] names;
+    private final ParameterType[] types;
+    private final boolean[] required;
+    private final Map<String, Integer> slots;
+
+    private ToolSchema(String toolName, String[] names, ParameterType[] types, boolean[] required) {
+        this.toolName = toolName;
+        this.names = names;
+        this.types = types;
+        this.required = required;
+        this.slots = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            slots.put(names[i], i);
+        }
+    }
+
+    /**
+     * Compile the input schema of the given tool.
+     */
+    public static ToolSchema compile(McpSchema.Tool tool) {
+        McpSchema.JsonSchema schema = tool.inputSchema();
+        Map<String, Object> properties = schema != null && schema.properties() != null
+            ? schema.properties() : Map.of();
+        String[] names = new String[properties.size()];
+        ParameterType[] types = new ParameterType[names.length];
+        boolean[] required = new boolean[names.length];
+        int i = 0;
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            names[i] = property.getKey();
+            types[i] = ParameterType.of(property.getValue() instanceof Map
+                ? ((Map<?, ?>) property.getValue()).get("type") : null);
+            required[i] = schema.required() != null && schema.required().contains(names[i]);
+            i++;
+        }
+        return new ToolSchema(tool.name(), names, types, required);
+    }
+
+    public String toolName() {
+        return toolName;
+    }
+
+    /**
+     * The slot of a declared parameter. Resolve slots once, when creating a binder.
+     *
+     * @throws IllegalArgumentException if the schema does not declare the parameter
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Tool " + toolName + " has no parameter " + name);
+        }
+        return slot;
+    }
+
+    /**
+     * Create a binder that builds a value from validated arguments.
+     */
+    public <T> Binder<T> binder(Function<Arguments, T> factory) {
+        return new Binder<>(this, factory);
+    }
+
+    /**
+     * Human readable parameter summary in the style of the HTTP tool listing,
+     * e.g. {"a": number, "b": number (optional)}, or null without parameters.
+     */
+    public String summary() {
+        if (names.length == 0) {
+            return null;
+        }
+        StringBuilder summary = new StringBuilder("{");
+        for (int i = 0; i < names.length; i++) {
+            summary.append(i == 0 ? "\"" : ", \"").append(names[i]).append("\": ");
+            summary.append(types[i] == ParameterType.ANY ? "any" : types[i].jsonName());
+            if (!required[i]) {
+                summary.append(" (optional)");
+            }
+        }
+        return summary.append('}').toString();
+    }
+
+    /**
+     * Validate and read arguments from a JSON object in UTF-8. An empty body reads as an empty object.
+     *
+     * @throws IllegalArgumentException naming the first missing or mistyped parameter
+     */
+    public Arguments read(byte[] json) throws IOException {
+        if (json.length == 0) {
+            return read(Map.of());
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Validate and read arguments that were already parsed into a map.
+     *
+     * @throws IllegalArgumentException naming the first missing or mistyped parameter
+     */
+    public Arguments read(Map<String, Object> arguments) {
+        Arguments values = new Arguments(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Object value = arguments != null ? arguments.get(names[i]) : null;
+            if (value == null) {
+                continue;
+            }
+            switch (types[i]) {
+                case NUMBER:
+                case INTEGER:
+                    if (!(value instanceof Number)) {
+                        throw typeError(i);
+                    }
+                    setNumber(values, i, ((Number) value).doubleValue());
+                    break;
+                case STRING:
+                    if (!(value instanceof String)) {
+                        throw typeError(i);
+                    }
+                    values.strings[i] = (String) value;
+                    break;
+                case BOOLEAN:
+                    if (!(value instanceof Boolean)) {
+                        throw typeError(i);
+                    }
+                    values.numbers[i] = (Boolean) value ? 1 : 0;
+                    break;
+                default:
+                    values.strings[i] = value.toString();
+                    break;
+            }
+            values.present[i] = true;
+        }
+        checkRequired(values);
+        return values;
+    }
+
+    /**
+     * Validate and read arguments from a parser positioned at (or just before) a JSON object.
+     * Unknown fields are skipped.
+     *
+     * @throws IllegalArgumentException naming the first missing or mistyped parameter
+     */
+    public Arguments read(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Arguments must be a JSON object");
+        }
+
+        Arguments values = new Arguments(names.length);
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            Integer slot = slots.get(parser.currentName());
+            token = parser.nextToken();
+            if (slot == null || token == JsonToken.VALUE_NULL) {
+                parser.skipChildren();
+                continue;
+            }
+            int i = slot;
+            switch (types[i]) {
+                case NUMBER:
+                case INTEGER:
+                    if (!token.isNumeric()) {
+                        throw typeError(i);
+                    }
+                    setNumber(values, i, parser.getDoubleValue());
+                    break;
+                case STRING:
+                    if (token != JsonToken.VALUE_STRING) {
+                        throw typeError(i);
+                    }
+                    values.strings[i] = parser.getText();
+                    break;
+                case BOOLEAN:
+                    if (!token.isBoolean()) {
+                        throw typeError(i);
+                    }
+                    values.numbers[i] = token == JsonToken.VALUE_TRUE ? 1 : 0;
+                    break;
+                default:
+                    values.strings[i] = token.isScalarValue() ? parser.getText() : null;
+                    parser.skipChildren();
+                    break;
+            }
+            values.present[i] = true;
+        }
+        checkRequired(values);
+        return values;
+    }
+
+    private void setNumber(Arguments values, int slot, double number) {
+        if (types[slot] == ParameterType.INTEGER && number % 1 != 0) {
+            throw typeError(slot);
+        }
+        values.numbers[slot] = number;
+    }
+
+    private void checkRequired(Arguments values) {
+        for (int i = 0; i < names.length; i++) {
+            if (required[i] && !values.present[i]) {
+                throw new IllegalArgumentException("Missing required parameter: " + names[i]);
+            }
+        }
+    }
+
+    private IllegalArgumentException typeError(int slot) {
+        String article = types[slot] == ParameterType.INTEGER ? "an " : "a ";
+        return new IllegalArgumentException("Parameter '" + names[slot] + "' must be " + article + types[slot].jsonName());
+    }
+}
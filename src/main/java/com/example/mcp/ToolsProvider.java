@@ -2,25 +2,161 @@ package com.example.mcp;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import io.modelcontextprotocol.json.McpJsonMapper;
 import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
 import io.modelcontextprotocol.spec.McpSchema;
 
 /**
  * Provides tool implementations for the MCP server.
+ *
+ * Tool specifications are built once, with their schemas parsed a single time, and
+ * collected, together with tools loaded through the {@link McpTool} service provider
+ * interface, into an immutable {@link ToolCatalog} shared by the STDIO and HTTP servers.
+ * Calls bind their arguments through the tool's compiled {@link ToolSchema} into
+ * typed {@link ToolArguments} records.
  */
 public class ToolsProvider {
     private static final Logger logger = LoggerFactory.getLogger(ToolsProvider.class);
+    private static final McpJsonMapper MAPPER = McpJsonMapper.getDefault();
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> ARGUMENT_MAP = new TypeReference<>() {};
+    private static final int DAG_MAX_NODES = ToolScheduler.intEnv("MCP_DAG_MAX_NODES", 32);
+    /** Tenant that MCP tool calls are accounted to (MCP_TENANT, default "stdio"). */
+    private static final String STDIO_TENANT = System.getenv("MCP_TENANT") != null
+        && !System.getenv("MCP_TENANT").isBlank() ? System.getenv("MCP_TENANT") : "stdio";
+
+    private static final McpServerFeatures.SyncToolSpecification ADD = createAddTool();
+    private static final McpServerFeatures.SyncToolSpecification MULTIPLY = createMultiplyTool();
+    private static final McpServerFeatures.SyncToolSpecification CURRENT_TIME = createCurrentTimeTool();
+    private static final McpServerFeatures.SyncToolSpecification GREETING = createGreetingTool();
+    private static final McpServerFeatures.SyncToolSpecification AI_CHAT = createAIChatTool();
+    private static final McpServerFeatures.SyncToolSpecification RUN_DAG = createRunDagTool();
+
+    /** Created on first call; the binder needs the catalog, which needs the tool specifications. */
+    private static final class AIChatBinderHolder {
+        static final ToolSchema.Binder<ToolArguments.AIChat> BINDER = ToolArguments.aiChatBinder(1.0);
+    }
+
+    /** Names of built-in tools and HTTP endpoints under /tools that providers cannot take. */
+    private static final Set<String> RESERVED_NAMES = Set.of(
+        "add", "multiply", "get_current_time", "time", "greet", "ai_chat", "batch", "dag", "run_dag");
+
+    private static final class CatalogHolder {
+        static final ToolRegistry PLUGINS = ToolRegistry.load(RESERVED_NAMES, MAPPER);
+        static final ToolCatalog CATALOG = ToolCatalog.of(1, withPlugins(List.of(
+            new ToolCatalog.Entry(ADD, "/tools/add", "POST", "Add two numbers",
+                "{\"a\": number, \"b\": number}"),
+            new ToolCatalog.Entry(MULTIPLY, "/tools/multiply", "POST", "Multiply two numbers",
+                "{\"x\": number, \"y\": number}"),
+            new ToolCatalog.Entry(CURRENT_TIME, "/tools/time", "GET", "Get the current date and time", null),
+            new ToolCatalog.Entry(GREETING, "/tools/greet", "POST", "Greet a person by name",
+                "{\"name\": string}"),
+            new ToolCatalog.Entry(AI_CHAT, "/tools/ai_chat", "POST", "Chat with Azure AI Foundry agent",
+                "{\"prompt\": string, \"max_tokens\": number (optional), \"temperature\": number (optional)}"),
+            new ToolCatalog.Entry(RUN_DAG, "/tools/dag", "POST", "Run a DAG of tool calls, streaming results",
+                "{\"nodes\": [{\"id\": string, \"tool\": string, \"arguments\": object}]}")
+        )), MAPPER);
+
+        private static List<ToolCatalog.Entry> withPlugins(List<ToolCatalog.Entry> builtIns) {
+            List<ToolCatalog.Entry> entries = new ArrayList<>(builtIns);
+            entries.addAll(PLUGINS.catalogEntries());
+            return entries;
+        }
+    }
+
+    /**
+     * The catalog of all tools, built-in and provided, built on first use.
+     */
+    public static ToolCatalog catalog() {
+        return CatalogHolder.CATALOG;
+    }
+
+    /**
+     * Tools loaded through the {@link McpTool} service provider interface.
+     */
+    public static ToolRegistry plugins() {
+        return CatalogHolder.PLUGINS;
+    }
 
     public static McpServerFeatures.SyncToolSpecification getAddTool() {
-        McpJsonMapper mapper = McpJsonMapper.getDefault();
-        
+        return ADD;
+    }
+
+    public static McpServerFeatures.SyncToolSpecification getMultiplyTool() {
+        return MULTIPLY;
+    }
+
+    public static McpServerFeatures.SyncToolSpecification getCurrentTimeTool() {
+        return CURRENT_TIME;
+    }
+
+    public static McpServerFeatures.SyncToolSpecification getGreetingTool() {
+        return GREETING;
+    }
+
+    public static McpServerFeatures.SyncToolSpecification getAIChatTool() {
+        return AI_CHAT;
+    }
+
+    public static McpServerFeatures.SyncToolSpecification getRunDagTool() {
+        return RUN_DAG;
+    }
+
+    /**
+     * Wrap a tool handler so invalid arguments, reported by the tool's binder as
+     * {@link IllegalArgumentException}, become an error result, and each call is
+     * recorded as a {@link JfrEvents.ToolInvocationEvent} and a server {@link Tracing} span
+     * continuing the trace from the request's {@code _meta.traceparent}.
+     */
+    @SuppressWarnings("try") // the span scope is only closed, never read
+    private static McpServerFeatures.SyncToolSpecification binding(McpSchema.Tool tool,
+            BiFunction<McpSyncServerExchange, McpSchema.CallToolRequest, McpSchema.CallToolResult> handler) {
+        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+            JfrEvents.ToolInvocationEvent event = JfrEvents.beginTool(tool.name(), "mcp", -1,
+                request.arguments() != null ? request.arguments().size() : 0);
+            Object traceparent = request.meta() != null ? request.meta().get(Tracing.TRACEPARENT) : null;
+            Tracing.Span span = Tracing.startSpan("tools/call " + tool.name(), Tracing.Kind.SERVER,
+                traceparent instanceof String value ? Tracing.SpanContext.parse(value) : null);
+            int status = 500;
+            try (Tracing.Scope scope = span.makeCurrent()) {
+                McpSchema.CallToolResult result = handler.apply(exchange, request);
+                status = Boolean.TRUE.equals(result.isError()) ? 500 : 200;
+                return result;
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                return new McpSchema.CallToolResult(
+                    List.of(new McpSchema.TextContent("Error: " + e.getMessage())),
+                    true
+                );
+            } finally {
+                JfrEvents.endTool(event, status);
+                if (status != 200) {
+                    span.error(status == 400 ? "invalid arguments" : "tool error");
+                }
+                span.attribute("mcp.tool.name", tool.name()).end();
+            }
+        });
+    }
+
+    private static McpServerFeatures.SyncToolSpecification createAddTool() {
         String schemaJson = """
                 {
                     "type": "object",
@@ -41,15 +177,13 @@ public class ToolsProvider {
         McpSchema.Tool tool = McpSchema.Tool.builder()
             .name("add")
             .description("Add two numbers")
-            .inputSchema(mapper, schemaJson)
+            .inputSchema(MAPPER, schemaJson)
             .build();
 
-        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+        return binding(tool, (exchange, request) -> {
             logger.info("Tool 'add' called");
-            Map<String, Object> arguments = request.arguments();
-            double aVal = ((Number) arguments.get("a")).doubleValue();
-            double bVal = ((Number) arguments.get("b")).doubleValue();
-            double result = aVal + bVal;
+            ToolArguments.Add arguments = ToolArguments.ADD.bind(request.arguments());
+            double result = arguments.a() + arguments.b();
             return new McpSchema.CallToolResult(
                 List.of(new McpSchema.TextContent("The result is: " + result)),
                 false
@@ -57,9 +191,7 @@ public class ToolsProvider {
         });
     }
 
-    public static McpServerFeatures.SyncToolSpecification getMultiplyTool() {
-        McpJsonMapper mapper = McpJsonMapper.getDefault();
-        
+    private static McpServerFeatures.SyncToolSpecification createMultiplyTool() {
         String schemaJson = """
                 {
                     "type": "object",
@@ -80,15 +212,13 @@ public class ToolsProvider {
         McpSchema.Tool tool = McpSchema.Tool.builder()
             .name("multiply")
             .description("Multiply two numbers")
-            .inputSchema(mapper, schemaJson)
+            .inputSchema(MAPPER, schemaJson)
             .build();
 
-        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+        return binding(tool, (exchange, request) -> {
             logger.info("Tool 'multiply' called");
-            Map<String, Object> arguments = request.arguments();
-            double xVal = ((Number) arguments.get("x")).doubleValue();
-            double yVal = ((Number) arguments.get("y")).doubleValue();
-            double result = xVal * yVal;
+            ToolArguments.Multiply arguments = ToolArguments.MULTIPLY.bind(request.arguments());
+            double result = arguments.x() * arguments.y();
             return new McpSchema.CallToolResult(
                 List.of(new McpSchema.TextContent("The result is: " + result)),
                 false
@@ -96,9 +226,7 @@ public class ToolsProvider {
         });
     }
 
-    public static McpServerFeatures.SyncToolSpecification getCurrentTimeTool() {
-        McpJsonMapper mapper = McpJsonMapper.getDefault();
-        
+    private static McpServerFeatures.SyncToolSpecification createCurrentTimeTool() {
         String schemaJson = """
                 {
                     "type": "object",
@@ -109,10 +237,10 @@ public class ToolsProvider {
         McpSchema.Tool tool = McpSchema.Tool.builder()
             .name("get_current_time")
             .description("Get the current time")
-            .inputSchema(mapper, schemaJson)
+            .inputSchema(MAPPER, schemaJson)
             .build();
 
-        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+        return binding(tool, (exchange, request) -> {
             logger.info("Tool 'get_current_time' called");
             String currentTime = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
             return new McpSchema.CallToolResult(
@@ -122,9 +250,7 @@ public class ToolsProvider {
         });
     }
 
-    public static McpServerFeatures.SyncToolSpecification getGreetingTool() {
-        McpJsonMapper mapper = McpJsonMapper.getDefault();
-        
+    private static McpServerFeatures.SyncToolSpecification createGreetingTool() {
         String schemaJson = """
                 {
                     "type": "object",
@@ -141,13 +267,12 @@ public class ToolsProvider {
         McpSchema.Tool tool = McpSchema.Tool.builder()
             .name("greet")
             .description("Greet a person by name with a welcome message")
-            .inputSchema(mapper, schemaJson)
+            .inputSchema(MAPPER, schemaJson)
             .build();
 
-        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+        return binding(tool, (exchange, request) -> {
             logger.info("Tool 'greet' called");
-            Map<String, Object> arguments = request.arguments();
-            String name = (String) arguments.get("name");
+            String name = ToolArguments.GREET.bind(request.arguments()).name();
             String greeting = "Hello " + name + " welcome to the Java MCP Server!";
             return new McpSchema.CallToolResult(
                 List.of(new McpSchema.TextContent(greeting)),
@@ -156,9 +281,7 @@ public class ToolsProvider {
         });
     }
 
-    public static McpServerFeatures.SyncToolSpecification getAIChatTool() {
-        McpJsonMapper mapper = McpJsonMapper.getDefault();
-        
+    private static McpServerFeatures.SyncToolSpecification createAIChatTool() {
         String schemaJson = """
                 {
                     "type": "object",
@@ -183,35 +306,39 @@ public class ToolsProvider {
         McpSchema.Tool tool = McpSchema.Tool.builder()
             .name("ai_chat")
             .description("Send a prompt to Azure AI Foundry agent (o4-mini) and get AI-powered response. Note: o4-mini uses reasoning tokens internally, so max_tokens includes both reasoning and output.")
-            .inputSchema(mapper, schemaJson)
+            .inputSchema(MAPPER, schemaJson)
             .build();
 
-        return new McpServerFeatures.SyncToolSpecification(tool, null, (exchange, request) -> {
+        return binding(tool, (exchange, request) -> {
             logger.info("Tool 'ai_chat' called");
             try {
-                Map<String, Object> arguments = request.arguments();
-                String prompt = (String) arguments.get("prompt");
-                
-                // o4-mini uses reasoning tokens internally, need higher max_tokens
-                // Default 500: o4-mini often uses 200-400 tokens for reasoning alone!
-                Integer maxTokens = 500;
-                if (arguments.containsKey("max_tokens")) {
-                    maxTokens = ((Number) arguments.get("max_tokens")).intValue();
-                }
+                // o4-mini uses reasoning tokens internally and only supports temperature=1.0
+                ToolArguments.AIChat arguments = AIChatBinderHolder.BINDER.bind(request.arguments());
+                String prompt = arguments.prompt();
+                int maxTokens = arguments.maxTokens();
+                double temperature = arguments.temperature();
+
+                TokenAccounting accounting = TokenAccounting.getInstance();
+                accounting.checkQuota(STDIO_TENANT);
+                LlmBackend aiClient = LlmBackends.get();
+                logger.info("Calling {} with prompt: {}, maxTokens: {}, temperature: {}", 
+                    aiClient.name(), prompt, maxTokens, temperature);
                 
-                // o4-mini only supports temperature=1.0
-                Double temperature = 1.0;
-                if (arguments.containsKey("temperature")) {
-                    temperature = ((Number) arguments.get("temperature")).doubleValue();
+                // With a progress token the response is streamed, one progress notification per delta
+                Object progressToken = request.meta() != null ? request.meta().get("progressToken") : null;
+                LlmBackend.Completion completion;
+                if (progressToken != null) {
+                    AtomicInteger deltas = new AtomicInteger();
+                    completion = aiClient.completeStream(prompt, maxTokens, temperature, delta ->
+                        exchange.progressNotification(new McpSchema.ProgressNotification(
+                            progressToken, deltas.incrementAndGet(), null, delta)));
+                } else {
+                    completion = aiClient.complete(prompt, maxTokens, temperature);
                 }
+                accounting.record(STDIO_TENANT, "ai_chat", completion.deployment(), completion.usage());
+                String response = completion.content();
                 
-                logger.info("Calling Azure OpenAI with prompt: {}, maxTokens: {}, temperature: {}", 
-                    prompt, maxTokens, temperature);
-                
-                AzureAIClient aiClient = AzureAIClient.getInstance();
-                String response = aiClient.chat(prompt, maxTokens, temperature);
-                
-                logger.info("Received response from Azure OpenAI: {} characters", response.length());
+                logger.info("Received response from {}: {} characters", aiClient.name(), response.length());
                 
                 return new McpSchema.CallToolResult(
                     List.of(new McpSchema.TextContent(response)),
@@ -226,4 +353,83 @@ public class ToolsProvider {
             }
         });
     }
+
+    private static McpServerFeatures.SyncToolSpecification createRunDagTool() {
+        String schemaJson = """
+                {
+                    "type": "object",
+                    "properties": {
+                        "nodes": {
+                            "type": "array",
+                            "description": "Tool calls as {id, tool, arguments}. Argument values may reference earlier nodes' output with {\\"$ref\\": \\"id.path\\"} or \\"${id.path}\\" inside strings; independent nodes run concurrently.",
+                            "items": {"type": "object"}
+                        }
+                    },
+                    "required": ["nodes"]
+                }
+                """;
+
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+            .name("run_dag")
+            .description("Run a small DAG of tool calls in one request. Nodes that do not depend on each other run concurrently; each node's result is sent as a progress notification as soon as it completes.")
+            .inputSchema(MAPPER, schemaJson)
+            .build();
+
+        return binding(tool, (exchange, request) -> {
+            logger.info("Tool 'run_dag' called");
+            Object nodes = request.arguments() != null ? request.arguments().get("nodes") : null;
+            ToolDag dag = ToolDag.parse(nodes != null ? JSON.valueToTree(nodes) : null, DAG_MAX_NODES);
+
+            Object progressToken = request.meta() != null ? request.meta().get("progressToken") : null;
+            int total = dag.nodes().size();
+            AtomicInteger completed = new AtomicInteger();
+            ArrayNode lines = JSON.createArrayNode();
+
+            int failed = dag.execute((node, arguments) -> executeDagNode(exchange, node, arguments), line -> {
+                synchronized (lines) {
+                    lines.add(line);
+                }
+                if (progressToken != null) {
+                    exchange.progressNotification(new McpSchema.ProgressNotification(
+                        progressToken, completed.incrementAndGet(), (double) total, line.toString()));
+                }
+            }).join();
+
+            return new McpSchema.CallToolResult(
+                List.of(new McpSchema.TextContent(lines.toString())),
+                failed > 0
+            );
+        });
+    }
+
+    /**
+     * Execute one DAG node through its tool's MCP handler. The node's body is
+     * {"tool", "message"}, so later nodes reference a result as "id.message".
+     */
+    private static CompletableFuture<ToolDag.NodeResult> executeDagNode(McpSyncServerExchange exchange,
+                                                                      ToolDag.Node node, JsonNode arguments) {
+        McpServerFeatures.SyncToolSpecification specification = catalog().specification(node.tool());
+        if (specification == null || specification == RUN_DAG) {
+            ObjectNode error = JSON.createObjectNode();
+            error.put("error", specification == null ? "Unknown tool: " + node.tool() : "run_dag cannot be nested");
+            error.put("status", 404);
+            return CompletableFuture.completedFuture(new ToolDag.NodeResult(404, error));
+        }
+
+        McpSchema.CallToolRequest call = new McpSchema.CallToolRequest(node.tool(), JSON.convertValue(arguments, ARGUMENT_MAP));
+        return ToolExecutor.getInstance()
+            .submit(node.tool(), McpTool.ExecutionProfile.IO, 0, () -> specification.callHandler().apply(exchange, call))
+            .thenApply(result -> {
+                ObjectNode body = JSON.createObjectNode();
+                body.put("tool", node.tool());
+                StringBuilder message = new StringBuilder();
+                for (McpSchema.Content content : result.content()) {
+                    if (content instanceof McpSchema.TextContent text) {
+                        message.append(text.text());
+                    }
+                }
+                body.put("message", message.toString());
+                return new ToolDag.NodeResult(Boolean.TRUE.equals(result.isError()) ? 500 : 200, body);
+            });
+    }
 }
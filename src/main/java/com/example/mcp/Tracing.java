@@ -0,0 +1,645 @@
+package com.example.mcp;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Distributed tracing with W3C Trace Context propagation and a local OTLP/JSON exporter.
+ *
+ * Spans follow the OpenTelemetry data model: the client sends a {@code traceparent}
+ * header, the HTTP server (or the MCP tool handler, from {@code params._meta.traceparent})
+ * continues the trace with a server span, the scheduler adds queue and execute spans,
+ * and the upstream LLM call is a client span whose {@code traceparent} is sent on to the
+ * backend. Ended spans are handed to a bounded queue without blocking; a background
+ * thread exports them in batches as OTLP/JSON lines (one ExportTraceServiceRequest per
+ * line), the format read by the OpenTelemetry Collector's otlpjsonfile receiver.
+ * Spans that do not fit in the queue are dropped and counted.
+ *
+ * Root spans are sampled with MCP_TRACE_SAMPLE_RATIO; spans with a parent follow the
+ * parent's sampled flag. With no exporter configured nothing is recorded, but an
+ * incoming {@code traceparent} is still passed on to the upstream call unchanged.
+ *
+ * Configuration (environment variables):
+ *   MCP_TRACE_EXPORTER        - none (default), stdout or file
+ *   MCP_TRACE_FILE            - output file of the file exporter (default mcp-traces.jsonl)
+ *   MCP_TRACE_SAMPLE_RATIO    - fraction of root spans that are sampled (default 1.0)
+ *   MCP_TRACE_QUEUE_SIZE      - ended spans waiting for export (default 2048)
+ *   MCP_TRACE_BATCH_SIZE      - max spans per export (default 512)
+ *   MCP_TRACE_EXPORT_MILLIS   - max delay before a partial batch is exported (default 2000)
+ *   MCP_TRACE_SERVICE_NAME    - service.name resource attribute (default mcp-server-java)
+ */
+public final class Tracing {
+    private static final Logger logger = LoggerFactory.getLogger(Tracing.class);
+
+    public static final String TRACEPARENT = "traceparent";
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final double SAMPLE_RATIO = doubleEnv("MCP_TRACE_SAMPLE_RATIO", 1.0);
+    private static final Span NOOP = new Span(null, null, "noop", Kind.INTERNAL, false, 0);
+    private static final Processor PROCESSOR = Processor.fromEnvironment();
+    private static volatile boolean stdoutIsProtocol;
+
+    private Tracing() {
+    }
+
+    /**
+     * Span kinds, with their OTLP enum values.
+     */
+    public enum Kind {
+        INTERNAL(1), SERVER(2), CLIENT(3);
+
+        final int otlp;
+
+        Kind(int otlp) {
+            this.otlp = otlp;
+        }
+    }
+
+    /**
+     * The propagated identity of a span, as carried by a W3C {@code traceparent} header.
+     */
+    public record SpanContext(String traceId, String spanId, boolean sampled) {
+
+        /**
+         * Parse a {@code traceparent} header value, returning null when it is absent or invalid.
+         */
+        public static SpanContext parse(String traceparent) {
+            if (traceparent == null) {
+                return null;
+            }
+            String value = traceparent.trim();
+            // version-traceid-parentid-flags; later versions may append fields
+            if (value.length() < 55 || value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-'
+                    || (value.length() > 55 && value.charAt(55) != '-') || value.startsWith("ff")) {
+                return null;
+            }
+            String traceId = value.substring(3, 35);
+            String spanId = value.substring(36, 52);
+            String flags = value.substring(53, 55);
+            if (!isHex(value.substring(0, 2)) || !isHex(traceId) || !isHex(spanId) || !isHex(flags)
+                    || isZero(traceId) || isZero(spanId)) {
+                return null;
+            }
+            return new SpanContext(traceId, spanId, (Integer.parseInt(flags, 16) & 1) != 0);
+        }
+
+        public String traceparent() {
+            return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+        }
+    }
+
+    /**
+     * Restores the previous current span when closed.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A timed operation. Non-recording spans only carry a context for propagation.
+     * A span may be ended on a different thread than the one that started it.
+     */
+    public static final class Span {
+        private final SpanContext context;
+        private final String parentSpanId;
+        private final String name;
+        private final Kind kind;
+        private final boolean recording;
+        private final long startNanos;
+        private long endNanos;
+        private List<Object> attributes;
+        private String error;
+        private boolean ended;
+
+        Span(SpanContext context, String parentSpanId, String name, Kind kind, boolean recording, long startNanos) {
+            this.context = context;
+            this.parentSpanId = parentSpanId;
+            this.name = name;
+            this.kind = kind;
+            this.recording = recording;
+            this.startNanos = startNanos;
+        }
+
+        /** The context to propagate, or null when there is none. */
+        public SpanContext context() {
+            return context;
+        }
+
+        public boolean isRecording() {
+            return recording;
+        }
+
+        /**
+         * Add an attribute. Strings, booleans and integral and floating point numbers are kept
+         * with their type; anything else is recorded as its string form.
+         */
+        public synchronized Span attribute(String key, Object value) {
+            if (recording && !ended && value != null) {
+                if (attributes == null) {
+                    attributes = new ArrayList<>(8);
+                }
+                attributes.add(key);
+                attributes.add(value);
+            }
+            return this;
+        }
+
+        /** Mark the span as failed. */
+        public synchronized Span error(String message) {
+            if (recording && !ended) {
+                error = message != null ? message : "error";
+            }
+            return this;
+        }
+
+        /**
+         * Make this span the parent of spans started on the current thread until the scope is closed.
+         */
+        public Scope makeCurrent() {
+            Span previous = CURRENT.get();
+            CURRENT.set(this);
+            return () -> {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            };
+        }
+
+        /** End the span now. Only the first call has an effect. */
+        public void end() {
+            end(System.nanoTime());
+        }
+
+        void end(long atNanos) {
+            synchronized (this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                endNanos = atNanos;
+            }
+            if (recording && PROCESSOR != null) {
+                PROCESSOR.submit(this);
+            }
+        }
+    }
+
+    /**
+     * True when spans are exported.
+     */
+    public static boolean isEnabled() {
+        return PROCESSOR != null;
+    }
+
+    /**
+     * In STDIO mode stdout carries the protocol, so the stdout exporter writes to stderr instead.
+     */
+    static void setStdoutIsProtocol(boolean protocol) {
+        stdoutIsProtocol = protocol;
+    }
+
+    /**
+     * The span current on this thread, or null.
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Start a span whose parent is the current span, or a new root span.
+     */
+    public static Span startSpan(String name, Kind kind) {
+        return startSpan(name, kind, (SpanContext) null);
+    }
+
+    /**
+     * Start a child of {@code parent}; with a null or context-less parent, of the current span.
+     */
+    public static Span startSpan(String name, Kind kind, Span parent) {
+        return startSpan(name, kind, parent != null ? parent.context : null);
+    }
+
+    /**
+     * Start a child of a propagated context; with a null context, of the current span.
+     */
+    public static Span startSpan(String name, Kind kind, SpanContext parent) {
+        if (parent == null) {
+            Span current = CURRENT.get();
+            parent = current != null ? current.context : null;
+        }
+        if (PROCESSOR == null) {
+            // Pass the caller's context through unchanged
+            return parent == null ? NOOP : new Span(parent, null, name, kind, false, System.nanoTime());
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean sampled = parent != null ? parent.sampled() : random.nextDouble() < SAMPLE_RATIO;
+        String traceId = parent != null ? parent.traceId() : hex(random.nextLong(), random.nextLong());
+        SpanContext context = new SpanContext(traceId, hex(randomNonZero(random)), sampled);
+        return new Span(context, parent != null ? parent.spanId() : null, name, kind, sampled, System.nanoTime());
+    }
+
+    /**
+     * Record an already finished phase as a child of {@code parent}.
+     *
+     * @param startNanos start time from {@link System#nanoTime()}
+     * @param endNanos end time from {@link System#nanoTime()}
+     */
+    public static void record(Span parent, String name, long startNanos, long endNanos) {
+        if (parent == null || !parent.recording || PROCESSOR == null) {
+            return;
+        }
+        Span span = new Span(new SpanContext(parent.context.traceId(),
+            hex(randomNonZero(ThreadLocalRandom.current())), true),
+            parent.context.spanId(), name, Kind.INTERNAL, true, startNanos);
+        span.end(endNanos);
+    }
+
+    /**
+     * Return a copy of the request carrying the span's {@code traceparent} header.
+     */
+    public static HttpRequest inject(Span span, HttpRequest request) {
+        if (span == null || span.context == null) {
+            return request;
+        }
+        return HttpRequest.newBuilder(request, (name, value) -> !TRACEPARENT.equalsIgnoreCase(name))
+            .header(TRACEPARENT, span.context.traceparent())
+            .build();
+    }
+
+    /**
+     * Add the current span's {@code traceparent} to a header map.
+     */
+    public static void inject(Map<String, String> headers) {
+        Span current = CURRENT.get();
+        if (current != null && current.context != null) {
+            headers.put(TRACEPARENT, current.context.traceparent());
+        }
+    }
+
+    /**
+     * Export queued spans and stop the exporter thread.
+     */
+    public static void shutdown() {
+        if (PROCESSOR != null) {
+            PROCESSOR.shutdown();
+        }
+    }
+
+    /**
+     * Server spans for HTTP requests, continuing the caller's trace from its
+     * {@code traceparent} header, with a "parse" child covering the request body read.
+     * The span ends when the response is closed, which for ai_chat is on the AI worker.
+     */
+    static final class HttpFilter extends Filter {
+        @Override
+        public String description() {
+            return "Trace context propagation";
+        }
+
+        @Override
+        @SuppressWarnings("try") // the span scopes are only closed, never read
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            SpanContext incoming = SpanContext.parse(exchange.getRequestHeaders().getFirst(TRACEPARENT));
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Span span = startSpan(method + " " + path, Kind.SERVER, incoming);
+            if (!span.isRecording()) {
+                try (Scope scope = span.makeCurrent()) {
+                    chain.doFilter(exchange);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            span.attribute("http.request.method", method).attribute("url.path", path);
+            exchange.setStreams(new FilterInputStream(exchange.getRequestBody()) {
+                private boolean done;
+
+                @Override
+                public int read() throws IOException {
+                    return parsed(super.read());
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    return parsed(super.read(buffer, offset, length));
+                }
+
+                private int parsed(int n) {
+                    if (n < 0 && !done) {
+                        done = true;
+                        record(span, "parse", start, System.nanoTime());
+                    }
+                    return n;
+                }
+            }, new FilterOutputStream(exchange.getResponseBody()) {
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        int status = exchange.getResponseCode();
+                        span.attribute("http.response.status_code", status);
+                        if (status >= 500) {
+                            span.error("HTTP " + status);
+                        }
+                        span.end();
+                    }
+                }
+            });
+            try (Scope scope = span.makeCurrent()) {
+                chain.doFilter(exchange);
+            } catch (IOException | RuntimeException e) {
+                span.error(e.getMessage()).end();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Bounded queue of ended spans, exported in batches by a background thread.
+     * {@link #submit} never blocks: a full queue drops the span.
+     */
+    private static final class Processor implements Runnable {
+        private final ArrayBlockingQueue<Span> queue;
+        private final int batchSize;
+        private final long delayNanos;
+        private final OtlpJsonExporter exporter;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final LongAdder dropped = new LongAdder();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Processor(int queueSize, int batchSize, long delayMillis, OtlpJsonExporter exporter) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.batchSize = batchSize;
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            this.exporter = exporter;
+            this.thread = new Thread(this, "trace-exporter");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "trace-flush"));
+        }
+
+        static Processor fromEnvironment() {
+            String kind = System.getenv("MCP_TRACE_EXPORTER");
+            if (kind == null || kind.isBlank() || "none".equalsIgnoreCase(kind.trim())) {
+                return null;
+            }
+            String service = System.getenv("MCP_TRACE_SERVICE_NAME");
+            service = service == null || service.isBlank() ? "mcp-server-java" : service.trim();
+            OtlpJsonExporter exporter;
+            if ("stdout".equalsIgnoreCase(kind.trim())) {
+                exporter = new OtlpJsonExporter(service, null);
+            } else if ("file".equalsIgnoreCase(kind.trim())) {
+                String file = System.getenv("MCP_TRACE_FILE");
+                file = file == null || file.isBlank() ? "mcp-traces.jsonl" : file.trim();
+                try {
+                    exporter = new OtlpJsonExporter(service,
+                        new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+                } catch (IOException e) {
+                    logger.warn("Cannot open trace file {}, tracing disabled: {}", file, e.getMessage());
+                    return null;
+                }
+            } else {
+                logger.warn("Unknown MCP_TRACE_EXPORTER '{}', tracing disabled", kind);
+                return null;
+            }
+            logger.info("Tracing to {} (sample ratio {})", kind.trim(), SAMPLE_RATIO);
+            return new Processor(
+                Math.max(1, ToolScheduler.intEnv("MCP_TRACE_QUEUE_SIZE", 2048)),
+                Math.max(1, ToolScheduler.intEnv("MCP_TRACE_BATCH_SIZE", 512)),
+                Math.max(1, ToolScheduler.intEnv("MCP_TRACE_EXPORT_MILLIS", 2000)),
+                exporter);
+        }
+
+        void submit(Span span) {
+            if (!queue.offer(span)) {
+                dropped.increment();
+                return;
+            }
+            if (pending.incrementAndGet() == batchSize) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (pending.get() < batchSize) {
+                    LockSupport.parkNanos(this, delayNanos);
+                }
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            List<Span> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            while (queue.drainTo(batch, batchSize) > 0) {
+                pending.addAndGet(-batch.size());
+                try {
+                    exporter.export(batch);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Exporting {} spans failed: {}", batch.size(), e.getMessage());
+                }
+                batch.clear();
+            }
+            long lost = dropped.sumThenReset();
+            if (lost > 0) {
+                logger.warn("Dropped {} spans, the export queue was full", lost);
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            LockSupport.unpark(thread);
+            flush();
+        }
+    }
+
+    /**
+     * Writes each batch as one OTLP/JSON ExportTraceServiceRequest line.
+     */
+    private static final class OtlpJsonExporter {
+        private static final JsonFactory JSON = new JsonFactory();
+
+        private final String serviceName;
+        private final OutputStream file;
+
+        /**
+         * @param file output stream, or null for stdout
+         */
+        OtlpJsonExporter(String serviceName, OutputStream file) {
+            this.serviceName = serviceName;
+            this.file = file;
+        }
+
+        void export(List<Span> spans) throws IOException {
+            OutputStream out = file != null ? file : stdoutIsProtocol ? System.err : System.out;
+            JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeArrayFieldStart("resourceSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("resource");
+            json.writeArrayFieldStart("attributes");
+            attribute(json, "service.name", serviceName);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("scopeSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("scope");
+            json.writeStringField("name", "com.example.mcp");
+            json.writeEndObject();
+            json.writeArrayFieldStart("spans");
+            for (Span span : spans) {
+                writeSpan(json, span);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.close();
+            out.write('\n');
+            out.flush();
+        }
+
+        private static void writeSpan(JsonGenerator json, Span span) throws IOException {
+            List<Object> attributes;
+            String error;
+            long endNanos;
+            synchronized (span) {
+                attributes = span.attributes;
+                error = span.error;
+                endNanos = span.endNanos;
+            }
+            json.writeStartObject();
+            json.writeStringField("traceId", span.context.traceId());
+            json.writeStringField("spanId", span.context.spanId());
+            if (span.parentSpanId != null) {
+                json.writeStringField("parentSpanId", span.parentSpanId);
+            }
+            json.writeStringField("name", span.name);
+            json.writeNumberField("kind", span.kind.otlp);
+            json.writeStringField("startTimeUnixNano", Long.toString(span.startNanos + EPOCH_OFFSET_NANOS));
+            json.writeStringField("endTimeUnixNano", Long.toString(endNanos + EPOCH_OFFSET_NANOS));
+            if (attributes != null) {
+                json.writeArrayFieldStart("attributes");
+                for (int i = 0; i < attributes.size(); i += 2) {
+                    attribute(json, (String) attributes.get(i), attributes.get(i + 1));
+                }
+                json.writeEndArray();
+            }
+            if (error != null) {
+                json.writeObjectFieldStart("status");
+                json.writeNumberField("code", 2);
+                json.writeStringField("message", error);
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+        }
+
+        private static void attribute(JsonGenerator json, String key, Object value) throws IOException {
+            json.writeStartObject();
+            json.writeStringField("key", key);
+            json.writeObjectFieldStart("value");
+            if (value instanceof Boolean bool) {
+                json.writeBooleanField("boolValue", bool);
+            } else if (value instanceof Integer || value instanceof Long) {
+                // OTLP/JSON encodes 64-bit integers as strings
+                json.writeStringField("intValue", value.toString());
+            } else if (value instanceof Number number) {
+                json.writeNumberField("doubleValue", number.doubleValue());
+            } else {
+                json.writeStringField("stringValue", value.toString());
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+    }
+
+    private static long randomNonZero(ThreadLocalRandom random) {
+        long value;
+        do {
+            value = random.nextLong();
+        } while (value == 0);
+        return value;
+    }
+
+    private static String hex(long... values) {
+        char[] chars = new char[values.length * 16];
+        int position = 0;
+        for (long value : values) {
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                chars[position++] = HEX[(int) (value >>> shift) & 0xF];
+            }
+        }
+        return new String(chars);
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double doubleEnv(String name, double defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {}: '{}', using {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
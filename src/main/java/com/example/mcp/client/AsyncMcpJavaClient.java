@@ -0,0 +1,480 @@
+package com.example.mcp.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.mcp.Tracing;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Asynchronous client for the MCP Server HTTP JSON API, built for high fan-out.
+ *
+ * - At most {@code maxInFlight} HTTP requests are outstanding at a time; further calls
+ *   wait in a queue and are sent as earlier ones complete.
+ * - The underlying HttpClient prefers HTTP/2 and falls back to HTTP/1.1 when the
+ *   server does not support it.
+ * - Cheap tool calls issued close together are coalesced into a single POST to the
+ *   server's batch endpoint, if the server advertises one in GET /tools. ai_chat is
+ *   never batched, so a slow AI call cannot delay unrelated results.
+ * - Request bodies are written with a streaming generator and responses are parsed
+ *   token by token straight into {@link ToolResult} records.
+ * - Every HTTP request is a client {@link Tracing} span started under the caller's
+ *   current span, and sends its traceparent header.
+ *
+ * Usage:
+ * <pre>
+ *   try (AsyncMcpJavaClient client = new AsyncMcpJavaClient("http://localhost:8080")) {
+ *       CompletableFuture&lt;ToolResult&gt; sum = client.add(5, 3);
+ *       System.out.println(sum.join().result());
+ *   }
+ * </pre>
+ */
+public class AsyncMcpJavaClient implements AutoCloseable {
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final int DEFAULT_MAX_BATCH = 32;
+    private static final long DEFAULT_LINGER_MICROS = 500;
+
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final Semaphore window;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final int maxBatchSize;
+    private final long lingerMicros;
+    private final ScheduledExecutorService flusher;
+    private final Object batchLock = new Object();
+    private List<PendingCall> batch = new ArrayList<>();
+    private volatile CompletableFuture<Boolean> batchSupported;
+
+    private static final class PendingCall {
+        final String tool;
+        final byte[] arguments;
+        final CompletableFuture<ToolResult> future = new CompletableFuture<>();
+
+        PendingCall(String tool, byte[] arguments) {
+            this.tool = tool;
+            this.arguments = arguments;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArgumentWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    public AsyncMcpJavaClient(String baseUrl) {
+        this(baseUrl, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_BATCH, DEFAULT_LINGER_MICROS);
+    }
+
+    /**
+     * @param maxInFlight maximum concurrent HTTP requests
+     * @param maxBatchSize maximum calls per batch request; 1 disables batching
+     * @param lingerMicros how long a call may wait for others to join its batch
+     */
+    public AsyncMcpJavaClient(String baseUrl, int maxInFlight, int maxBatchSize, long lingerMicros) {
+        this.baseUrl = baseUrl;
+        this.window = new Semaphore(maxInFlight);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMicros = lingerMicros;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mcp-client-batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Call the add tool to add two numbers
+     */
+    public CompletableFuture<ToolResult> add(double a, double b) {
+        return callBatchable("add", generator -> {
+            generator.writeNumberField("a", a);
+            generator.writeNumberField("b", b);
+        });
+    }
+
+    /**
+     * Call the multiply tool to multiply two numbers
+     */
+    public CompletableFuture<ToolResult> multiply(double x, double y) {
+        return callBatchable("multiply", generator -> {
+            generator.writeNumberField("x", x);
+            generator.writeNumberField("y", y);
+        });
+    }
+
+    /**
+     * Call the greet tool to greet someone by name
+     */
+    public CompletableFuture<ToolResult> greet(String name) {
+        return callBatchable("greet", generator -> generator.writeStringField("name", name));
+    }
+
+    /**
+     * Call the get_current_time tool
+     */
+    public CompletableFuture<ToolResult> getCurrentTime() {
+        return send(HttpRequest.newBuilder().uri(URI.create(baseUrl + "/tools/time")).GET().build());
+    }
+
+    /**
+     * Call the AI Chat tool with a prompt. Never batched.
+     */
+    public CompletableFuture<ToolResult> aiChat(String prompt) {
+        byte[] body;
+        try {
+            body = writeObject(generator -> generator.writeStringField("prompt", prompt));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(post("/tools/ai_chat", body));
+    }
+
+    private CompletableFuture<ToolResult> callBatchable(String tool, ArgumentWriter arguments) {
+        byte[] body;
+        try {
+            body = writeObject(arguments);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (maxBatchSize <= 1) {
+            return send(post("/tools/" + tool, body));
+        }
+        return probeBatchSupport().thenCompose(supported -> {
+            if (!supported) {
+                return send(post("/tools/" + tool, body));
+            }
+            PendingCall call = new PendingCall(tool, body);
+            enqueueForBatch(call);
+            return call.future;
+        });
+    }
+
+    private CompletableFuture<Boolean> probeBatchSupport() {
+        CompletableFuture<Boolean> probe = batchSupported;
+        if (probe == null) {
+            synchronized (batchLock) {
+                if (batchSupported == null) {
+                    HttpRequest request = HttpRequest.newBuilder().uri(URI.create(baseUrl + "/tools")).GET().build();
+                    batchSupported = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenApply(response -> response.statusCode() == 200
+                            && hasStringField(response.body(), "batch_endpoint"))
+                        .exceptionally(error -> false);
+                }
+                probe = batchSupported;
+            }
+        }
+        return probe;
+    }
+
+    private void enqueueForBatch(PendingCall call) {
+        List<PendingCall> full = null;
+        boolean first;
+        synchronized (batchLock) {
+            batch.add(call);
+            first = batch.size() == 1;
+            if (batch.size() >= maxBatchSize) {
+                full = batch;
+                batch = new ArrayList<>();
+            }
+        }
+        if (full != null) {
+            sendBatch(full);
+        } else if (first) {
+            flusher.schedule(this::flushBatch, lingerMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void flushBatch() {
+        List<PendingCall> ready;
+        synchronized (batchLock) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            ready = batch;
+            batch = new ArrayList<>();
+        }
+        sendBatch(ready);
+    }
+
+    private void sendBatch(List<PendingCall> calls) {
+        if (calls.size() == 1) {
+            PendingCall call = calls.get(0);
+            forward(send(post("/tools/" + call.tool, call.arguments)), call);
+            return;
+        }
+
+        byte[] body;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * calls.size());
+            try (JsonGenerator generator = JSON.createGenerator(buffer)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("calls");
+                for (int i = 0; i < calls.size(); i++) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", i);
+                    generator.writeStringField("tool", calls.get(i).tool);
+                    generator.writeFieldName("arguments");
+                    generator.writeRawValue(new String(calls.get(i).arguments, StandardCharsets.UTF_8));
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            body = buffer.toByteArray();
+        } catch (IOException e) {
+            calls.forEach(call -> call.future.completeExceptionally(e));
+            return;
+        }
+
+        acquire(post("/tools/batch", body), response -> {
+            try {
+                List<ToolResult> results = parseBatch(response.body());
+                for (int i = 0; i < calls.size(); i++) {
+                    if (i < results.size() && results.get(i) != null) {
+                        calls.get(i).future.complete(results.get(i));
+                    } else {
+                        calls.get(i).future.completeExceptionally(
+                            new IOException("Missing batch result " + i + " (HTTP " + response.statusCode() + ")"));
+                    }
+                }
+            } catch (IOException e) {
+                calls.forEach(call -> call.future.completeExceptionally(e));
+            }
+        }, error -> calls.forEach(call -> call.future.completeExceptionally(error)));
+    }
+
+    private static void forward(CompletableFuture<ToolResult> source, PendingCall call) {
+        source.whenComplete((result, error) -> {
+            if (error != null) {
+                call.future.completeExceptionally(error);
+            } else {
+                call.future.complete(result);
+            }
+        });
+    }
+
+    private CompletableFuture<ToolResult> send(HttpRequest request) {
+        CompletableFuture<ToolResult> future = new CompletableFuture<>();
+        acquire(request, response -> {
+            try {
+                future.complete(parseResult(response.statusCode(), JSON.createParser(response.body())));
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+        }, future::completeExceptionally);
+        return future;
+    }
+
+    /**
+     * Send the request once a window slot is free, releasing the slot on completion.
+     * The client span covers the wait for a slot.
+     */
+    private void acquire(HttpRequest request,
+                         Consumer<HttpResponse<byte[]>> onResponse,
+                         Consumer<Throwable> onError) {
+        Tracing.Span span = Tracing.startSpan(request.method() + " " + request.uri().getPath(), Tracing.Kind.CLIENT);
+        HttpRequest traced = Tracing.inject(span, request);
+        waiting.add(() -> httpClient.sendAsync(traced, HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, error) -> {
+                window.release();
+                drain();
+                if (error != null) {
+                    span.error(error.getMessage()).end();
+                    onError.accept(error);
+                } else {
+                    span.attribute("http.response.status_code", response.statusCode()).end();
+                    onResponse.accept(response);
+                }
+            }));
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && window.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                window.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    private HttpRequest post(String path, byte[] body) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(baseUrl + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+    }
+
+    private static byte[] writeObject(ArgumentWriter arguments) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        try (JsonGenerator generator = JSON.createGenerator(buffer)) {
+            generator.writeStartObject();
+            arguments.write(generator);
+            generator.writeEndObject();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Parse one tool response object. The parser may be positioned before or at START_OBJECT.
+     */
+    private static ToolResult parseResult(int status, JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT && parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected JSON object in tool response (HTTP " + status + ")");
+        }
+        String tool = null;
+        double result = Double.NaN;
+        String message = null;
+        String time = null;
+        String response = null;
+        String error = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "tool":
+                    tool = parser.getValueAsString();
+                    break;
+                case "result":
+                    result = value.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+                    break;
+                case "message":
+                    message = parser.getValueAsString();
+                    break;
+                case "time":
+                    time = parser.getValueAsString();
+                    break;
+                case "response":
+                    response = parser.getValueAsString();
+                    break;
+                case "error":
+                    error = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new ToolResult(status, tool, result, message, time, response, error);
+    }
+
+    private static List<ToolResult> parseBatch(byte[] body) throws IOException {
+        List<ToolResult> results = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected JSON object in batch response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (!"results".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    int id = -1;
+                    int status = 0;
+                    ToolResult callBody = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("id".equals(name)) {
+                            id = parser.getValueAsInt(-1);
+                        } else if ("status".equals(name)) {
+                            status = parser.getValueAsInt();
+                        } else if ("body".equals(name)) {
+                            callBody = parseResult(0, parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    if (id >= 0 && callBody != null) {
+                        while (results.size() <= id) {
+                            results.add(null);
+                        }
+                        results.set(id, new ToolResult(status, callBody.tool(), callBody.result(), callBody.message(),
+                            callBody.time(), callBody.response(), callBody.error()));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean hasStringField(byte[] body, String fieldName) {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals(field)) {
+                    return value == JsonToken.VALUE_STRING;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        flushBatch();
+        flusher.shutdown();
+    }
+
+    /**
+     * Fire a burst of concurrent calls to demonstrate the async API.
+     */
+    public static void main(String[] args) {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        System.out.println("=== MCP Async Java Client Demo ===");
+        System.out.println("Connecting to: " + baseUrl);
+
+        try (AsyncMcpJavaClient client = new AsyncMcpJavaClient(baseUrl)) {
+            long start = System.nanoTime();
+            List<CompletableFuture<ToolResult>> futures = new ArrayList<>(calls);
+            for (int i = 0; i < calls; i++) {
+                futures.add(i % 2 == 0 ? client.add(i, 1) : client.multiply(i, 2));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            long failures = futures.stream().filter(future -> !future.join().isSuccess()).count();
+            System.out.println(calls + " calls completed in " + elapsedMillis + " ms (" + failures + " failed)");
+            System.out.println("Sample: " + futures.get(0).join());
+            System.out.println("Time: " + client.getCurrentTime().join().time());
+        }
+    }
+}
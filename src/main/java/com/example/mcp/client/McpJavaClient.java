@@ -6,6 +6,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
+import com.example.mcp.Tracing;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -20,6 +21,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  *   
  *   Then run this client:
  *     mvn exec:java "-Dexec.mainClass=com.example.mcp.client.McpJavaClient"
+ *
+ * Each request is a client {@link Tracing} span and sends its traceparent header, so
+ * the server's spans join the caller's trace.
  */
 public class McpJavaClient {
     private final String baseUrl;
@@ -41,7 +45,7 @@ public class McpJavaClient {
                 .GET()
                 .build();
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = send(request);
         return mapper.readTree(response.body());
     }
 
@@ -76,7 +80,7 @@ public class McpJavaClient {
                 .GET()
                 .build();
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = send(request);
         return mapper.readTree(response.body());
     }
 
@@ -113,10 +117,27 @@ public class McpJavaClient {
                 .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
                 .build();
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = send(request);
         return mapper.readTree(response.body());
     }
 
+    /**
+     * Send a request inside a client span
+     */
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        Tracing.Span span = Tracing.startSpan(request.method() + " " + request.uri().getPath(), Tracing.Kind.CLIENT);
+        try {
+            HttpResponse<String> response = httpClient.send(Tracing.inject(span, request), HttpResponse.BodyHandlers.ofString());
+            span.attribute("http.response.status_code", response.statusCode());
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            span.error(e.getMessage());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
     /**
      * Main method to demonstrate all tool calls
      */
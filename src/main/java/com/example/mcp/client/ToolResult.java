@@ -0,0 +1,21 @@
+package com.example.mcp.client;
+
+/**
+ * Typed result of a tool call on the HTTP JSON API.
+ * Fields that the tool does not return are null (or NaN for {@code result}).
+ *
+ * @param status HTTP status of the call (per-call status for batched calls)
+ * @param tool tool name echoed by the server
+ * @param result numeric result of add/multiply
+ * @param message human readable message
+ * @param time ISO timestamp returned by get_current_time
+ * @param response AI response text returned by ai_chat
+ * @param error error message when the call failed
+ */
+public record ToolResult(int status, String tool, double result, String message, String time,
+                         String response, String error) {
+
+    public boolean isSuccess() {
+        return status >= 200 && status < 300 && error == null;
+    }
+}